@@ -0,0 +1,92 @@
+package dev.vality.file.storage.service;
+
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import dev.vality.file.storage.util.DamselUtil;
+import dev.vality.file.storage.util.MetadataValueCodec;
+import dev.vality.msgpack.Value;
+import org.openjdk.jmh.annotations.*;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Кодирование метаданных в заголовки s3 при записи и обратное декодирование при чтении.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetadataCodecBenchmark {
+
+    private static final String FILE_ID = "5c3b8f4e-0a8a-4a0e-9d1e-6b7f0c2a9e11";
+
+    @Param({"JSON", "COMPACT"})
+    private MetadataValueCodec.Encoding encoding;
+
+    private Value value;
+    private String jsonValue;
+    private String encodedValue;
+    private Map<String, Value> metadata;
+    private HeadObjectResponse headObjectResponse;
+    private FileMetadataResolver fileMetadataResolver;
+
+    @Setup
+    public void setUp() {
+        value = Value.str("Mary Doe");
+        jsonValue = DamselUtil.toJsonString(value);
+        encodedValue = MetadataValueCodec.encode(value, encoding);
+        metadata = new HashMap<>();
+        metadata.put("author", Value.str("Mary Doe"));
+        metadata.put("version", Value.str("1.0.0.0"));
+        metadata.put("size", Value.i(1024L));
+        metadata.put("tags", Value.arr(List.of(Value.str("invoice"), Value.str("scan"))));
+        headObjectResponse = HeadObjectResponse.builder()
+                .metadata(S3V2Service.buildS3Metadata(metadata, FILE_ID, encoding))
+                .contentDisposition("attachment;filename=asd123.asd")
+                .build();
+        var properties = new S3SdkV2Properties();
+        properties.setBucketName("benchmark");
+        // для декодирования заголовков не нужны ни клиент, ни кеши
+        fileMetadataResolver = new FileMetadataResolver(properties, null, null, null, null, null);
+    }
+
+    @Benchmark
+    public String damselToJsonString() {
+        return DamselUtil.toJsonString(value);
+    }
+
+    @Benchmark
+    public Value damselFromJson() {
+        return DamselUtil.fromJson(jsonValue, Value.class);
+    }
+
+    @Benchmark
+    public String encodeValue() {
+        return MetadataValueCodec.encode(value, encoding);
+    }
+
+    @Benchmark
+    public Value decodeValue() {
+        return MetadataValueCodec.decode(encodedValue);
+    }
+
+    @Benchmark
+    public Map<String, String> buildS3Metadata() {
+        return S3V2Service.buildS3Metadata(metadata, FILE_ID, encoding);
+    }
+
+    @Benchmark
+    public Object extractFileMetadata() {
+        return fileMetadataResolver.extractFileMetadata(FILE_ID, "version", headObjectResponse);
+    }
+
+    @Benchmark
+    public String extractFileName() {
+        return fileMetadataResolver.extractFileName(FILE_ID, "version", headObjectResponse);
+    }
+}
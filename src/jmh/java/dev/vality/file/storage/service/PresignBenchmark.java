@@ -0,0 +1,92 @@
+package dev.vality.file.storage.service;
+
+import dev.vality.file.storage.configuration.S3SdkV2ClientConfig;
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import dev.vality.file.storage.service.presign.CachedSigV4Presigner;
+import org.openjdk.jmh.annotations.*;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PresignedPutObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
+
+import java.net.URL;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Подпись ссылок на скачивание и загрузку тем же {@link S3Presigner}, что создается в приложении,
+ * и {@link CachedSigV4Presigner}. Подпись выполняется локально, сеть не нужна.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PresignBenchmark {
+
+    private static final String FILE_ID = "5c3b8f4e-0a8a-4a0e-9d1e-6b7f0c2a9e11";
+
+    private S3Presigner s3Presigner;
+    private CachedSigV4Presigner cachedSigV4Presigner;
+    private GetObjectPresignRequest getObjectPresignRequest;
+    private PutObjectPresignRequest putObjectPresignRequest;
+
+    @Setup
+    public void setUp() {
+        var properties = new S3SdkV2Properties();
+        properties.setEndpoint("http://127.0.0.1:9000");
+        properties.setBucketName("benchmark");
+        properties.setRegion("RU");
+        properties.setAccessKey("minio");
+        properties.setSecretKey("minio123");
+        s3Presigner = new S3SdkV2ClientConfig(properties).s3Presigner();
+        cachedSigV4Presigner = new CachedSigV4Presigner(properties);
+        getObjectPresignRequest = GetObjectPresignRequest.builder()
+                .signatureDuration(Duration.ofMinutes(10))
+                .getObjectRequest(GetObjectRequest.builder()
+                        .bucket(properties.getBucketName())
+                        .key(FILE_ID)
+                        .versionId("version")
+                        .build())
+                .build();
+        putObjectPresignRequest = PutObjectPresignRequest.builder()
+                .signatureDuration(Duration.ofMinutes(10))
+                .putObjectRequest(PutObjectRequest.builder()
+                        .bucket(properties.getBucketName())
+                        .key(FILE_ID)
+                        .build())
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        s3Presigner.close();
+    }
+
+    @Benchmark
+    public PresignedGetObjectRequest presignGetObject() {
+        return s3Presigner.presignGetObject(getObjectPresignRequest);
+    }
+
+    @Benchmark
+    public PresignedPutObjectRequest presignPutObject() {
+        return s3Presigner.presignPutObject(putObjectPresignRequest);
+    }
+
+    @Benchmark
+    public URL presignGetObjectCachedSigV4() {
+        var now = Instant.now();
+        return cachedSigV4Presigner.presignGetObject(FILE_ID, "version", now, now.plus(Duration.ofMinutes(10)));
+    }
+
+    @Benchmark
+    public URL presignPutObjectCachedSigV4() {
+        var now = Instant.now();
+        return cachedSigV4Presigner.presignPutObject(FILE_ID, now, now.plus(Duration.ofMinutes(10)));
+    }
+}
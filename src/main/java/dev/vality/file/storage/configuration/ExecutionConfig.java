@@ -0,0 +1,77 @@
+package dev.vality.file.storage.configuration;
+
+import dev.vality.file.storage.configuration.properties.ExecutionProperties;
+import dev.vality.file.storage.configuration.properties.ProxyProperties;
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import dev.vality.file.storage.monitoring.VirtualThreadPinnedMonitor;
+import dev.vality.file.storage.util.VirtualThreadUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+@RequiredArgsConstructor
+@EnableConfigurationProperties(ExecutionProperties.class)
+public class ExecutionConfig {
+
+    private final ExecutionProperties executionProperties;
+    private final S3SdkV2Properties s3SdkV2Properties;
+    private final ProxyProperties proxyProperties;
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService s3MetadataExecutor() {
+        if (isVirtual()) {
+            return VirtualThreadUtil.newThreadPerTaskExecutor("s3-metadata-");
+        }
+        // каждый ожидающий поток (tomcat, прокси) отправляет сюда не больше одного HeadObject,
+        // поэтому число потоков ограничено числом вызывающих, а не отдельным лимитом ниже пула tomcat
+        return Executors.newCachedThreadPool(new CustomizableThreadFactory("s3-metadata-"));
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService s3PartUploadExecutor() {
+        if (isVirtual()) {
+            return VirtualThreadUtil.newThreadPerTaskExecutor("s3-part-upload-");
+        }
+        return Executors.newFixedThreadPool(
+                proxyProperties.getUpload().getThreads(),
+                new CustomizableThreadFactory("s3-part-upload-"));
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService s3ReadExecutor() {
+        // отдельный пул: чтения из s3MetadataExecutor ждут здесь первый из ответов
+        if (isVirtual()) {
+            return VirtualThreadUtil.newThreadPerTaskExecutor("s3-read-");
+        }
+        return Executors.newFixedThreadPool(
+                s3SdkV2Properties.getReads().getThreads(),
+                new CustomizableThreadFactory("s3-read-"));
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "execution.mode", havingValue = "virtual")
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        // запрос в FileStorageHandler и все блокирующие вызовы S3Client выполняются в виртуальном потоке
+        return protocolHandler -> protocolHandler.setExecutor(
+                VirtualThreadUtil.newThreadPerTaskExecutor("http-vt-"));
+    }
+
+    @Bean(initMethod = "start", destroyMethod = "close")
+    @ConditionalOnProperty(name = "execution.mode", havingValue = "virtual")
+    public VirtualThreadPinnedMonitor virtualThreadPinnedMonitor(MeterRegistry meterRegistry) {
+        return new VirtualThreadPinnedMonitor(meterRegistry, executionProperties.getPinnedEventThreshold());
+    }
+
+    private boolean isVirtual() {
+        return executionProperties.getMode() == ExecutionProperties.ExecutionMode.VIRTUAL;
+    }
+}
@@ -1,18 +1,33 @@
 package dev.vality.file.storage.configuration;
 
 import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import dev.vality.file.storage.monitoring.S3HttpPoolMetricPublisher;
+import dev.vality.file.storage.monitoring.S3MetricsInterceptor;
+import dev.vality.file.storage.service.FileMetadataResolver;
+import dev.vality.file.storage.service.overload.S3OverloadInterceptor;
+import dev.vality.file.storage.service.read.S3ReadRouter;
+import dev.vality.file.storage.service.shard.S3ShardResolver;
+import dev.vality.file.storage.service.shard.ShardedStorageService;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.SdkHttpClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
+import software.amazon.awssdk.http.urlconnection.UrlConnectionHttpClient;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.S3Configuration;
 import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
 
 @Configuration
 @RequiredArgsConstructor
@@ -39,7 +54,55 @@ public class S3SdkV2ClientConfig {
     }
 
     @Bean(destroyMethod = "close")
-    public S3Client s3SdkV2Client() {
+    public S3Client s3SdkV2Client(S3OverloadInterceptor s3OverloadInterceptor, MeterRegistry meterRegistry) {
+        return s3Client(s3SdkV2Properties.getEndpoint(), "sync", s3OverloadInterceptor, meterRegistry);
+    }
+
+    /**
+     * Клиенты для {@code reads.endpoints} создаются здесь же и закрываются вместе с роутером.
+     */
+    @Bean(destroyMethod = "close")
+    public S3ReadRouter s3ReadRouter(S3Client s3SdkV2Client,
+                                     S3OverloadInterceptor s3OverloadInterceptor,
+                                     MeterRegistry meterRegistry,
+                                     @Qualifier("s3ReadExecutor") ExecutorService s3ReadExecutor) {
+        var clients = new ArrayList<S3ReadRouter.ReadClient>();
+        clients.add(new S3ReadRouter.ReadClient(s3SdkV2Properties.getEndpoint(), s3SdkV2Client));
+        for (String endpoint : s3SdkV2Properties.getReads().getEndpoints()) {
+            var s3Client = s3Client(endpoint, "sync:" + endpoint, s3OverloadInterceptor, meterRegistry);
+            clients.add(new S3ReadRouter.ReadClient(endpoint, s3Client));
+        }
+        return new S3ReadRouter(s3SdkV2Properties, clients, s3ReadExecutor, meterRegistry);
+    }
+
+    @Bean
+    @Qualifier(ShardedStorageService.DEFAULT_SHARD)
+    public S3ShardResolver.S3Shard defaultS3Shard(S3Client s3SdkV2Client,
+                                                  S3ReadRouter s3ReadRouter,
+                                                  FileMetadataResolver fileMetadataResolver) {
+        return new S3ShardResolver.S3Shard(
+                s3SdkV2Properties.getSharding().getShardId(),
+                s3SdkV2Properties,
+                s3SdkV2Client,
+                s3ReadRouter,
+                fileMetadataResolver);
+    }
+
+    /**
+     * С шардированием используется {@link ShardingConfig#shardedS3ShardResolver}.
+     */
+    @Bean
+    @ConditionalOnProperty(name = "s3-sdk-v2.sharding.enabled", havingValue = "false", matchIfMissing = true)
+    public S3ShardResolver s3ShardResolver(
+            @Qualifier(ShardedStorageService.DEFAULT_SHARD) S3ShardResolver.S3Shard defaultS3Shard) {
+        return S3ShardResolver.single(defaultS3Shard);
+    }
+
+    private S3Client s3Client(String endpoint,
+                              String client,
+                              S3OverloadInterceptor s3OverloadInterceptor,
+                              MeterRegistry meterRegistry) {
+        var shardId = s3SdkV2Properties.getSharding().getShardId();
         return S3Client.builder()
                 .region(Region.of(s3SdkV2Properties.getRegion()))
                 .credentialsProvider(
@@ -47,10 +110,38 @@ public class S3SdkV2ClientConfig {
                                 AwsBasicCredentials.create(
                                         s3SdkV2Properties.getAccessKey(),
                                         s3SdkV2Properties.getSecretKey())))
-                .endpointOverride(URI.create(s3SdkV2Properties.getEndpoint()))
+                .endpointOverride(URI.create(endpoint))
                 .serviceConfiguration(S3Configuration.builder()
                         .pathStyleAccessEnabled(true)
                         .build())
+                .overrideConfiguration(configuration -> configuration
+                        .addExecutionInterceptor(new S3MetricsInterceptor(meterRegistry, shardId))
+                        .addExecutionInterceptor(s3OverloadInterceptor)
+                        .addMetricPublisher(new S3HttpPoolMetricPublisher(meterRegistry, shardId, client)))
+                .httpClientBuilder(httpClientBuilder())
                 .build();
     }
+
+    private SdkHttpClient.Builder<?> httpClientBuilder() {
+        var transport = s3SdkV2Properties.getTransport();
+        if (transport.getHttpClient() == S3SdkV2Properties.HttpClient.URL_CONNECTION) {
+            return UrlConnectionHttpClient.builder()
+                    .connectionTimeout(transport.getConnectionTimeout())
+                    .socketTimeout(transport.getSocketTimeout());
+        }
+        // TCP_NODELAY у apache клиента SDK включен всегда
+        var builder = ApacheHttpClient.builder()
+                .maxConnections(transport.getMaxConnections())
+                .connectionAcquisitionTimeout(transport.getConnectionAcquisitionTimeout())
+                .connectionTimeout(transport.getConnectionTimeout())
+                .socketTimeout(transport.getSocketTimeout())
+                .connectionMaxIdleTime(transport.getConnectionMaxIdleTime())
+                .useIdleConnectionReaper(transport.isUseIdleConnectionReaper())
+                .tcpKeepAlive(transport.isTcpKeepAlive())
+                .expectContinueEnabled(transport.isExpectContinueEnabled());
+        if (!transport.getConnectionTimeToLive().isZero()) {
+            builder.connectionTimeToLive(transport.getConnectionTimeToLive());
+        }
+        return builder;
+    }
 }
@@ -0,0 +1,163 @@
+package dev.vality.file.storage.configuration;
+
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import dev.vality.file.storage.monitoring.MeteredStorageService;
+import dev.vality.file.storage.service.*;
+import dev.vality.file.storage.service.cache.FileLayoutCache;
+import dev.vality.file.storage.service.cache.FileMetadataCache;
+import dev.vality.file.storage.service.cache.FileVersionsCache;
+import dev.vality.file.storage.service.multipart.MultipartUploadRegistry;
+import dev.vality.file.storage.service.overload.S3OverloadInterceptor;
+import dev.vality.file.storage.service.presign.CachedSigV4Presigner;
+import dev.vality.file.storage.service.presign.DownloadUrlPresigner;
+import dev.vality.file.storage.service.presign.UploadUrlPresigner;
+import dev.vality.file.storage.service.read.S3ReadRouter;
+import dev.vality.file.storage.service.shard.S3ShardResolver;
+import dev.vality.file.storage.service.shard.ShardRing;
+import dev.vality.file.storage.service.shard.ShardedStorageService;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.regex.Pattern;
+
+/**
+ * Собирает {@link StorageService} для каждого шарда из {@code s3-sdk-v2.sharding.shards}: отдельные клиенты s3
+ * и подпись ссылок на endpoint и ключах шарда, а кеши и пулы потоков общие, так как ключи файлов (UUID)
+ * не пересекаются между шардами. Шард по умолчанию — уже созданная реализация для {@code s3-sdk-v2.endpoint}
+ * и {@code bucket-name}. Перенос файлов {@code S3Service}, отмена брошенных multipart загрузок и удаление файлов
+ * без данных работают только с шардом по умолчанию.
+ */
+@Slf4j
+@Configuration
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "s3-sdk-v2.sharding.enabled", havingValue = "true")
+public class ShardingConfig {
+
+    private static final Pattern SHARD_ID = Pattern.compile("[a-z0-9]+");
+
+    private final S3SdkV2Properties s3SdkV2Properties;
+    private final S3OverloadInterceptor s3OverloadInterceptor;
+    private final MeterRegistry meterRegistry;
+    private final FileMetadataCache fileMetadataCache;
+    private final FileVersionsCache fileVersionsCache;
+    private final FileLayoutCache fileLayoutCache;
+    @Qualifier("s3MetadataExecutor")
+    private final ExecutorService s3MetadataExecutor;
+    @Qualifier("s3ReadExecutor")
+    private final ExecutorService s3ReadExecutor;
+    private final List<AutoCloseable> resources = new ArrayList<>();
+    private Map<String, ConfiguredShard> configuredShards;
+
+    @Bean(destroyMethod = "close")
+    @Primary
+    public ShardedStorageService shardedStorageService(
+            @Qualifier(ShardedStorageService.DEFAULT_SHARD) StorageService defaultShardStorageService) {
+        var sharding = s3SdkV2Properties.getSharding();
+        var shards = new HashMap<String, StorageService>();
+        var weights = new LinkedHashMap<String, Integer>();
+        shards.put(sharding.getShardId(), defaultShardStorageService);
+        weights.put(sharding.getShardId(), sharding.getWeight());
+        configuredShards().forEach((shardId, configuredShard) -> {
+            shards.put(shardId, configuredShard.storageService());
+            weights.put(shardId, configuredShard.weight());
+        });
+        var shardRing = new ShardRing(weights, sharding.getVirtualNodes());
+        return new ShardedStorageService(
+                sharding.getShardId(),
+                shards,
+                shardRing,
+                resources);
+    }
+
+    @Bean
+    public S3ShardResolver shardedS3ShardResolver(
+            @Qualifier(ShardedStorageService.DEFAULT_SHARD) S3ShardResolver.S3Shard defaultS3Shard) {
+        var shards = new HashMap<String, S3ShardResolver.S3Shard>();
+        shards.put(defaultS3Shard.shardId(), defaultS3Shard);
+        configuredShards().forEach((shardId, configuredShard) -> shards.put(shardId, configuredShard.s3Shard()));
+        return new S3ShardResolver(s3SdkV2Properties.getSharding().getShardId(), shards);
+    }
+
+    /**
+     * Компоненты шардов создаются один раз для {@link ShardedStorageService} и {@link S3ShardResolver},
+     * клиенты закрываются вместе с {@link ShardedStorageService}.
+     */
+    private synchronized Map<String, ConfiguredShard> configuredShards() {
+        if (configuredShards != null) {
+            return configuredShards;
+        }
+        var sharding = s3SdkV2Properties.getSharding();
+        checkShardId(sharding.getShardId());
+        var shards = new LinkedHashMap<String, ConfiguredShard>();
+        for (S3SdkV2Properties.Shard shard : sharding.getShards()) {
+            checkShardId(shard.getId());
+            if (shard.getId().equals(sharding.getShardId()) || shards.containsKey(shard.getId())) {
+                throw new IllegalArgumentException(String.format(
+                        "Bad sharding configuration, duplicate shardId=%s", shard.getId()));
+            }
+            shards.put(shard.getId(), createShard(shard));
+            log.info("Shard has been configured, shardId={}, endpoint={}, bucketName={}, weight={}",
+                    shard.getId(), shard.getEndpoint(), shard.getBucketName(), shard.getWeight());
+        }
+        configuredShards = shards;
+        return configuredShards;
+    }
+
+    private ConfiguredShard createShard(S3SdkV2Properties.Shard shard) {
+        var properties = s3SdkV2Properties.forShard(shard);
+        var clientConfig = new S3SdkV2ClientConfig(properties);
+        var s3Client = clientConfig.s3SdkV2Client(s3OverloadInterceptor, meterRegistry);
+        resources.add(s3Client);
+        var s3Presigner = clientConfig.s3Presigner();
+        resources.add(s3Presigner);
+        new S3BucketInitializer(properties, s3Client).init();
+        var cachedSigV4Presigner = new CachedSigV4Presigner(properties);
+        var downloadUrlPresigner = new DownloadUrlPresigner(
+                properties, s3Presigner, cachedSigV4Presigner, meterRegistry);
+        var uploadUrlPresigner = new UploadUrlPresigner(properties, s3Presigner, cachedSigV4Presigner);
+        var s3ReadRouter = new S3ReadRouter(
+                properties,
+                List.of(new S3ReadRouter.ReadClient(properties.getEndpoint(), s3Client)),
+                s3ReadExecutor,
+                meterRegistry);
+        var fileMetadataResolver = new FileMetadataResolver(
+                properties, s3ReadRouter, s3MetadataExecutor, fileMetadataCache, fileVersionsCache, fileLayoutCache);
+        var multipartUploadRegistry = new MultipartUploadRegistry(properties, meterRegistry);
+        var s3Shard = new S3ShardResolver.S3Shard(
+                shard.getId(), properties, s3Client, s3ReadRouter, fileMetadataResolver);
+        var storageService = new S3V2Service(
+                properties,
+                s3Client,
+                fileMetadataResolver,
+                fileMetadataCache,
+                downloadUrlPresigner,
+                uploadUrlPresigner,
+                multipartUploadRegistry);
+        return new ConfiguredShard(
+                new MeteredStorageService(storageService, shard.getId(), meterRegistry),
+                s3Shard,
+                shard.getWeight());
+    }
+
+    private static void checkShardId(String shardId) {
+        if (shardId == null || !SHARD_ID.matcher(shardId).matches()) {
+            throw new IllegalArgumentException(String.format(
+                    "Bad sharding configuration, shardId=%s must match %s", shardId, SHARD_ID.pattern()));
+        }
+    }
+
+    private record ConfiguredShard(StorageService storageService, S3ShardResolver.S3Shard s3Shard, int weight) {
+    }
+}
@@ -0,0 +1,37 @@
+package dev.vality.file.storage.configuration.properties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@ConfigurationProperties("execution")
+public class ExecutionProperties {
+
+    private ExecutionMode mode = ExecutionMode.PLATFORM;
+    // максимальное количество одновременно обрабатываемых thrift запросов, 0 — без ограничения
+    private int maxConcurrentRequests = 0;
+    private Duration acquireTimeout = Duration.ofSeconds(5);
+    // суммарный размер тел thrift запросов, которые обрабатываются одновременно, 0 — без ограничения
+    private long maxInFlightBytes = 0;
+    // сколько запрос ждет свободный объем, 0 — сразу отвечать 503
+    private Duration inFlightBytesAcquireTimeout = Duration.ofSeconds(5);
+    // запросы меньше порога не учитываются, большие тела приходят только в uploadMultipart
+    private long inFlightBytesThreshold = 1024 * 1024;
+    // сколько учитывать для запроса без Content-Length
+    private long unknownContentLength = 100 * 1024 * 1024;
+    // события закрепления виртуального потока на carrier потоке короче порога не учитываются
+    private Duration pinnedEventThreshold = Duration.ofMillis(20);
+
+    public enum ExecutionMode {
+
+        // запросы обрабатываются пулом платформенных потоков tomcat
+        PLATFORM,
+        // каждый запрос и каждый блокирующий вызов s3 выполняется в отдельном виртуальном потоке
+        VIRTUAL
+
+    }
+}
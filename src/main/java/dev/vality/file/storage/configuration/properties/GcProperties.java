@@ -0,0 +1,35 @@
+package dev.vality.file.storage.configuration.properties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.List;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("gc")
+public class GcProperties {
+
+    private boolean enabled = false;
+    // ключи — UUID, поэтому по первому символу бакет делится на 16 независимых частей
+    private List<String> partitions = List.of(
+            "0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "a", "b", "c", "d", "e", "f");
+    // сколько частей листится одновременно
+    private int listingParallelism = 4;
+    // размер страницы ListObjectVersions
+    private int pageSize = 1000;
+    // сколько ключей удаляется одним DeleteObjects, s3 принимает не больше 1000
+    private int deleteBatchSize = 1000;
+    // файл без загруженных данных удаляется, только если метаданные старше min-age: подписанная SigV4 ссылка
+    // живет не больше 7 дней, поэтому после этого загрузить файл уже нельзя
+    private Duration minAge = Duration.ofDays(8);
+    // пауза между обходами бакета
+    private Duration interval = Duration.ofHours(24);
+    // удаляемых ключей в секунду во всех частях, 0 — без ограничения
+    private long objectsPerSecond = 500;
+
+}
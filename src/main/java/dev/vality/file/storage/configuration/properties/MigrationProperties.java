@@ -0,0 +1,38 @@
+package dev.vality.file.storage.configuration.properties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("migration")
+public class MigrationProperties {
+
+    private boolean enabled = false;
+    // перенос запускается только на инстансе с этим флагом, чтобы реплики не обходили бакет одновременно
+    private boolean runnerEnabled = false;
+    // бакет, в который писал S3Service, доступный по тем же endpoint и ключам, что и s3-sdk-v2
+    private String sourceBucketName;
+    // ключи S3Service — UUID, поэтому по первому символу бакет делится на 16 независимых частей
+    private List<String> partitions = List.of(
+            "0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "a", "b", "c", "d", "e", "f");
+    // сколько частей листится одновременно
+    private int listingParallelism = 4;
+    // сколько файлов копируется одновременно во всех частях
+    private int copyParallelism = 32;
+    private int pageSize = 1000;
+    // 0 — без ограничения
+    private long objectsPerSecond = 200;
+    // объем копируемых данных в секунду, 0 — без ограничения
+    private long bytesPerSecond = 0;
+    private String checkpointPrefix = ".migration/checkpoints/";
+    // объекты больше этого размера копируются через UploadPartCopy, CopyObject ограничен 5 ГБ
+    private long multipartCopyThreshold = 5L * 1024 * 1024 * 1024;
+    private long multipartCopyPartSize = 512L * 1024 * 1024;
+
+}
@@ -0,0 +1,53 @@
+package dev.vality.file.storage.configuration.properties;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties("proxy")
+public class ProxyProperties {
+
+    private Upload upload = new Upload();
+    private Download download = new Download();
+
+    @Getter
+    @Setter
+    public static class Upload {
+
+        private boolean enabled = false;
+        // размер буфера и минимальный размер части multipart загрузки, s3 требует не меньше 5 МБ для всех частей,
+        // кроме последней; если по Content-Length частей получается больше 10000, часть занимает несколько буферов
+        private int partSize = 8 * 1024 * 1024;
+        // сколько буферов выделяется на все одновременные загрузки, объем памяти — max-buffers * part-size
+        private int maxBuffers = 32;
+        // сколько загрузка ждет свободный буфер, прежде чем получить 503
+        private Duration bufferAcquireTimeout = Duration.ofSeconds(10);
+        // сколько частей одной загрузки отправляется в s3 одновременно, пока читается следующая
+        private int partConcurrency = 4;
+        // сколько раз повторяется отправка части после временной ошибки s3, загрузка при этом не начинается заново
+        private int partRetries = 2;
+        // пауза перед повтором, растет линейно с номером попытки
+        private Duration partRetryBackoff = Duration.ofMillis(500);
+        // потоки отправки частей в режиме execution.mode=PLATFORM
+        private int threads = 32;
+
+    }
+
+    @Getter
+    @Setter
+    public static class Download {
+
+        private boolean enabled = false;
+        // размер буфера, через который тело ответа s3 копируется клиенту
+        private int bufferSize = 64 * 1024;
+        private int maxBuffers = 1024;
+        private Duration bufferAcquireTimeout = Duration.ofSeconds(10);
+
+    }
+}
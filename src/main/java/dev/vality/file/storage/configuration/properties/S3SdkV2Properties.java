@@ -1,10 +1,16 @@
 package dev.vality.file.storage.configuration.properties;
 
+import dev.vality.file.storage.service.model.FileLayout;
+import dev.vality.file.storage.util.MetadataValueCodec;
 import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
 @Getter
 @Setter
 @Component
@@ -16,5 +22,264 @@ public class S3SdkV2Properties {
     private String region;
     private String accessKey;
     private String secretKey;
+    private Transport transport = new Transport();
+    private MetadataCache metadataCache = new MetadataCache();
+    private VersionsCache versionsCache = new VersionsCache();
+    private Presign presign = new Presign();
+    private Layout layout = new Layout();
+    private MultipartSessions multipartSessions = new MultipartSessions();
+    private Sharding sharding = new Sharding();
+    private Reads reads = new Reads();
+    private Overload overload = new Overload();
+    // формат значений x-vality-metadata-*, читаются оба формата
+    private MetadataValueCodec.Encoding metadataEncoding = MetadataValueCodec.Encoding.JSON;
+
+    /**
+     * Настройки для шарда: endpoint, бакет и ключи шарда, остальные параметры общие.
+     */
+    public S3SdkV2Properties forShard(Shard shard) {
+        var properties = new S3SdkV2Properties();
+        properties.setEndpoint(shard.getEndpoint());
+        properties.setBucketName(shard.getBucketName());
+        properties.setRegion(shard.getRegion() != null ? shard.getRegion() : region);
+        properties.setAccessKey(shard.getAccessKey() != null ? shard.getAccessKey() : accessKey);
+        properties.setSecretKey(shard.getSecretKey() != null ? shard.getSecretKey() : secretKey);
+        properties.setTransport(transport);
+        properties.setMetadataCache(metadataCache);
+        properties.setVersionsCache(versionsCache);
+        properties.setPresign(presign);
+        properties.setLayout(layout);
+        properties.setMultipartSessions(multipartSessions);
+        properties.setOverload(overload);
+        properties.setMetadataEncoding(metadataEncoding);
+        // шард, к которому относятся клиенты и метрики, созданные по этим настройкам
+        properties.getSharding().setShardId(shard.getId());
+        return properties;
+    }
+
+    @Getter
+    @Setter
+    public static class Transport {
+
+        private HttpClient httpClient = HttpClient.APACHE;
+        private int maxConnections = 50;
+        private Duration connectionAcquisitionTimeout = Duration.ofSeconds(10);
+        private Duration connectionTimeout = Duration.ofSeconds(2);
+        private Duration socketTimeout = Duration.ofSeconds(30);
+        // максимальное время жизни соединения в пуле, 0 — без ограничения
+        private Duration connectionTimeToLive = Duration.ZERO;
+        private Duration connectionMaxIdleTime = Duration.ofSeconds(60);
+        private boolean useIdleConnectionReaper = true;
+        private boolean tcpKeepAlive = false;
+        private boolean expectContinueEnabled = true;
+
+    }
+
+    public enum HttpClient {
+
+        // пул соединений apache httpclient, все параметры transport
+        APACHE,
+        // HttpURLConnection без собственного пула, используются только таймауты
+        URL_CONNECTION
+
+    }
+
+    @Getter
+    @Setter
+    public static class MetadataCache {
+
+        private boolean enabled = true;
+        // суммарный размер закешированных заголовков метаданных в байтах
+        private long maxWeight = 64L * 1024 * 1024;
+        private Duration expireAfterAccess = Duration.ofHours(6);
+
+    }
+
+    @Getter
+    @Setter
+    public static class VersionsCache {
+
+        private boolean enabled = true;
+        private long maxSize = 100_000;
+        // для загруженных файлов (метаданные + файл)
+        private Duration ttl = Duration.ofSeconds(10);
+        // для файлов, которые еще не загружены или не существуют
+        private Duration negativeTtl = Duration.ofSeconds(2);
+
+    }
+
+    @Getter
+    @Setter
+    public static class Presign {
+
+        private PresignMode mode = PresignMode.EXACT;
+        private PresignEngine engine = PresignEngine.SDK;
+        // шаг, к которому выравнивается время подписи и время истечения ссылки
+        private Duration bucketSize = Duration.ofMinutes(5);
+        // ссылка из кеша отдается, только если она проживет еще хотя бы столько
+        private Duration minValidity = Duration.ofSeconds(30);
+        private long cacheMaxSize = 100_000;
+
+    }
+
+    @Getter
+    @Setter
+    public static class Layout {
+
+        // раскладка, в которой создаются новые файлы, читаются обе раскладки
+        private FileLayout write = FileLayout.TWO_VERSIONS;
+        // количество fileId, для которых запоминается раскладка TWO_VERSIONS
+        private long cacheMaxSize = 1_000_000;
+
+    }
+
+    @Getter
+    @Setter
+    public static class MultipartSessions {
+
+        // для скольких незавершенных multipart загрузок инстанс помнит время последней активности
+        private long maxSize = 100_000;
+        // загрузка без новых частей дольше idle-timeout считается брошенной
+        private Duration idleTimeout = Duration.ofHours(24);
+        private MultipartReaper reaper = new MultipartReaper();
+
+    }
+
+    @Getter
+    @Setter
+    public static class MultipartReaper {
+
+        private boolean enabled = false;
+        // обход выполняет только инстанс с runner-enabled, остальные реплики его не запускают
+        private boolean runnerEnabled = false;
+        // пауза между обходами бакета
+        private Duration interval = Duration.ofHours(1);
+        // размер страницы ListMultipartUploads
+        private int pageSize = 100;
+        // пауза между страницами, чтобы обход не конкурировал с запросами клиентов
+        private Duration pageDelay = Duration.ofSeconds(1);
+        // 0 — без ограничения
+        private long abortsPerSecond = 10;
+
+    }
+
+    @Getter
+    @Setter
+    public static class Reads {
+
+        // равноправные endpoint того же кластера для ListObjectVersions, HeadObject и GetObject,
+        // запись и подпись ссылок идут только через endpoint
+        private List<String> endpoints = new ArrayList<>();
+        // время, за которое вес старых замеров задержки endpoint уменьшается в e раз
+        private Duration ewmaDecay = Duration.ofSeconds(10);
+        // задержка, которая учитывается для endpoint при ошибке соединения или 5xx
+        private Duration errorPenalty = Duration.ofSeconds(1);
+        // размер пула чтений в режиме платформенных потоков
+        private int threads = 64;
+        private Hedging hedging = new Hedging();
+
+    }
+
+    @Getter
+    @Setter
+    public static class Hedging {
+
+        private boolean enabled = true;
+        // повторный запрос уходит на другой endpoint, если первый выполняется дольше этого перцентиля
+        private double percentile = 0.95;
+        private Duration minDelay = Duration.ofMillis(5);
+        // задержка, пока замеров операции меньше десятой части window
+        private Duration maxDelay = Duration.ofSeconds(1);
+        // количество последних замеров операции для расчета перцентиля
+        private int window = 1000;
+        // доля запросов, для которых допускается повторный запрос
+        private double budget = 0.1;
+
+    }
+
+    @Getter
+    @Setter
+    public static class Overload {
+
+        private boolean enabled = false;
+        // лимит одновременных вызовов каждой операции s3 на каждом endpoint
+        private int initialLimit = 100;
+        private int minLimit = 10;
+        private int maxLimit = 1000;
+        // во сколько раз уменьшается лимит при ошибке или медленном вызове
+        private double backoffRatio = 0.9;
+        // вызов дольше порога считается признаком перегрузки s3
+        private Duration latencyThreshold = Duration.ofSeconds(2);
+        // операции, время которых зависит от размера данных, уменьшают лимит только при ошибках
+        private List<String> sizeDependentOperations = new ArrayList<>(List.of(
+                "PutObject", "UploadPart", "UploadPartCopy", "CopyObject", "CompleteMultipartUpload"));
+        private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+    }
+
+    @Getter
+    @Setter
+    public static class CircuitBreaker {
+
+        private boolean enabled = true;
+        // интервал, за который считается доля ошибок
+        private Duration window = Duration.ofSeconds(10);
+        // меньше вызовов за интервал — доля ошибок не оценивается
+        private int minimumCalls = 20;
+        private double failureRateThreshold = 0.5;
+        // сколько вызовы отклоняются сразу после срабатывания
+        private Duration openDuration = Duration.ofSeconds(10);
+        // пробные вызовы после open-duration, все должны завершиться успешно
+        private int halfOpenCalls = 5;
+
+    }
+
+    @Getter
+    @Setter
+    public static class Sharding {
+
+        private boolean enabled = false;
+        // шард бакета из endpoint и bucket-name, к нему же относятся fileId без префикса шарда
+        private String shardId = "s0";
+        // доля новых файлов, 0 — в шард больше не пишутся новые файлы
+        private int weight = 1;
+        // точек на кольце на единицу веса
+        private int virtualNodes = 128;
+        private List<Shard> shards = new ArrayList<>();
+
+    }
+
+    @Getter
+    @Setter
+    public static class Shard {
+
+        // префикс fileId, латинские буквы в нижнем регистре и цифры
+        private String id;
+        private String endpoint;
+        private String bucketName;
+        // если не заданы, используются значения s3-sdk-v2
+        private String region;
+        private String accessKey;
+        private String secretKey;
+        private int weight = 1;
+
+    }
+
+    public enum PresignMode {
+
+        // ссылка подписывается на каждый запрос с текущим временем
+        EXACT,
+        // время подписи выравнивается по bucket-size, одинаковые запросы получают одну и ту же ссылку
+        BUCKETED
+
+    }
+
+    public enum PresignEngine {
+
+        // подпись через S3Presigner
+        SDK,
+        // собственная SigV4 подпись с кешированным ключом подписи, ссылки совпадают с S3Presigner побайтно
+        CACHED_SIGV4
 
+    }
 }
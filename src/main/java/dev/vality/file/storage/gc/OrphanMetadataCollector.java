@@ -0,0 +1,358 @@
+package dev.vality.file.storage.gc;
+
+import dev.vality.file.storage.configuration.properties.GcProperties;
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import dev.vality.file.storage.migration.RateLimiter;
+import dev.vality.file.storage.service.exception.StorageException;
+import dev.vality.file.storage.util.FutureUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static dev.vality.file.storage.service.FileMetadataResolver.METADATA_OBJECT_SUFFIX;
+
+/**
+ * Удаляет файлы, для которых записаны только метаданные, а сами данные так и не были загружены:
+ * {@code createNewFile} пишет метаданные до загрузки, и неиспользованные ссылки оставляют в бакете пустые ключи.
+ * Бакет делится на части по префиксу ключа, части листятся через {@code ListObjectVersions} постранично
+ * и параллельно. Файл без данных — ключ {@code fileId} с единственной пустой ревизией (раскладка
+ * {@code TWO_VERSIONS}) или объект {@code fileId.metadata} без ключа {@code fileId} ({@code METADATA_OBJECT}),
+ * все ревизии которого старше {@code gc.min-age} и для которого нет незавершенной multipart загрузки.
+ * Найденные ключи удаляются со всеми ревизиями пакетами {@code DeleteObjects}, скорость удаления ограничена
+ * {@code gc.objects-per-second}.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "gc.enabled", havingValue = "true")
+public class OrphanMetadataCollector {
+
+    private final GcProperties gcProperties;
+    private final S3SdkV2Properties s3SdkV2Properties;
+    private final S3Client s3SdkV2Client;
+    private final RateLimiter objectsRateLimiter;
+    private final Counter scannedCounter;
+    private final Counter orphanedCounter;
+    private final Counter deletedCounter;
+    private final Counter failedCounter;
+    private final Timer sweepTimer;
+    private final AtomicInteger remainingPartitions = new AtomicInteger();
+    private final ScheduledExecutorService sweepExecutor;
+    private final ExecutorService listingExecutor;
+
+    public OrphanMetadataCollector(GcProperties gcProperties,
+                                   S3SdkV2Properties s3SdkV2Properties,
+                                   S3Client s3SdkV2Client,
+                                   MeterRegistry meterRegistry) {
+        this.gcProperties = gcProperties;
+        this.s3SdkV2Properties = s3SdkV2Properties;
+        this.s3SdkV2Client = s3SdkV2Client;
+        this.objectsRateLimiter = new RateLimiter(gcProperties.getObjectsPerSecond());
+        this.scannedCounter = Counter.builder("file.storage.gc.keys")
+                .tag("result", "scanned")
+                .register(meterRegistry);
+        this.orphanedCounter = Counter.builder("file.storage.gc.keys")
+                .tag("result", "orphaned")
+                .register(meterRegistry);
+        this.deletedCounter = Counter.builder("file.storage.gc.objects")
+                .tag("result", "deleted")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("file.storage.gc.objects")
+                .tag("result", "failed")
+                .register(meterRegistry);
+        this.sweepTimer = Timer.builder("file.storage.gc.sweep")
+                .description("Duration of a full orphan metadata sweep")
+                .register(meterRegistry);
+        Gauge.builder("file.storage.gc.partitions.remaining", remainingPartitions, AtomicInteger::get)
+                .description("Partitions left in the current orphan metadata sweep")
+                .register(meterRegistry);
+        this.sweepExecutor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("gc-sweep-"));
+        this.listingExecutor = Executors.newFixedThreadPool(
+                gcProperties.getListingParallelism(),
+                new CustomizableThreadFactory("gc-listing-"));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        var interval = gcProperties.getInterval();
+        sweepExecutor.scheduleWithFixedDelay(this::sweep, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+        log.info("Orphan metadata collector has been started, bucketName={}, partitions={}, minAge={}, interval={}",
+                s3SdkV2Properties.getBucketName(), gcProperties.getPartitions(), gcProperties.getMinAge(), interval);
+    }
+
+    @PreDestroy
+    public void stop() {
+        sweepExecutor.shutdownNow();
+        listingExecutor.shutdownNow();
+    }
+
+    void sweep() {
+        var sample = Timer.start();
+        var createdBefore = Instant.now().minus(gcProperties.getMinAge());
+        remainingPartitions.set(gcProperties.getPartitions().size());
+        try {
+            var partitionFutures = gcProperties.getPartitions().stream()
+                    .map(partition -> CompletableFuture.supplyAsync(
+                            () -> sweepPartition(partition, createdBefore),
+                            listingExecutor))
+                    .toList();
+            long scanned = 0;
+            long orphaned = 0;
+            for (var partitionFuture : partitionFutures) {
+                var result = FutureUtil.join(partitionFuture);
+                scanned += result.scanned();
+                orphaned += result.orphaned();
+            }
+            log.info("Orphan metadata sweep has been finished, bucketName={}, scanned={}, orphaned={}",
+                    s3SdkV2Properties.getBucketName(), scanned, orphaned);
+        } catch (RuntimeException ex) {
+            // исключение из задачи остановило бы следующие запуски
+            log.error("Orphan metadata sweep has failed, bucketName={}", s3SdkV2Properties.getBucketName(), ex);
+        } finally {
+            sample.stop(sweepTimer);
+        }
+    }
+
+    private SweepResult sweepPartition(String partition, Instant createdBefore) {
+        var partitionSweep = new PartitionSweep(partition, createdBefore);
+        String keyMarker = null;
+        try {
+            partitionSweep.activeUploadKeys.addAll(listActiveUploadKeys(partition));
+            String versionIdMarker = null;
+            boolean truncated;
+            do {
+                var response = s3SdkV2Client.listObjectVersions(ListObjectVersionsRequest.builder()
+                        .bucket(s3SdkV2Properties.getBucketName())
+                        .prefix(partition)
+                        .keyMarker(keyMarker)
+                        .versionIdMarker(versionIdMarker)
+                        .maxKeys(gcProperties.getPageSize())
+                        .build());
+                for (var entry : toEntries(response)) {
+                    partitionSweep.accept(entry);
+                }
+                keyMarker = response.nextKeyMarker();
+                versionIdMarker = response.nextVersionIdMarker();
+                truncated = Boolean.TRUE.equals(response.isTruncated());
+            } while (truncated && !Thread.currentThread().isInterrupted());
+            partitionSweep.finish();
+            log.info("Orphan metadata partition has been swept, partition={}, scanned={}, orphaned={}",
+                    partition, partitionSweep.scanned, partitionSweep.orphaned);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (SdkException | StorageException ex) {
+            // обход части начнется заново при следующем запуске
+            log.error("Orphan metadata partition sweep has been stopped, partition={}, keyMarker={}",
+                    partition, keyMarker, ex);
+        } finally {
+            remainingPartitions.decrementAndGet();
+        }
+        return new SweepResult(partitionSweep.scanned, partitionSweep.orphaned);
+    }
+
+    private Set<String> listActiveUploadKeys(String partition) {
+        var keys = new HashSet<String>();
+        s3SdkV2Client.listMultipartUploadsPaginator(ListMultipartUploadsRequest.builder()
+                        .bucket(s3SdkV2Properties.getBucketName())
+                        .prefix(partition)
+                        .build())
+                .uploads()
+                .forEach(upload -> keys.add(upload.key()));
+        return keys;
+    }
+
+    private static List<VersionEntry> toEntries(ListObjectVersionsResponse response) {
+        // ревизии и delete marker'ы приходят разными списками, но в общем порядке ключей
+        var entries = new ArrayList<VersionEntry>(response.versions().size() + response.deleteMarkers().size());
+        for (var version : response.versions()) {
+            entries.add(new VersionEntry(
+                    version.key(),
+                    version.versionId(),
+                    version.size() != null ? version.size() : 0,
+                    version.lastModified(),
+                    false));
+        }
+        for (var deleteMarker : response.deleteMarkers()) {
+            entries.add(new VersionEntry(
+                    deleteMarker.key(),
+                    deleteMarker.versionId(),
+                    0,
+                    deleteMarker.lastModified(),
+                    true));
+        }
+        entries.sort(Comparator.comparing(VersionEntry::key));
+        return entries;
+    }
+
+    private void delete(List<ObjectIdentifier> objects) throws InterruptedException {
+        if (objects.isEmpty()) {
+            return;
+        }
+        objectsRateLimiter.acquire(objects.size());
+        try {
+            var response = s3SdkV2Client.deleteObjects(DeleteObjectsRequest.builder()
+                    .bucket(s3SdkV2Properties.getBucketName())
+                    .delete(Delete.builder()
+                            .objects(objects)
+                            .quiet(true)
+                            .build())
+                    .build());
+            var errors = response.errors();
+            deletedCounter.increment(objects.size() - errors.size());
+            if (!errors.isEmpty()) {
+                failedCounter.increment(errors.size());
+                log.warn("Failed to delete orphan metadata objects, bucketName={}, failed={}, first={}:{}",
+                        s3SdkV2Properties.getBucketName(), errors.size(), errors.get(0).key(), errors.get(0).code());
+            }
+        } catch (SdkException ex) {
+            failedCounter.increment(objects.size());
+            log.warn("Failed to delete orphan metadata objects, bucketName={}, size={}",
+                    s3SdkV2Properties.getBucketName(), objects.size(), ex);
+        }
+    }
+
+    /**
+     * Состояние обхода одной части: ревизии текущего ключа и ключ {@code fileId}, решение по которому
+     * откладывается до следующего ключа, потому что за ним может идти {@code fileId.metadata}.
+     */
+    private class PartitionSweep {
+
+        private final String partition;
+        private final Instant createdBefore;
+        private final Set<String> activeUploadKeys = new HashSet<>();
+        private final List<ObjectIdentifier> pendingDeletes = new ArrayList<>();
+        private String currentKey;
+        private List<VersionEntry> currentVersions = new ArrayList<>();
+        private KeyVersions pendingFileKey;
+        private long scanned;
+        private long orphaned;
+
+        private PartitionSweep(String partition, Instant createdBefore) {
+            this.partition = partition;
+            this.createdBefore = createdBefore;
+        }
+
+        void accept(VersionEntry entry) throws InterruptedException {
+            if (!entry.key().equals(currentKey)) {
+                completeKey();
+                currentKey = entry.key();
+                currentVersions = new ArrayList<>();
+            }
+            currentVersions.add(entry);
+        }
+
+        void finish() throws InterruptedException {
+            completeKey();
+            if (pendingFileKey != null) {
+                collectIfOrphanFileKey(pendingFileKey);
+                pendingFileKey = null;
+            }
+            flush();
+        }
+
+        private void completeKey() throws InterruptedException {
+            if (currentKey == null) {
+                return;
+            }
+            var keyVersions = new KeyVersions(currentKey, currentVersions);
+            currentKey = null;
+            scanned++;
+            scannedCounter.increment();
+            if (keyVersions.key().endsWith(METADATA_OBJECT_SUFFIX)) {
+                var fileId = keyVersions.key()
+                        .substring(0, keyVersions.key().length() - METADATA_OBJECT_SUFFIX.length());
+                if (pendingFileKey != null && pendingFileKey.key().equals(fileId)) {
+                    // файл в раскладке METADATA_OBJECT загружен
+                    pendingFileKey = null;
+                    return;
+                }
+                if (pendingFileKey != null) {
+                    collectIfOrphanFileKey(pendingFileKey);
+                    pendingFileKey = null;
+                }
+                if (isExpired(fileId, keyVersions)) {
+                    collect(keyVersions);
+                }
+            } else {
+                if (pendingFileKey != null) {
+                    collectIfOrphanFileKey(pendingFileKey);
+                }
+                pendingFileKey = keyVersions;
+            }
+        }
+
+        private void collectIfOrphanFileKey(KeyVersions keyVersions) throws InterruptedException {
+            // в раскладке TWO_VERSIONS первая ревизия — пустой объект с метаданными, вторая — сам файл
+            var versions = keyVersions.versions();
+            if (versions.size() == 1
+                    && versions.get(0).size() == 0
+                    && isExpired(keyVersions.key(), keyVersions)) {
+                collect(keyVersions);
+            }
+        }
+
+        private boolean isExpired(String fileId, KeyVersions keyVersions) {
+            if (activeUploadKeys.contains(fileId)) {
+                return false;
+            }
+            for (var version : keyVersions.versions()) {
+                if (version.deleteMarker() || !version.lastModified().isBefore(createdBefore)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void collect(KeyVersions keyVersions) throws InterruptedException {
+            log.debug("Orphan metadata key was found, partition={}, key={}", partition, keyVersions.key());
+            if (pendingDeletes.size() + keyVersions.versions().size() > gcProperties.getDeleteBatchSize()) {
+                flush();
+            }
+            for (var version : keyVersions.versions()) {
+                pendingDeletes.add(ObjectIdentifier.builder()
+                        .key(version.key())
+                        .versionId(version.versionId())
+                        .build());
+            }
+            orphaned++;
+            orphanedCounter.increment();
+        }
+
+        private void flush() throws InterruptedException {
+            delete(List.copyOf(pendingDeletes));
+            pendingDeletes.clear();
+        }
+    }
+
+    private record VersionEntry(String key, String versionId, long size, Instant lastModified, boolean deleteMarker) {
+    }
+
+    private record KeyVersions(String key, List<VersionEntry> versions) {
+    }
+
+    private record SweepResult(long scanned, long orphaned) {
+    }
+}
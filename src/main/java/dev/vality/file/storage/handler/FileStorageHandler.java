@@ -3,9 +3,11 @@ package dev.vality.file.storage.handler;
 import dev.vality.file.storage.*;
 import dev.vality.file.storage.service.StorageService;
 import dev.vality.file.storage.service.exception.FileNotFoundException;
+import dev.vality.file.storage.service.exception.ServiceOverloadedException;
 import dev.vality.file.storage.util.CheckerUtil;
 import dev.vality.geck.common.util.TypeUtil;
 import dev.vality.msgpack.Value;
+import dev.vality.woody.api.flow.error.WUnavailableResultException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.thrift.TException;
@@ -24,8 +26,12 @@ public class FileStorageHandler implements FileStorageSrv.Iface {
 
     @Override
     public NewFileResult createNewFile(Map<String, Value> metadata, String expiresAt) throws TException {
-        var instant = TypeUtil.stringToInstant(expiresAt);
-        return storageService.createNewFile(metadata, instant);
+        try {
+            var instant = TypeUtil.stringToInstant(expiresAt);
+            return storageService.createNewFile(metadata, instant);
+        } catch (RuntimeException e) {
+            throw unavailableIfOverloaded(e);
+        }
     }
 
     @Override
@@ -38,6 +44,8 @@ public class FileStorageHandler implements FileStorageSrv.Iface {
             return url.toString();
         } catch (FileNotFoundException e) {
             throw fileNotFound(e);
+        } catch (RuntimeException e) {
+            throw unavailableIfOverloaded(e);
         }
     }
 
@@ -48,6 +56,8 @@ public class FileStorageHandler implements FileStorageSrv.Iface {
             return storageService.getFileData(fileDataId);
         } catch (FileNotFoundException e) {
             throw fileNotFound(e);
+        } catch (RuntimeException e) {
+            throw unavailableIfOverloaded(e);
         }
     }
 
@@ -64,36 +74,50 @@ public class FileStorageHandler implements FileStorageSrv.Iface {
             return multipartFileData;
         } catch (FileNotFoundException e) {
             throw fileNotFound(e);
+        } catch (RuntimeException e) {
+            throw unavailableIfOverloaded(e);
         }
     }
 
     @Override
     public CreateMultipartUploadResult createMultipartUpload(Map<String, Value> metadata) {
-        log.info("Receive request for create multipart upload with metadata={}", metadata);
-        CreateMultipartUploadResult result = storageService.createMultipartUpload(metadata);
-        log.info("Successfully create multipart upload, fileId={}, uploadId={}",
-                result.getFileDataId(), result.getMultipartUploadId());
-        return result;
+        try {
+            log.info("Receive request for create multipart upload with metadata={}", metadata);
+            CreateMultipartUploadResult result = storageService.createMultipartUpload(metadata);
+            log.info("Successfully create multipart upload, fileId={}, uploadId={}",
+                    result.getFileDataId(), result.getMultipartUploadId());
+            return result;
+        } catch (RuntimeException e) {
+            throw unavailableIfOverloaded(e);
+        }
     }
 
     @Override
     public UploadMultipartResult uploadMultipart(UploadMultipartRequestData request) {
-        log.debug("Receive request for upload file part, fileId={}, uploadId={}, sequencePart={}",
-                request.getFileDataId(), request.getMultipartUploadId(), request.getSequencePart());
-        UploadMultipartResult result = storageService.uploadMultipart(request);
-        log.debug("Successfully upload file part, fileId={}, uploadId={}, partId={}",
-                request.getFileDataId(), request.getMultipartUploadId(), result.getPartId());
-        return result;
+        try {
+            log.debug("Receive request for upload file part, fileId={}, uploadId={}, sequencePart={}",
+                    request.getFileDataId(), request.getMultipartUploadId(), request.getSequencePart());
+            UploadMultipartResult result = storageService.uploadMultipart(request);
+            log.debug("Successfully upload file part, fileId={}, uploadId={}, partId={}",
+                    request.getFileDataId(), request.getMultipartUploadId(), result.getPartId());
+            return result;
+        } catch (RuntimeException e) {
+            throw unavailableIfOverloaded(e);
+        }
     }
 
     @Override
     public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
-        log.info("Receive request for complete multipart upload, fileId={}, uploadId={}",
-                request.getFileDataId(), request.getMultipartUploadId());
-        CompleteMultipartUploadResult result = storageService.completeMultipartUpload(request);
-        log.info("Successfully complete multipart upload, fileId={}, url={}",
-                request.getFileDataId(), result.getUploadUrl());
-        return result;
+        try {
+            log.info("Receive request for complete multipart upload, fileId={}, uploadId={}",
+                    request.getFileDataId(), request.getMultipartUploadId());
+            CompleteMultipartUploadResult result = storageService.completeMultipartUpload(request);
+            log.info("Successfully complete multipart upload, fileId={}, url={}",
+                    request.getFileDataId(), result.getUploadUrl());
+            return result;
+        } catch (RuntimeException e) {
+            throw unavailableIfOverloaded(e);
+        }
     }
 
     /**
@@ -113,6 +137,8 @@ public class FileStorageHandler implements FileStorageSrv.Iface {
             return url.toString();
         } catch (FileNotFoundException e) {
             throw fileNotFound(e);
+        } catch (RuntimeException e) {
+            throw unavailableIfOverloaded(e);
         }
     }
 
@@ -120,4 +146,21 @@ public class FileStorageHandler implements FileStorageSrv.Iface {
         log.warn("File not found", e);
         return new FileNotFound();
     }
+
+    /**
+     * Отказ из-за перегрузки s3 возвращается клиенту как woody ошибка «ресурс недоступен» (HTTP 503),
+     * которую клиент может повторить позже, в отличие от внутренней ошибки сервиса. Остальные исключения
+     * возвращаются без изменений.
+     */
+    private RuntimeException unavailableIfOverloaded(RuntimeException e) {
+        Throwable cause = e;
+        while (cause != null && !(cause instanceof ServiceOverloadedException)) {
+            cause = cause.getCause();
+        }
+        if (cause == null) {
+            return e;
+        }
+        log.warn("Request has been rejected, s3 is overloaded: {}", cause.getMessage());
+        return new WUnavailableResultException(cause.getMessage());
+    }
 }
@@ -0,0 +1,195 @@
+package dev.vality.file.storage.migration;
+
+import dev.vality.file.storage.configuration.properties.MigrationProperties;
+import dev.vality.file.storage.service.exception.StorageException;
+import dev.vality.file.storage.util.FutureUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.S3Object;
+
+import jakarta.annotation.PreDestroy;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Фоново переносит файлы из бакета {@code S3Service} в бакет {@code s3-sdk-v2} без остановки сервиса.
+ * Исходный бакет делится на части по префиксу ключа, части листятся постранично и параллельно,
+ * файлы страницы переносятся на общем пуле копирования. Прогресс части сохраняется после каждой полностью
+ * обработанной страницы, поэтому после перезапуска перенос продолжается с места остановки. Нагрузка
+ * на кластер ограничивается количеством одновременных копирований и лимитами объектов и байт в секунду.
+ * Ошибка переноса одного файла не останавливает часть: ключ сохраняется в {@link MigrationCheckpointStore},
+ * и после обхода части, в том числе уже завершенной при прошлых запусках, такие ключи переносятся повторно.
+ * Перенос выполняет только инстанс с {@code migration.runner-enabled}.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = {"migration.enabled", "migration.runner-enabled"}, havingValue = "true")
+public class LegacyMigrationRunner {
+
+    private final MigrationProperties migrationProperties;
+    private final S3Client s3SdkV2Client;
+    private final LegacyObjectMigrator legacyObjectMigrator;
+    private final MigrationCheckpointStore migrationCheckpointStore;
+    private final RateLimiter objectsRateLimiter;
+    private final RateLimiter bytesRateLimiter;
+    private final Map<LegacyObjectMigrator.MigrationResult, Counter> resultCounters;
+    private final Counter failedCounter;
+    private final ExecutorService listingExecutor;
+    private final ExecutorService copyExecutor;
+
+    public LegacyMigrationRunner(MigrationProperties migrationProperties,
+                                 S3Client s3SdkV2Client,
+                                 LegacyObjectMigrator legacyObjectMigrator,
+                                 MigrationCheckpointStore migrationCheckpointStore,
+                                 MeterRegistry meterRegistry) {
+        this.migrationProperties = migrationProperties;
+        this.s3SdkV2Client = s3SdkV2Client;
+        this.legacyObjectMigrator = legacyObjectMigrator;
+        this.migrationCheckpointStore = migrationCheckpointStore;
+        this.objectsRateLimiter = new RateLimiter(migrationProperties.getObjectsPerSecond());
+        this.bytesRateLimiter = new RateLimiter(migrationProperties.getBytesPerSecond());
+        this.resultCounters = new EnumMap<>(LegacyObjectMigrator.MigrationResult.class);
+        for (var result : LegacyObjectMigrator.MigrationResult.values()) {
+            resultCounters.put(result, Counter.builder("file.storage.migration.objects")
+                    .tag("result", result.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+        this.failedCounter = Counter.builder("file.storage.migration.objects")
+                .tag("result", "failed")
+                .register(meterRegistry);
+        this.listingExecutor = Executors.newFixedThreadPool(
+                migrationProperties.getListingParallelism(),
+                new CustomizableThreadFactory("migration-listing-"));
+        this.copyExecutor = Executors.newFixedThreadPool(
+                migrationProperties.getCopyParallelism(),
+                new CustomizableThreadFactory("migration-copy-"));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        log.info("Legacy migration has been started, sourceBucketName={}, partitions={}",
+                migrationProperties.getSourceBucketName(), migrationProperties.getPartitions());
+        migrate().whenComplete((ignored, ex) -> log.info("Legacy migration has been finished, migrated={}, failed={}",
+                resultCounters.get(LegacyObjectMigrator.MigrationResult.MIGRATED).count(),
+                failedCounter.count()));
+    }
+
+    CompletableFuture<Void> migrate() {
+        var partitionFutures = migrationProperties.getPartitions().stream()
+                .map(partition -> CompletableFuture.runAsync(() -> migratePartition(partition), listingExecutor))
+                .toArray(CompletableFuture[]::new);
+        return CompletableFuture.allOf(partitionFutures);
+    }
+
+    @PreDestroy
+    public void stop() {
+        listingExecutor.shutdownNow();
+        copyExecutor.shutdownNow();
+    }
+
+    private void migratePartition(String partition) {
+        var checkpoint = migrationCheckpointStore.load(partition);
+        if (checkpoint.map(MigrationCheckpointStore.Checkpoint::completed).orElse(false)) {
+            log.info("Legacy migration partition is already completed, partition={}", partition);
+        } else {
+            var lastKey = checkpoint.map(MigrationCheckpointStore.Checkpoint::lastKey).orElse(null);
+            if (!listPartition(partition, lastKey)) {
+                return;
+            }
+        }
+        retryFailed(partition);
+    }
+
+    /**
+     * @return {@code true}, если все страницы части обработаны
+     */
+    private boolean listPartition(String partition, String lastKey) {
+        try {
+            boolean truncated;
+            do {
+                // startAfter вместо continuation token: по сохраненному ключу листинг можно продолжить
+                // и после перезапуска
+                var response = s3SdkV2Client.listObjectsV2(ListObjectsV2Request.builder()
+                        .bucket(migrationProperties.getSourceBucketName())
+                        .prefix(partition)
+                        .startAfter(lastKey)
+                        .maxKeys(migrationProperties.getPageSize())
+                        .build());
+                var contents = response.contents();
+                migratePage(partition, contents.stream().map(S3Object::key).toList(), false);
+                if (!contents.isEmpty()) {
+                    lastKey = contents.get(contents.size() - 1).key();
+                }
+                truncated = Boolean.TRUE.equals(response.isTruncated());
+                migrationCheckpointStore.save(partition, new MigrationCheckpointStore.Checkpoint(lastKey, !truncated));
+            } while (truncated && !Thread.currentThread().isInterrupted());
+            log.info("Legacy migration partition has been completed, partition={}", partition);
+            return !truncated;
+        } catch (SdkException | StorageException ex) {
+            // чекпоинт не сдвигается, после перезапуска страница будет обработана заново
+            log.error("Legacy migration partition has been stopped, partition={}, lastKey={}",
+                    partition, lastKey, ex);
+            return false;
+        }
+    }
+
+    private void retryFailed(String partition) {
+        try {
+            var failedKeys = migrationCheckpointStore.loadFailed(partition);
+            if (failedKeys.isEmpty()) {
+                return;
+            }
+            log.info("Legacy migration retries failed keys, partition={}, size={}", partition, failedKeys.size());
+            migratePage(partition, failedKeys, true);
+        } catch (SdkException | StorageException ex) {
+            log.error("Legacy migration retry has been stopped, partition={}", partition, ex);
+        }
+    }
+
+    private void migratePage(String partition, List<String> keys, boolean retry) {
+        var futures = keys.stream()
+                .map(key -> CompletableFuture.runAsync(() -> migrateObject(key, retry), copyExecutor))
+                .toArray(CompletableFuture[]::new);
+        FutureUtil.join(CompletableFuture.allOf(futures));
+        log.info("Legacy migration page has been processed, partition={}, size={}", partition, keys.size());
+    }
+
+    private void migrateObject(String key, boolean retry) {
+        LegacyObjectMigrator.MigrationResult result;
+        try {
+            objectsRateLimiter.acquire(1);
+            result = legacyObjectMigrator.migrate(key, bytesRateLimiter);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new StorageException(String.format(
+                    "Legacy migration was interrupted, key=%s, bucketName=%s",
+                    key, migrationProperties.getSourceBucketName()), ex);
+        } catch (RuntimeException ex) {
+            // ключ переносится повторно после обхода части, ошибка сохранения останавливает страницу
+            failedCounter.increment();
+            log.warn("Legacy file migration has failed, key={}, bucketName={}, retry={}",
+                    key, migrationProperties.getSourceBucketName(), retry, ex);
+            if (!retry) {
+                migrationCheckpointStore.saveFailed(key, ex.toString());
+            }
+            return;
+        }
+        resultCounters.get(result).increment();
+        if (retry) {
+            migrationCheckpointStore.removeFailed(key);
+        }
+    }
+}
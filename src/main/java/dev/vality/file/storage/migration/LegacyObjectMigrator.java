@@ -0,0 +1,265 @@
+package dev.vality.file.storage.migration;
+
+import dev.vality.file.storage.configuration.properties.MigrationProperties;
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import dev.vality.file.storage.service.exception.StorageException;
+import dev.vality.file.storage.service.model.FileLayout;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static dev.vality.file.storage.service.FileMetadataResolver.*;
+
+/**
+ * Переносит один файл из раскладки {@code S3Service} в раскладку {@code s3-sdk-v2.layout.write}.
+ * В старой раскладке объект fileDataId содержит только метаданные и ссылку x-rbkmoney-file-id на объект
+ * с самим файлом. После переноса файл доступен в новом бакете по тому же fileDataId, а сам файл копируется
+ * на стороне s3 без передачи данных через сервис. Повторный перенос уже перенесенного файла ничего не делает.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "migration.enabled", havingValue = "true")
+public class LegacyObjectMigrator {
+
+    static final String LEGACY_FILE_DATA_ID = "x-rbkmoney-file-data-id";
+    static final String LEGACY_FILE_ID = "x-rbkmoney-file-id";
+    static final String LEGACY_CREATED_AT = "x-rbkmoney-created-at";
+    static final String LEGACY_METADATA = "x-rbkmoney-metadata-";
+
+    private final MigrationProperties migrationProperties;
+    private final S3SdkV2Properties s3SdkV2Properties;
+    private final S3Client s3SdkV2Client;
+
+    public MigrationResult migrate(String key, RateLimiter bytesRateLimiter) throws InterruptedException {
+        var sourceBucketName = migrationProperties.getSourceBucketName();
+        var legacyMetadata = headObject(sourceBucketName, key).map(HeadObjectResponse::metadata);
+        var fileDataId = legacyMetadata.map(metadata -> metadata.get(LEGACY_FILE_DATA_ID));
+        if (fileDataId.isEmpty()) {
+            // объект с самим файлом, переносится вместе с объектом метаданных, который на него ссылается
+            return MigrationResult.SKIPPED;
+        }
+        var fileId = legacyMetadata.get().get(LEGACY_FILE_ID);
+        var fileObject = fileId != null ? headObject(sourceBucketName, fileId) : Optional.<HeadObjectResponse>empty();
+        if (fileObject.isEmpty()) {
+            log.info("Legacy file was not uploaded, fileDataId={}, bucketName={}", key, sourceBucketName);
+            return MigrationResult.NOT_UPLOADED;
+        }
+        var layout = s3SdkV2Properties.getLayout().getWrite();
+        var s3Metadata = toS3Metadata(fileDataId.get(), legacyMetadata.get(), layout);
+        var contentLength = fileObject.get().contentLength();
+        var migrated = layout == FileLayout.METADATA_OBJECT
+                ? migrateToMetadataObjectLayout(fileDataId.get(), fileId, contentLength, s3Metadata, bytesRateLimiter)
+                : migrateToTwoVersionsLayout(fileDataId.get(), fileId, contentLength, s3Metadata, bytesRateLimiter);
+        if (migrated) {
+            log.info("Legacy file was migrated, fileDataId={}, fileId={}, layout={}, bucketName={}",
+                    fileDataId.get(), fileId, layout, s3SdkV2Properties.getBucketName());
+        }
+        return migrated ? MigrationResult.MIGRATED : MigrationResult.ALREADY_MIGRATED;
+    }
+
+    private boolean migrateToMetadataObjectLayout(String fileDataId,
+                                                  String fileId,
+                                                  long contentLength,
+                                                  Map<String, String> s3Metadata,
+                                                  RateLimiter bytesRateLimiter) throws InterruptedException {
+        var targetBucketName = s3SdkV2Properties.getBucketName();
+        var migrated = false;
+        // сначала метаданные: пока файла нет, чтение отвечает «не загружен», а не определяет раскладку неверно
+        if (headObject(targetBucketName, metadataObjectKey(fileDataId)).isEmpty()) {
+            putMetadata(metadataObjectKey(fileDataId), s3Metadata);
+            migrated = true;
+        }
+        if (headObject(targetBucketName, fileDataId).isEmpty()) {
+            copyFile(fileId, fileDataId, contentLength, bytesRateLimiter);
+            migrated = true;
+        }
+        return migrated;
+    }
+
+    private boolean migrateToTwoVersionsLayout(String fileDataId,
+                                               String fileId,
+                                               long contentLength,
+                                               Map<String, String> s3Metadata,
+                                               RateLimiter bytesRateLimiter) throws InterruptedException {
+        // порядок ревизий важен: первая — метаданные, вторая — сам файл
+        var versionsCount = countVersions(fileDataId);
+        if (versionsCount == 0) {
+            putMetadata(fileDataId, s3Metadata);
+        }
+        if (versionsCount <= 1) {
+            copyFile(fileId, fileDataId, contentLength, bytesRateLimiter);
+            return true;
+        }
+        return false;
+    }
+
+    static Map<String, String> toS3Metadata(String fileDataId,
+                                            Map<String, String> legacyMetadata,
+                                            FileLayout layout) {
+        var s3Metadata = new HashMap<String, String>();
+        s3Metadata.put(FILE_ID, fileDataId);
+        s3Metadata.put(CREATED_AT, legacyMetadata.get(LEGACY_CREATED_AT));
+        // значения метаданных в обеих раскладках сериализованы одинаково, меняется только префикс
+        legacyMetadata.forEach((key, value) -> {
+            if (key.startsWith(LEGACY_METADATA) && value != null) {
+                s3Metadata.put(METADATA + key.substring(LEGACY_METADATA.length()), value);
+            }
+        });
+        if (layout == FileLayout.METADATA_OBJECT) {
+            s3Metadata.put(LAYOUT_VERSION, layout.getVersion());
+        }
+        return s3Metadata;
+    }
+
+    private void putMetadata(String key, Map<String, String> s3Metadata) {
+        var request = PutObjectRequest.builder()
+                .bucket(s3SdkV2Properties.getBucketName())
+                .key(key)
+                .metadata(s3Metadata)
+                .build();
+        try {
+            var response = s3SdkV2Client.putObject(request, RequestBody.empty()).sdkHttpResponse();
+            if (!response.isSuccessful()) {
+                throw new StorageException(String.format(
+                        "Failed to put migrated file metadata, key=%s, bucketName=%s",
+                        key, s3SdkV2Properties.getBucketName()));
+            }
+        } catch (S3Exception ex) {
+            throw new StorageException(String.format(
+                    "Failed to put migrated file metadata, key=%s, bucketName=%s",
+                    key, s3SdkV2Properties.getBucketName()), ex);
+        }
+    }
+
+    private void copyFile(String fileId,
+                          String fileDataId,
+                          long contentLength,
+                          RateLimiter bytesRateLimiter) throws InterruptedException {
+        bytesRateLimiter.acquire(contentLength);
+        try {
+            if (contentLength > migrationProperties.getMultipartCopyThreshold()) {
+                multipartCopyFile(fileId, fileDataId, contentLength);
+                return;
+            }
+            // метаданные объекта (в том числе Content-Disposition с именем файла) копируются вместе с ним
+            var request = CopyObjectRequest.builder()
+                    .sourceBucket(migrationProperties.getSourceBucketName())
+                    .sourceKey(fileId)
+                    .destinationBucket(s3SdkV2Properties.getBucketName())
+                    .destinationKey(fileDataId)
+                    .metadataDirective(MetadataDirective.COPY)
+                    .build();
+            var response = s3SdkV2Client.copyObject(request).sdkHttpResponse();
+            if (!response.isSuccessful()) {
+                throw new StorageException(String.format(
+                        "Failed to copy legacy file, fileId=%s, fileDataId=%s, bucketName=%s",
+                        fileId, fileDataId, s3SdkV2Properties.getBucketName()));
+            }
+        } catch (S3Exception ex) {
+            throw new StorageException(String.format(
+                    "Failed to copy legacy file, fileId=%s, fileDataId=%s, bucketName=%s",
+                    fileId, fileDataId, s3SdkV2Properties.getBucketName()), ex);
+        }
+    }
+
+    private void multipartCopyFile(String fileId, String fileDataId, long contentLength) {
+        var sourceBucketName = migrationProperties.getSourceBucketName();
+        var targetBucketName = s3SdkV2Properties.getBucketName();
+        var sourceHead = headObject(sourceBucketName, fileId).orElseThrow(() -> new StorageException(String.format(
+                "Legacy file disappeared during migration, fileId=%s, bucketName=%s", fileId, sourceBucketName)));
+        var uploadId = s3SdkV2Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                        .bucket(targetBucketName)
+                        .key(fileDataId)
+                        .metadata(sourceHead.metadata())
+                        .contentType(sourceHead.contentType())
+                        .contentDisposition(sourceHead.contentDisposition())
+                        .build())
+                .uploadId();
+        try {
+            var partSize = migrationProperties.getMultipartCopyPartSize();
+            var completedParts = new ArrayList<CompletedPart>();
+            for (long offset = 0, partNumber = 1; offset < contentLength; offset += partSize, partNumber++) {
+                var lastByte = Math.min(offset + partSize, contentLength) - 1;
+                var uploadPartCopyResponse = s3SdkV2Client.uploadPartCopy(UploadPartCopyRequest.builder()
+                        .sourceBucket(sourceBucketName)
+                        .sourceKey(fileId)
+                        .destinationBucket(targetBucketName)
+                        .destinationKey(fileDataId)
+                        .uploadId(uploadId)
+                        .partNumber((int) partNumber)
+                        .copySourceRange(String.format("bytes=%d-%d", offset, lastByte))
+                        .build());
+                completedParts.add(CompletedPart.builder()
+                        .partNumber((int) partNumber)
+                        .eTag(uploadPartCopyResponse.copyPartResult().eTag())
+                        .build());
+            }
+            s3SdkV2Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(targetBucketName)
+                    .key(fileDataId)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(completedParts).build())
+                    .build());
+        } catch (RuntimeException ex) {
+            s3SdkV2Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(targetBucketName)
+                    .key(fileDataId)
+                    .uploadId(uploadId)
+                    .build());
+            throw ex;
+        }
+    }
+
+    private long countVersions(String fileDataId) {
+        try {
+            var listObjectVersionsResponse = s3SdkV2Client.listObjectVersions(ListObjectVersionsRequest.builder()
+                    .bucket(s3SdkV2Properties.getBucketName())
+                    .prefix(fileDataId)
+                    .maxKeys(3)
+                    .build());
+            return listObjectVersionsResponse.versions().stream()
+                    .filter(version -> fileDataId.equals(version.key()))
+                    .count();
+        } catch (S3Exception ex) {
+            throw new StorageException(String.format(
+                    "Failed to get list object versions, fileId=%s, bucketName=%s",
+                    fileDataId, s3SdkV2Properties.getBucketName()), ex);
+        }
+    }
+
+    private Optional<HeadObjectResponse> headObject(String bucketName, String key) {
+        try {
+            return Optional.of(s3SdkV2Client.headObject(HeadObjectRequest.builder()
+                    .bucket(bucketName)
+                    .key(key)
+                    .build()));
+        } catch (S3Exception ex) {
+            if (isNotFound(ex)) {
+                return Optional.empty();
+            }
+            throw new StorageException(String.format(
+                    "Failed to head object, key=%s, bucketName=%s", key, bucketName), ex);
+        }
+    }
+
+    public enum MigrationResult {
+
+        MIGRATED,
+        ALREADY_MIGRATED,
+        // объект с самим файлом или посторонний объект
+        SKIPPED,
+        // файл так и не был загружен, переносить нечего
+        NOT_UPLOADED
+
+    }
+}
@@ -0,0 +1,146 @@
+package dev.vality.file.storage.migration;
+
+import dev.vality.file.storage.configuration.properties.MigrationProperties;
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import dev.vality.file.storage.service.exception.StorageException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Хранит прогресс миграции по каждой части в целевом бакете: последний ключ, до которого включительно
+ * все объекты части обработаны, и признак завершения части. После перезапуска листинг части продолжается
+ * со следующего ключа, уже перенесенные файлы при повторной обработке пропускаются. Ключи, которые не удалось
+ * перенести, сохраняются отдельными объектами под {@code failed/}, чтобы перенести их повторно, не останавливая часть.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "migration.enabled", havingValue = "true")
+public class MigrationCheckpointStore {
+
+    private static final String COMPLETED = "x-vality-migration-completed";
+    private static final String FAILED = "failed/";
+
+    private final MigrationProperties migrationProperties;
+    private final S3SdkV2Properties s3SdkV2Properties;
+    private final S3Client s3SdkV2Client;
+
+    public Optional<Checkpoint> load(String partition) {
+        var request = GetObjectRequest.builder()
+                .bucket(s3SdkV2Properties.getBucketName())
+                .key(checkpointKey(partition))
+                .build();
+        try (var objectResponse = s3SdkV2Client.getObject(request)) {
+            var lastKey = new String(objectResponse.readAllBytes(), StandardCharsets.UTF_8);
+            var completed = Boolean.parseBoolean(objectResponse.response().metadata().get(COMPLETED));
+            log.info("Migration checkpoint has been loaded, partition={}, lastKey={}, completed={}",
+                    partition, lastKey, completed);
+            return Optional.of(new Checkpoint(lastKey.isEmpty() ? null : lastKey, completed));
+        } catch (NoSuchKeyException ex) {
+            return Optional.empty();
+        } catch (Exception ex) {
+            throw new StorageException(String.format(
+                    "Failed to load migration checkpoint, partition=%s, bucketName=%s",
+                    partition, s3SdkV2Properties.getBucketName()), ex);
+        }
+    }
+
+    public void save(String partition, Checkpoint checkpoint) {
+        var request = PutObjectRequest.builder()
+                .bucket(s3SdkV2Properties.getBucketName())
+                .key(checkpointKey(partition))
+                .metadata(Map.of(COMPLETED, String.valueOf(checkpoint.completed())))
+                .build();
+        try {
+            var lastKey = checkpoint.lastKey() != null ? checkpoint.lastKey() : "";
+            var putObjectResponse = s3SdkV2Client.putObject(request, RequestBody.fromString(lastKey));
+            var response = putObjectResponse.sdkHttpResponse();
+            if (!response.isSuccessful()) {
+                throw new StorageException(String.format(
+                        "Failed to save migration checkpoint, partition=%s, bucketName=%s",
+                        partition, s3SdkV2Properties.getBucketName()));
+            }
+            log.debug("Migration checkpoint has been saved, partition={}, checkpoint={}", partition, checkpoint);
+        } catch (S3Exception ex) {
+            throw new StorageException(String.format(
+                    "Failed to save migration checkpoint, partition=%s, bucketName=%s",
+                    partition, s3SdkV2Properties.getBucketName()), ex);
+        }
+    }
+
+    /**
+     * Запоминает ключ, который не удалось перенести. В теле объекта — текст ошибки для разбора.
+     */
+    public void saveFailed(String key, String error) {
+        var request = PutObjectRequest.builder()
+                .bucket(s3SdkV2Properties.getBucketName())
+                .key(failedPrefix() + key)
+                .build();
+        try {
+            var putObjectResponse = s3SdkV2Client.putObject(request, RequestBody.fromString(String.valueOf(error)));
+            if (!putObjectResponse.sdkHttpResponse().isSuccessful()) {
+                throw new StorageException(String.format(
+                        "Failed to save failed migration key, key=%s, bucketName=%s",
+                        key, s3SdkV2Properties.getBucketName()));
+            }
+        } catch (S3Exception ex) {
+            throw new StorageException(String.format(
+                    "Failed to save failed migration key, key=%s, bucketName=%s",
+                    key, s3SdkV2Properties.getBucketName()), ex);
+        }
+    }
+
+    /**
+     * Ключи части, которые не удалось перенести при предыдущих проходах.
+     */
+    public List<String> loadFailed(String partition) {
+        var failedPrefix = failedPrefix();
+        var request = ListObjectsV2Request.builder()
+                .bucket(s3SdkV2Properties.getBucketName())
+                .prefix(failedPrefix + partition)
+                .build();
+        try {
+            return s3SdkV2Client.listObjectsV2Paginator(request).contents().stream()
+                    .map(object -> object.key().substring(failedPrefix.length()))
+                    .toList();
+        } catch (S3Exception ex) {
+            throw new StorageException(String.format(
+                    "Failed to load failed migration keys, partition=%s, bucketName=%s",
+                    partition, s3SdkV2Properties.getBucketName()), ex);
+        }
+    }
+
+    public void removeFailed(String key) {
+        try {
+            s3SdkV2Client.deleteObject(DeleteObjectRequest.builder()
+                    .bucket(s3SdkV2Properties.getBucketName())
+                    .key(failedPrefix() + key)
+                    .build());
+        } catch (S3Exception ex) {
+            throw new StorageException(String.format(
+                    "Failed to remove failed migration key, key=%s, bucketName=%s",
+                    key, s3SdkV2Properties.getBucketName()), ex);
+        }
+    }
+
+    private String failedPrefix() {
+        return migrationProperties.getCheckpointPrefix() + FAILED + migrationProperties.getSourceBucketName() + "/";
+    }
+
+    private String checkpointKey(String partition) {
+        return migrationProperties.getCheckpointPrefix() + migrationProperties.getSourceBucketName() + "/" + partition;
+    }
+
+    public record Checkpoint(String lastKey, boolean completed) {
+    }
+}
@@ -0,0 +1,36 @@
+package dev.vality.file.storage.migration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Равномерно распределяет разрешения во времени без накопления запаса: каждый вызов {@link #acquire}
+ * резервирует следующий свободный интервал и ждет его начала. Запрос большего количества разрешений,
+ * чем выдается в секунду, не блокируется навсегда, а сдвигает время для следующих вызовов.
+ */
+public class RateLimiter {
+
+    private final double nanosPerPermit;
+    private long nextFreeNanos;
+
+    public RateLimiter(long permitsPerSecond) {
+        this.nanosPerPermit = permitsPerSecond > 0 ? (double) TimeUnit.SECONDS.toNanos(1) / permitsPerSecond : 0;
+        this.nextFreeNanos = System.nanoTime();
+    }
+
+    public void acquire(long permits) throws InterruptedException {
+        if (nanosPerPermit == 0 || permits <= 0) {
+            return;
+        }
+        var waitNanos = reserve(permits);
+        if (waitNanos > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    private synchronized long reserve(long permits) {
+        var now = System.nanoTime();
+        var waitNanos = Math.max(0, nextFreeNanos - now);
+        nextFreeNanos = Math.max(nextFreeNanos, now) + (long) (permits * nanosPerPermit);
+        return waitNanos;
+    }
+}
@@ -0,0 +1,117 @@
+package dev.vality.file.storage.monitoring;
+
+import dev.vality.file.storage.*;
+import dev.vality.file.storage.service.StorageService;
+import dev.vality.msgpack.Value;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+
+import java.net.URL;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Метрики методов {@link StorageService}: время выполнения с исходом и тип ошибки. Вместе с
+ * {@link S3MetricsInterceptor} показывает, какая часть времени метода приходится на вызовы s3.
+ */
+@RequiredArgsConstructor
+public class MeteredStorageService implements StorageService {
+
+    public static final String METHOD_METRIC = "file.storage.service.method";
+    public static final String PAYLOAD_METRIC = "file.storage.service.payload";
+
+    private final StorageService storageService;
+    // у шардов ShardedStorageService одинаковые методы, поэтому метрики различаются тегом shard
+    private final String shardId;
+    private final MeterRegistry meterRegistry;
+    // register() на каждый вызов ищет метр в реестре и собирает теги, поэтому метры кешируются по тегам
+    private final Map<MethodTags, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> payloads = new ConcurrentHashMap<>();
+
+    @Override
+    public NewFileResult createNewFile(String fileDataId, Map<String, Value> metadata, Instant expirationTime) {
+        return record("createNewFile", () -> storageService.createNewFile(fileDataId, metadata, expirationTime));
+    }
+
+    @Override
+    public URL generateDownloadUrl(String fileDataId, Instant expirationTime) {
+        return record("generateDownloadUrl", () -> storageService.generateDownloadUrl(fileDataId, expirationTime));
+    }
+
+    @Override
+    public FileData getFileData(String fileDataId) {
+        return record("getFileData", () -> storageService.getFileData(fileDataId));
+    }
+
+    @Override
+    public FileData getMultipartFileData(String fileId) {
+        return record("getMultipartFileData", () -> storageService.getMultipartFileData(fileId));
+    }
+
+    @Override
+    public CreateMultipartUploadResult createMultipartUpload(String fileDataId, Map<String, Value> metadata) {
+        return record("createMultipartUpload", () -> storageService.createMultipartUpload(fileDataId, metadata));
+    }
+
+    @Override
+    public UploadMultipartResult uploadMultipart(UploadMultipartRequestData requestData) {
+        payload("uploadMultipart").record(requestData.getContentLength());
+        return record("uploadMultipart", () -> storageService.uploadMultipart(requestData));
+    }
+
+    @Override
+    public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+        return record("completeMultipartUpload", () -> storageService.completeMultipartUpload(request));
+    }
+
+    @Override
+    public URL generateMultipartDownloadUrl(String fileDataId, Instant expirationTime) {
+        return record(
+                "generateMultipartDownloadUrl",
+                () -> storageService.generateMultipartDownloadUrl(fileDataId, expirationTime));
+    }
+
+    private <T> T record(String method, Supplier<T> call) {
+        var startNanos = System.nanoTime();
+        var outcome = "success";
+        var exception = "none";
+        try {
+            return call.get();
+        } catch (RuntimeException ex) {
+            outcome = "error";
+            exception = ex.getClass().getSimpleName();
+            throw ex;
+        } finally {
+            timer(new MethodTags(method, outcome, exception))
+                    .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private Timer timer(MethodTags methodTags) {
+        return timers.computeIfAbsent(methodTags, tags -> Timer.builder(METHOD_METRIC)
+                .tag("method", tags.method())
+                .tag("outcome", tags.outcome())
+                .tag("exception", tags.exception())
+                .tag("shard", shardId)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    private DistributionSummary payload(String method) {
+        return payloads.computeIfAbsent(method, key -> DistributionSummary.builder(PAYLOAD_METRIC)
+                .baseUnit("bytes")
+                .tag("method", key)
+                .tag("shard", shardId)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+    }
+
+    private record MethodTags(String method, String outcome, String exception) {
+    }
+}
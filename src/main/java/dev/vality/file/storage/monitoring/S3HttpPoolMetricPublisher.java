@@ -0,0 +1,68 @@
+package dev.vality.file.storage.monitoring;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import software.amazon.awssdk.http.HttpMetric;
+import software.amazon.awssdk.metrics.MetricCollection;
+import software.amazon.awssdk.metrics.MetricPublisher;
+import software.amazon.awssdk.metrics.SdkMetric;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Публикует состояние пула соединений http клиента S3 SDK. SDK сообщает занятые, свободные и ожидающие
+ * соединения в метриках каждой попытки запроса, поэтому gauge показывают состояние пула на момент
+ * последнего запроса, а время ожидания соединения записывается для каждой попытки. Пулы различаются тегами
+ * {@code shard} и {@code client}.
+ */
+public class S3HttpPoolMetricPublisher implements MetricPublisher {
+
+    private final AtomicLong leased = new AtomicLong();
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong available = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    private final Timer acquireTimer;
+
+    public S3HttpPoolMetricPublisher(MeterRegistry meterRegistry, String shardId, String client) {
+        gauge(meterRegistry, "file.storage.s3.pool.leased", shardId, client, leased);
+        gauge(meterRegistry, "file.storage.s3.pool.pending", shardId, client, pending);
+        gauge(meterRegistry, "file.storage.s3.pool.available", shardId, client, available);
+        gauge(meterRegistry, "file.storage.s3.pool.max", shardId, client, max);
+        this.acquireTimer = Timer.builder("file.storage.s3.pool.acquire")
+                .description("Time spent waiting for a connection from the S3 http client pool")
+                .tag("shard", shardId)
+                .tag("client", client)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    @Override
+    public void publish(MetricCollection metricCollection) {
+        update(metricCollection, HttpMetric.LEASED_CONCURRENCY, leased);
+        update(metricCollection, HttpMetric.PENDING_CONCURRENCY_ACQUIRES, pending);
+        update(metricCollection, HttpMetric.AVAILABLE_CONCURRENCY, available);
+        update(metricCollection, HttpMetric.MAX_CONCURRENCY, max);
+        metricCollection.metricValues(HttpMetric.CONCURRENCY_ACQUIRE_DURATION).forEach(acquireTimer::record);
+        metricCollection.children().forEach(this::publish);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private static void update(MetricCollection metricCollection, SdkMetric<Integer> metric, AtomicLong value) {
+        metricCollection.metricValues(metric).forEach(value::set);
+    }
+
+    private static void gauge(MeterRegistry meterRegistry,
+                              String name,
+                              String shardId,
+                              String client,
+                              AtomicLong value) {
+        Gauge.builder(name, value, AtomicLong::get)
+                .tag("shard", shardId)
+                .tag("client", client)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,131 @@
+package dev.vality.file.storage.monitoring;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.interceptor.*;
+import software.amazon.awssdk.http.SdkHttpHeaders;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Метрики каждого вызова S3 SDK. {@code file.storage.s3.call} — весь вызов операции, включая маршалинг,
+ * подпись, ожидание соединения и ретраи, {@code file.storage.s3.attempt} — только одна попытка от отправки
+ * запроса до получения ответа, то есть задержка самого s3. Разница между ними — накладные расходы клиента.
+ * Экземпляр создается на каждый клиент s3, чтобы метрики шардов различались тегом {@code shard}.
+ */
+public class S3MetricsInterceptor implements ExecutionInterceptor {
+
+    public static final String CALL_METRIC = "file.storage.s3.call";
+    public static final String ATTEMPT_METRIC = "file.storage.s3.attempt";
+    public static final String ERRORS_METRIC = "file.storage.s3.errors";
+    public static final String PAYLOAD_METRIC = "file.storage.s3.payload";
+
+    private static final ExecutionAttribute<Long> CALL_START = new ExecutionAttribute<>("FileStorageCallStart");
+    private static final ExecutionAttribute<Long> ATTEMPT_START = new ExecutionAttribute<>("FileStorageAttemptStart");
+    private static final String CONTENT_LENGTH = "Content-Length";
+
+    private final MeterRegistry meterRegistry;
+    private final String shardId;
+    // интерцептор вызывается на каждую попытку запроса, поэтому метры не регистрируются заново, а берутся из кеша
+    private final Map<MeterTags, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<MeterTags, DistributionSummary> payloads = new ConcurrentHashMap<>();
+    private final Map<MeterTags, Counter> errors = new ConcurrentHashMap<>();
+
+    public S3MetricsInterceptor(MeterRegistry meterRegistry, String shardId) {
+        this.meterRegistry = meterRegistry;
+        this.shardId = shardId;
+    }
+
+    @Override
+    public void beforeExecution(Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+        executionAttributes.putAttribute(CALL_START, System.nanoTime());
+    }
+
+    @Override
+    public void beforeTransmission(Context.BeforeTransmission context, ExecutionAttributes executionAttributes) {
+        executionAttributes.putAttribute(ATTEMPT_START, System.nanoTime());
+        contentLength(context.httpRequest())
+                .ifPresent(length -> payload(operation(executionAttributes), "request").record(length));
+    }
+
+    @Override
+    public void afterTransmission(Context.AfterTransmission context, ExecutionAttributes executionAttributes) {
+        var operation = operation(executionAttributes);
+        var status = String.valueOf(context.httpResponse().statusCode());
+        record(ATTEMPT_METRIC, operation, status, executionAttributes.getAttribute(ATTEMPT_START));
+        contentLength(context.httpResponse()).ifPresent(length -> payload(operation, "response").record(length));
+    }
+
+    @Override
+    public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+        var status = String.valueOf(context.httpResponse().statusCode());
+        record(CALL_METRIC, operation(executionAttributes), status, executionAttributes.getAttribute(CALL_START));
+    }
+
+    @Override
+    public void onExecutionFailure(Context.FailedExecution context, ExecutionAttributes executionAttributes) {
+        var operation = operation(executionAttributes);
+        var exception = context.exception();
+        var errorCode = exception instanceof AwsServiceException serviceException
+                && serviceException.awsErrorDetails() != null
+                && serviceException.awsErrorDetails().errorCode() != null
+                ? serviceException.awsErrorDetails().errorCode()
+                : exception.getClass().getSimpleName();
+        var status = exception instanceof AwsServiceException serviceException
+                ? String.valueOf(serviceException.statusCode())
+                : "none";
+        record(CALL_METRIC, operation, status, executionAttributes.getAttribute(CALL_START));
+        errors.computeIfAbsent(
+                        new MeterTags(ERRORS_METRIC, operation, errorCode),
+                        tags -> meterRegistry.counter(
+                                ERRORS_METRIC, "operation", tags.operation(), "code", tags.value(), "shard", shardId))
+                .increment();
+    }
+
+    private void record(String metric, String operation, String status, Long startNanos) {
+        if (startNanos == null) {
+            return;
+        }
+        timers.computeIfAbsent(new MeterTags(metric, operation, status), tags -> Timer.builder(tags.metric())
+                        .tag("operation", tags.operation())
+                        .tag("status", tags.value())
+                        .tag("shard", shardId)
+                        .publishPercentiles(0.5, 0.95, 0.99)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry))
+                .record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private DistributionSummary payload(String operation, String direction) {
+        return payloads.computeIfAbsent(
+                new MeterTags(PAYLOAD_METRIC, operation, direction),
+                tags -> DistributionSummary.builder(tags.metric())
+                        .baseUnit("bytes")
+                        .tag("operation", tags.operation())
+                        .tag("direction", tags.value())
+                        .tag("shard", shardId)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry));
+    }
+
+    private static String operation(ExecutionAttributes executionAttributes) {
+        return Optional.ofNullable(executionAttributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME))
+                .orElse("unknown");
+    }
+
+    private static Optional<Long> contentLength(SdkHttpHeaders headers) {
+        return headers.firstMatchingHeader(CONTENT_LENGTH).map(Long::parseLong);
+    }
+
+    /**
+     * @param value статус ответа, код ошибки или направление, в зависимости от метрики
+     */
+    private record MeterTags(String metric, String operation, String value) {
+    }
+}
@@ -0,0 +1,39 @@
+package dev.vality.file.storage.monitoring;
+
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import dev.vality.file.storage.service.StorageService;
+import dev.vality.file.storage.service.shard.ShardedStorageService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Оборачивает реализацию {@link StorageService} в {@link MeteredStorageService}.
+ */
+@Component
+public class StorageServiceMetricsPostProcessor implements BeanPostProcessor {
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+    private final ObjectProvider<S3SdkV2Properties> s3SdkV2Properties;
+
+    public StorageServiceMetricsPostProcessor(ObjectProvider<MeterRegistry> meterRegistry,
+                                              ObjectProvider<S3SdkV2Properties> s3SdkV2Properties) {
+        this.meterRegistry = meterRegistry;
+        this.s3SdkV2Properties = s3SdkV2Properties;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        // шарды ShardedStorageService обернуты по отдельности
+        if (bean instanceof StorageService storageService
+                && !(bean instanceof MeteredStorageService)
+                && !(bean instanceof ShardedStorageService)) {
+            return new MeteredStorageService(
+                    storageService,
+                    s3SdkV2Properties.getObject().getSharding().getShardId(),
+                    meterRegistry.getObject());
+        }
+        return bean;
+    }
+}
@@ -0,0 +1,51 @@
+package dev.vality.file.storage.monitoring;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+
+/**
+ * Подписывается на JFR события {@code jdk.VirtualThreadPinned} и публикует их в метрики. Закрепление
+ * виртуального потока на carrier потоке (блокировка внутри synchronized или native кода) лишает режим
+ * виртуальных потоков смысла, поэтому за ним нужно следить.
+ */
+@Slf4j
+public class VirtualThreadPinnedMonitor implements AutoCloseable {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private final RecordingStream recordingStream;
+    private final Counter pinnedCounter;
+    private final Timer pinnedTimer;
+
+    public VirtualThreadPinnedMonitor(MeterRegistry meterRegistry, Duration threshold) {
+        this.pinnedCounter = Counter.builder("jvm.threads.virtual.pinned")
+                .description("Virtual thread pinned carrier events longer than the threshold")
+                .register(meterRegistry);
+        this.pinnedTimer = Timer.builder("jvm.threads.virtual.pinned.duration")
+                .description("Duration of virtual thread pinned carrier events")
+                .register(meterRegistry);
+        this.recordingStream = new RecordingStream();
+        recordingStream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        recordingStream.onEvent(PINNED_EVENT, event -> {
+            pinnedCounter.increment();
+            pinnedTimer.record(event.getDuration());
+            log.debug("Virtual thread was pinned, duration={}, stackTrace={}",
+                    event.getDuration(), event.getStackTrace());
+        });
+    }
+
+    public void start() {
+        recordingStream.startAsync();
+        log.info("Virtual thread pinned events monitor has been started");
+    }
+
+    @Override
+    public void close() {
+        recordingStream.close();
+    }
+}
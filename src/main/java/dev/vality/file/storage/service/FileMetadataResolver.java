@@ -0,0 +1,481 @@
+package dev.vality.file.storage.service;
+
+import dev.vality.file.storage.FileData;
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import dev.vality.file.storage.service.cache.CachedVersion;
+import dev.vality.file.storage.service.cache.FileLayoutCache;
+import dev.vality.file.storage.service.cache.FileMetadataCache;
+import dev.vality.file.storage.service.cache.FileVersionsCache;
+import dev.vality.file.storage.service.exception.FileAlreadyUploadedException;
+import dev.vality.file.storage.service.exception.FileNotFoundException;
+import dev.vality.file.storage.service.exception.StorageException;
+import dev.vality.file.storage.service.model.FileLayout;
+import dev.vality.file.storage.service.model.FileMetadata;
+import dev.vality.file.storage.service.model.FileVersions;
+import dev.vality.file.storage.service.read.S3ReadRouter;
+import dev.vality.file.storage.util.FutureUtil;
+import dev.vality.file.storage.util.MetadataValueCodec;
+import dev.vality.msgpack.Value;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Резолвит метаданные файла без чтения тела объектов. В раскладке {@code METADATA_OBJECT} метаданные
+ * и сам файл читаются двумя параллельными {@code HeadObject} по ключам, без {@code ListObjectVersions}.
+ * Если объекта с метаданными нет, файл читается в раскладке {@code TWO_VERSIONS}: список ревизий
+ * запрашивается по точному ключу с ограничением на количество, а обе ревизии (метаданные и сам файл)
+ * читаются через {@code HeadObject} параллельно. Прочитанные ревизии кешируются в {@link FileMetadataCache},
+ * а списки ревизий на короткое время в {@link FileVersionsCache}.
+ * <p>
+ * Раскладка, в которой пишутся новые файлы, проверяется первой: при {@code layout.write=TWO_VERSIONS} сначала
+ * читается список ревизий, и загруженный файл в этой раскладке (пустая ревизия с метаданными и ревизия с файлом)
+ * читается без {@code HeadObject} объекта с метаданными. Объект с метаданными проверяется, только если список
+ * ревизий на такой файл не похож.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FileMetadataResolver {
+
+    public static final String FILE_ID = "x-vality-file-id";
+    public static final String CREATED_AT = "x-vality-created-at";
+    public static final String EXPIRATION_TIME = "x-vality-expiration-time";
+    public static final String METADATA = "x-vality-metadata-";
+    public static final String FILENAME_METADATA = "filename";
+    public static final String FILENAME_PARAM = "filename=";
+    public static final String LAYOUT_VERSION = "x-vality-layout-version";
+    public static final String METADATA_OBJECT_SUFFIX = ".metadata";
+
+    // 2 ревизии достаточно для существующего файла, третья нужна только чтобы отличить перезаливку
+    private static final int MAX_VERSIONS_TO_RESOLVE = 3;
+
+    private final S3SdkV2Properties s3SdkV2Properties;
+    private final S3ReadRouter s3ReadRouter;
+    @Qualifier("s3MetadataExecutor")
+    private final ExecutorService s3MetadataExecutor;
+    private final FileMetadataCache fileMetadataCache;
+    private final FileVersionsCache fileVersionsCache;
+    private final FileLayoutCache fileLayoutCache;
+
+    public static String metadataObjectKey(String fileId) {
+        return fileId + METADATA_OBJECT_SUFFIX;
+    }
+
+    public FileData resolveFileData(String fileId) {
+        var twoVersions = findTwoVersionsLayoutVersions(fileId);
+        if (twoVersions != null) {
+            return resolveTwoVersionsFileData(toFileVersions(fileId, twoVersions));
+        }
+        var metadataObjectFuture = findMetadataObjectAsync(fileId);
+        var fileObject = findFileObject(fileId);
+        var metadataObject = FutureUtil.join(metadataObjectFuture);
+        if (metadataObject.isEmpty()) {
+            return resolveTwoVersionsFileData(resolveFileVersions(fileId));
+        }
+        var fileMetadata = metadataObject.get();
+        var fileHead = fileObject.orElseThrow(() -> fileNotUploaded(fileId));
+        return new FileData(
+                fileId,
+                extractFileName(fileId, fileHead.versionId(), fileHead),
+                fileMetadata.getCreatedAt(),
+                fileMetadata.getMetadata());
+    }
+
+    /**
+     * Ревизия с самим файлом, на которую подписывается ссылка на скачивание.
+     */
+    public String resolveFileVersionId(String fileId) {
+        var twoVersions = findTwoVersionsLayoutVersions(fileId);
+        if (twoVersions != null) {
+            return toFileVersions(fileId, twoVersions).getFileVersionId();
+        }
+        var metadataObjectFuture = findMetadataObjectAsync(fileId);
+        var fileObject = findFileObject(fileId);
+        if (FutureUtil.join(metadataObjectFuture).isEmpty()) {
+            return resolveFileVersions(fileId).getFileVersionId();
+        }
+        return fileObject.orElseThrow(() -> fileNotUploaded(fileId)).versionId();
+    }
+
+    /**
+     * @return ревизии файла, если он в раскладке {@code TWO_VERSIONS}, или {@code null}, если раскладку нужно
+     *         определять по объекту с метаданными
+     */
+    private List<ObjectVersion> findTwoVersionsLayoutVersions(String fileId) {
+        if (fileLayoutCache.isTwoVersionsLayout(fileId)) {
+            return getObjectVersions(fileId);
+        }
+        if (s3SdkV2Properties.getLayout().getWrite() != FileLayout.TWO_VERSIONS) {
+            return null;
+        }
+        var versions = getObjectVersions(fileId);
+        // повторно загруженный файл METADATA_OBJECT тоже дает 2 ревизии, но обе с данными
+        var uploadedTwoVersionsFile = versions.size() == 2 && versions.stream()
+                .filter(Predicate.not(ObjectVersion::isLatest))
+                .allMatch(version -> version.size() != null && version.size() == 0);
+        return uploadedTwoVersionsFile ? versions : null;
+    }
+
+    /**
+     * Метаданные файла, созданного через {@code createNewFile}, сам файл в который еще не загружен.
+     * Список ревизий читается мимо кеша, чтобы не пропустить загрузку, сделанную другим инстансом.
+     */
+    public FileMetadata resolveNotUploadedFileMetadata(String fileId) {
+        var metadataObjectFuture = findMetadataObjectAsync(fileId);
+        var versions = listObjectVersions(fileId);
+        var metadataObject = FutureUtil.join(metadataObjectFuture);
+        if (metadataObject.isPresent()) {
+            if (!versions.isEmpty()) {
+                throw fileAlreadyUploaded(fileId);
+            }
+            return metadataObject.get();
+        }
+        if (versions.isEmpty()) {
+            throw new FileNotFoundException(String.format(
+                    "Object version with file metadata not found, fileId=%s, bucketName=%s",
+                    fileId, s3SdkV2Properties.getBucketName()));
+        }
+        if (versions.size() > 1) {
+            throw fileAlreadyUploaded(fileId);
+        }
+        return getFileMetadata(fileId, versions.get(0).versionId());
+    }
+
+    private FileData resolveTwoVersionsFileData(FileVersions fileVersions) {
+        var fileId = fileVersions.getFileId();
+        var metadataVersionId = fileVersions.getMetadataVersionId();
+        var cachedFileMetadata = fileMetadataCache.getFileMetadataIfPresent(fileId, metadataVersionId);
+        var metadataFuture = cachedFileMetadata != null
+                ? CompletableFuture.completedFuture(cachedFileMetadata)
+                : CompletableFuture.supplyAsync(
+                        () -> getFileMetadata(fileId, metadataVersionId),
+                        s3MetadataExecutor);
+        var fileName = getFileName(fileId, fileVersions.getFileVersionId());
+        var fileMetadata = FutureUtil.join(metadataFuture);
+        return new FileData(
+                fileMetadata.getFileId(),
+                fileName,
+                fileMetadata.getCreatedAt(),
+                fileMetadata.getMetadata());
+    }
+
+    public FileData resolveMultipartFileData(String fileId) {
+        var fileVersionId = resolveLatestVersionId(fileId);
+        var fileMetadata = getFileMetadata(fileId, fileVersionId);
+        Map<String, Value> metadata = fileMetadata.getMetadata();
+        String fileName = metadata.get(FILENAME_METADATA).getStr();
+        return new FileData(
+                fileId,
+                fileName,
+                fileMetadata.getCreatedAt(),
+                metadata);
+    }
+
+    public FileVersions resolveFileVersions(String fileId) {
+        return toFileVersions(fileId, getObjectVersions(fileId));
+    }
+
+    public String resolveLatestVersionId(String fileId) {
+        return toLatestVersionId(fileId, getObjectVersions(fileId));
+    }
+
+    private FileVersions toFileVersions(String fileId, List<ObjectVersion> versions) {
+        if (!versions.isEmpty()) {
+            fileLayoutCache.putTwoVersionsLayout(fileId);
+        }
+        checkFileExist(fileId, versions);
+        return new FileVersions(
+                fileId,
+                getFileMetadataVersionId(fileId, versions),
+                getFileVersionId(fileId, versions));
+    }
+
+    private String toLatestVersionId(String fileId, List<ObjectVersion> versions) {
+        if (versions.isEmpty()) {
+            throw new FileNotFoundException(String.format(
+                    "Failed to check object version with file on exist, fileId=%s, bucketName=%s ",
+                    fileId,
+                    s3SdkV2Properties.getBucketName()));
+        }
+        return getFileVersionId(fileId, versions);
+    }
+
+    public void invalidateFileVersions(String fileId) {
+        fileVersionsCache.invalidate(fileId);
+    }
+
+    private List<ObjectVersion> getObjectVersions(String fileId) {
+        return fileVersionsCache.get(fileId, this::listObjectVersions);
+    }
+
+    private List<ObjectVersion> listObjectVersions(String fileId) {
+        try {
+            var request = buildListObjectVersionsRequest(fileId);
+            var listObjectVersionsResponse = s3ReadRouter.read(
+                    S3ReadRouter.LIST_OBJECT_VERSIONS,
+                    client -> client.listObjectVersions(request));
+            return extractObjectVersions(fileId, listObjectVersionsResponse);
+        } catch (S3Exception ex) {
+            throw new StorageException(
+                    String.format(
+                            "Failed to get list object versions, fileId=%s, bucketName=%s",
+                            fileId, s3SdkV2Properties.getBucketName()),
+                    ex);
+        }
+    }
+
+    private ListObjectVersionsRequest buildListObjectVersionsRequest(String fileId) {
+        return ListObjectVersionsRequest.builder()
+                .bucket(s3SdkV2Properties.getBucketName())
+                .prefix(fileId)
+                .maxKeys(MAX_VERSIONS_TO_RESOLVE)
+                .build();
+    }
+
+    private List<ObjectVersion> extractObjectVersions(String fileId,
+                                                      ListObjectVersionsResponse listObjectVersionsResponse) {
+        var response = listObjectVersionsResponse.sdkHttpResponse();
+        log.info(String.format("Check list object versions result %d:%s",
+                response.statusCode(), response.statusText()));
+        if (response.isSuccessful()) {
+            // по префиксу могут попасть чужие ключи, нужны только ревизии этого файла
+            var versions = listObjectVersionsResponse.versions().stream()
+                    .filter(version -> fileId.equals(version.key()))
+                    .toList();
+            log.info("List object versions has been got, fileId={}, bucketName={}, objectVersions={}, ",
+                    fileId,
+                    s3SdkV2Properties.getBucketName(),
+                    versions.stream().map(ObjectVersion::toString).collect(Collectors.joining(",")));
+            return versions;
+        } else {
+            throw new StorageException(String.format(
+                    "Failed to get list object versions, fileId=%s, bucketName=%s",
+                    fileId, s3SdkV2Properties.getBucketName()));
+        }
+    }
+
+    private void checkFileExist(String fileId, List<ObjectVersion> versions) {
+        // должно быть 2 ревизии — 1я это метаданные, 2ая это сам загруженный файл
+        if (versions.size() != 2) {
+            throw new FileNotFoundException(String.format(
+                    "Failed to check object version with file on exist, fileId=%s, bucketName=%s, objectVersions=%s, ",
+                    fileId,
+                    s3SdkV2Properties.getBucketName(),
+                    versions.stream().map(ObjectVersion::toString).collect(Collectors.joining(","))));
+        }
+    }
+
+    private String getFileMetadataVersionId(String fileId, List<ObjectVersion> versions) {
+        return versions.stream()
+                .filter(Predicate.not(ObjectVersion::isLatest))
+                .findFirst()
+                .orElseThrow(() -> new StorageException(String.format(
+                        "Object version with file metadata not found, fileId=%s, bucketName=%s, objectVersions=%s, ",
+                        fileId,
+                        s3SdkV2Properties.getBucketName(),
+                        versions.stream().map(ObjectVersion::toString).collect(Collectors.joining(",")))))
+                .versionId();
+    }
+
+    private String getFileVersionId(String fileId, List<ObjectVersion> versions) {
+        return versions.stream()
+                .filter(ObjectVersion::isLatest)
+                .findFirst()
+                .orElseThrow(() -> new StorageException(String.format(
+                        "Object version with file not found, fileId=%s, bucketName=%s, objectVersions=%s, ",
+                        fileId,
+                        s3SdkV2Properties.getBucketName(),
+                        versions.stream().map(ObjectVersion::toString).collect(Collectors.joining(",")))))
+                .versionId();
+    }
+
+    private CompletableFuture<Optional<FileMetadata>> findMetadataObjectAsync(String fileId) {
+        var cachedMetadataObject = fileMetadataCache.getMetadataObjectIfPresent(fileId);
+        if (cachedMetadataObject != null) {
+            return CompletableFuture.completedFuture(Optional.of(cachedMetadataObject));
+        }
+        return CompletableFuture.supplyAsync(
+                () -> findObject(fileId, buildHeadMetadataObjectRequest(fileId))
+                        .map(headObjectResponse -> {
+                            var cachedVersion = extractMetadataObject(fileId, headObjectResponse);
+                            fileMetadataCache.putMetadataObject(fileId, cachedVersion);
+                            return cachedVersion.getFileMetadata();
+                        }),
+                s3MetadataExecutor);
+    }
+
+    private Optional<HeadObjectResponse> findFileObject(String fileId) {
+        return findObject(fileId, buildHeadFileObjectRequest(fileId));
+    }
+
+    private Optional<HeadObjectResponse> findObject(String fileId, HeadObjectRequest headObjectRequest) {
+        try {
+            var headObjectResponse = s3ReadRouter.read(
+                    S3ReadRouter.HEAD_OBJECT,
+                    client -> client.headObject(headObjectRequest));
+            return Optional.of(checkHeadObjectResponse(fileId, null, headObjectResponse));
+        } catch (S3Exception ex) {
+            if (isNotFound(ex)) {
+                return Optional.empty();
+            }
+            throw new StorageException(
+                    String.format(
+                            "Failed to head object, key=%s, bucketName=%s",
+                            headObjectRequest.key(), s3SdkV2Properties.getBucketName()),
+                    ex);
+        }
+    }
+
+    public static boolean isNotFound(Throwable ex) {
+        return ex instanceof NoSuchKeyException
+                || ex instanceof S3Exception s3Exception && s3Exception.statusCode() == 404;
+    }
+
+    private HeadObjectRequest buildHeadMetadataObjectRequest(String fileId) {
+        return HeadObjectRequest.builder()
+                .bucket(s3SdkV2Properties.getBucketName())
+                .key(metadataObjectKey(fileId))
+                .build();
+    }
+
+    private HeadObjectRequest buildHeadFileObjectRequest(String fileId) {
+        return HeadObjectRequest.builder()
+                .bucket(s3SdkV2Properties.getBucketName())
+                .key(fileId)
+                .build();
+    }
+
+    private CachedVersion extractMetadataObject(String fileId, HeadObjectResponse headObjectResponse) {
+        var layoutVersion = headObjectResponse.hasMetadata()
+                ? headObjectResponse.metadata().get(LAYOUT_VERSION)
+                : null;
+        if (FileLayout.ofVersion(layoutVersion).filter(FileLayout.METADATA_OBJECT::equals).isEmpty()) {
+            throw new StorageException(String.format(
+                    "Object with file metadata has unknown layout version, " +
+                            "fileId=%s, layoutVersion=%s, bucketName=%s",
+                    fileId, layoutVersion, s3SdkV2Properties.getBucketName()));
+        }
+        return extractFileMetadata(fileId, headObjectResponse.versionId(), headObjectResponse);
+    }
+
+    private FileNotFoundException fileNotUploaded(String fileId) {
+        return new FileNotFoundException(String.format(
+                "Object with file not uploaded yet, fileId=%s, bucketName=%s",
+                fileId, s3SdkV2Properties.getBucketName()));
+    }
+
+    private FileAlreadyUploadedException fileAlreadyUploaded(String fileId) {
+        return new FileAlreadyUploadedException(String.format(
+                "Object with file already uploaded, fileId=%s, bucketName=%s",
+                fileId, s3SdkV2Properties.getBucketName()));
+    }
+
+    private HeadObjectResponse headObject(String fileId, String versionId) {
+        try {
+            var request = buildHeadObjectRequest(fileId, versionId);
+            var headObjectResponse = s3ReadRouter.read(S3ReadRouter.HEAD_OBJECT, client -> client.headObject(request));
+            return checkHeadObjectResponse(fileId, versionId, headObjectResponse);
+        } catch (S3Exception ex) {
+            throw new StorageException(
+                    String.format(
+                            "Failed to head object version, " +
+                                    "fileId=%s, versionId=%s, bucketName=%s",
+                            fileId, versionId, s3SdkV2Properties.getBucketName()),
+                    ex);
+        }
+    }
+
+    private HeadObjectRequest buildHeadObjectRequest(String fileId, String versionId) {
+        return HeadObjectRequest.builder()
+                .bucket(s3SdkV2Properties.getBucketName())
+                .key(fileId)
+                .versionId(versionId)
+                .build();
+    }
+
+    private HeadObjectResponse checkHeadObjectResponse(String fileId,
+                                                       String versionId,
+                                                       HeadObjectResponse headObjectResponse) {
+        var response = headObjectResponse.sdkHttpResponse();
+        log.info(String.format("Check head object result %d:%s",
+                response.statusCode(), response.statusText()));
+        if (response.isSuccessful()) {
+            log.info("Object version head has been got, " +
+                            "fileId={}, versionId={}, bucketName={}",
+                    fileId, versionId, s3SdkV2Properties.getBucketName());
+            return headObjectResponse;
+        } else {
+            throw new StorageException(String.format(
+                    "Failed to head object version, " +
+                            "fileId=%s, versionId=%s, bucketName=%s",
+                    fileId, versionId, s3SdkV2Properties.getBucketName()));
+        }
+    }
+
+    private FileMetadata getFileMetadata(String fileId, String versionId) {
+        return fileMetadataCache.getFileMetadata(
+                fileId,
+                versionId,
+                () -> extractFileMetadata(fileId, versionId, headObject(fileId, versionId)));
+    }
+
+    CachedVersion extractFileMetadata(String fileId,
+                                      String versionId,
+                                      HeadObjectResponse objectResponse) {
+        if (objectResponse.hasMetadata() && !objectResponse.metadata().isEmpty()) {
+            var s3Metadata = objectResponse.metadata();
+            var metadata = s3Metadata.entrySet().stream()
+                    .filter(entry -> entry.getKey().startsWith(METADATA)
+                            && entry.getValue() != null)
+                    .collect(Collectors.toMap(
+                            o -> o.getKey().substring(METADATA.length()),
+                            o -> MetadataValueCodec.decode(o.getValue())));
+            var fileMetadata = new FileMetadata(
+                    fileId, s3Metadata.get(CREATED_AT), metadata, s3Metadata.get(EXPIRATION_TIME));
+            return CachedVersion.ofFileMetadata(fileMetadata, s3Metadata);
+        } else {
+            throw new StorageException(String.format(
+                    "Object version with file metadata is empty, " +
+                            "fileId=%s, fileMetadataVersionId=%s, bucketName=%s",
+                    fileId, versionId, s3SdkV2Properties.getBucketName()));
+        }
+    }
+
+    private String getFileName(String fileId, String fileVersionId) {
+        return fileMetadataCache.getFileName(
+                fileId,
+                fileVersionId,
+                () -> extractFileName(fileId, fileVersionId, headObject(fileId, fileVersionId)));
+    }
+
+    String extractFileName(String fileId,
+                           String fileVersionId,
+                           HeadObjectResponse headObjectResponse) {
+        var response = headObjectResponse.sdkHttpResponse();
+        return Optional.ofNullable(headObjectResponse.contentDisposition())
+                .map(FileMetadataResolver::extractFileName)
+                .or(() -> response.firstMatchingHeader("Content-Disposition")
+                        .map(FileMetadataResolver::extractFileName))
+                .orElseThrow(() -> new StorageException(String.format(
+                        "Header 'Content-Disposition' in object version with file is empty, " +
+                                "fileId=%s, fileVersionId=%s, bucketName=%s",
+                        fileId, fileVersionId, s3SdkV2Properties.getBucketName())));
+    }
+
+    public static String extractFileName(String contentDisposition) {
+        int fileNameIndex = contentDisposition.lastIndexOf(FILENAME_PARAM) + FILENAME_PARAM.length();
+        return contentDisposition.substring(fileNameIndex).replaceAll("\"", "");
+    }
+
+}
@@ -0,0 +1,122 @@
+package dev.vality.file.storage.service;
+
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import dev.vality.file.storage.service.exception.StorageException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Создает версионируемый бакет при старте, если его еще нет. Выполняется при любой реализации
+ * {@link StorageService}.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class S3BucketInitializer {
+
+    private final S3SdkV2Properties s3SdkV2Properties;
+    private final S3Client s3SdkV2Client;
+
+    @PostConstruct
+    public void init() {
+        if (!doesBucketExist()) {
+            createBucket();
+            enableBucketVersioning();
+        }
+    }
+
+    // единственный доступный вариант проверки существования бакета на данный момент через catch
+    // в репе сдк висит таска https://github.com/aws/aws-sdk-java-v2/issues/392#issuecomment-880224831
+    // в первой версии сдк тоже через catch проверка на существование
+    // разница только в том, что проверка идет через метод S3Client#getBucketAcl
+    // во второй версии тоже есть этот метод, не уверен в чем разница с выбранным вариантом,
+    // но везде советуют его
+    private boolean doesBucketExist() {
+        try {
+            var request = HeadBucketRequest.builder()
+                    .bucket(s3SdkV2Properties.getBucketName())
+                    .build();
+            var headBucketResponse = s3SdkV2Client.headBucket(request);
+            var response = headBucketResponse.sdkHttpResponse();
+            log.info(String.format("Check exist bucket result %d:%s",
+                    response.statusCode(), response.statusText()));
+            if (response.isSuccessful()) {
+                log.info("Bucket is exist, bucketName={}", s3SdkV2Properties.getBucketName());
+            } else {
+                throw new StorageException(String.format(
+                        "Failed to check bucket on exist, bucketName=%s", s3SdkV2Properties.getBucketName()));
+            }
+            return true;
+        } catch (NoSuchBucketException ex) {
+            log.info("Bucket does not exist, bucketName={}", s3SdkV2Properties.getBucketName());
+            return false;
+        } catch (S3Exception ex) {
+            throw new StorageException(
+                    String.format("Failed to check bucket on exist, bucketName=%s", s3SdkV2Properties.getBucketName()),
+                    ex);
+        }
+    }
+
+    private void createBucket() {
+        try {
+            var s3Waiter = s3SdkV2Client.waiter();
+            var createBucketRequest = CreateBucketRequest.builder()
+                    .bucket(s3SdkV2Properties.getBucketName())
+                    .build();
+            s3SdkV2Client.createBucket(createBucketRequest);
+            var headBucketRequest = HeadBucketRequest.builder()
+                    .bucket(s3SdkV2Properties.getBucketName())
+                    .build();
+            // Wait until the bucket is created and print out the response.
+            s3Waiter.waitUntilBucketExists(headBucketRequest)
+                    .matched()
+                    .response()
+                    .ifPresent(headBucketResponse -> {
+                        var response = headBucketResponse.sdkHttpResponse();
+                        log.info(String.format("Check created bucket result %d:%s",
+                                response.statusCode(), response.statusText()));
+                        if (response.isSuccessful()) {
+                            log.info("Bucket has been created, bucketName={}", s3SdkV2Properties.getBucketName());
+                        } else {
+                            throw new StorageException(String.format(
+                                    "Failed to create bucket, bucketName=%s", s3SdkV2Properties.getBucketName()));
+                        }
+                    });
+        } catch (S3Exception ex) {
+            throw new StorageException(
+                    String.format("Failed to create bucket, bucketName=%s", s3SdkV2Properties.getBucketName()),
+                    ex);
+        }
+    }
+
+    private void enableBucketVersioning() {
+        try {
+            var request = PutBucketVersioningRequest.builder()
+                    .bucket(s3SdkV2Properties.getBucketName())
+                    .versioningConfiguration(VersioningConfiguration.builder()
+                            .status(BucketVersioningStatus.ENABLED)
+                            .build())
+                    .build();
+            var putBucketVersioningResponse = s3SdkV2Client.putBucketVersioning(request);
+            var response = putBucketVersioningResponse.sdkHttpResponse();
+            log.info(String.format("Check enable versioning bucket result %d:%s",
+                    response.statusCode(), response.statusText()));
+            if (response.isSuccessful()) {
+                log.info("Versioning bucket has been enabled, bucketName={}", s3SdkV2Properties.getBucketName());
+            } else {
+                throw new StorageException(String.format(
+                        "Failed to enable bucket versioning, bucketName=%s", s3SdkV2Properties.getBucketName()));
+            }
+        } catch (S3Exception ex) {
+            throw new StorageException(
+                    String.format("Failed to enable bucket versioning, " +
+                            "bucketName=%s", s3SdkV2Properties.getBucketName()),
+                    ex);
+        }
+    }
+}
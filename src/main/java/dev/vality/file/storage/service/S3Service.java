@@ -57,8 +57,7 @@ public class S3Service implements StorageService {
     }
 
     @Override
-    public NewFileResult createNewFile(Map<String, Value> metadata, Instant expirationTime) {
-        String fileDataId = id();
+    public NewFileResult createNewFile(String fileDataId, Map<String, Value> metadata, Instant expirationTime) {
         String fileId = id();
 
         log.info("Trying to create NewFileResult, fileDataId='{}', bucketId='{}'", fileDataId, bucketName);
@@ -120,7 +119,7 @@ public class S3Service implements StorageService {
     }
 
     @Override
-    public CreateMultipartUploadResult createMultipartUpload(Map<String, Value> metadata) {
+    public CreateMultipartUploadResult createMultipartUpload(String fileDataId, Map<String, Value> metadata) {
         throw new UnsupportedOperationException(METHOD_NOT_SUPPORTED);
     }
 
@@ -3,210 +3,88 @@ package dev.vality.file.storage.service;
 import dev.vality.file.storage.*;
 import dev.vality.file.storage.CompleteMultipartUploadRequest;
 import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
-import dev.vality.file.storage.service.exception.FileNotFoundException;
+import dev.vality.file.storage.service.cache.FileMetadataCache;
 import dev.vality.file.storage.service.exception.StorageException;
-import dev.vality.file.storage.util.DamselUtil;
+import dev.vality.file.storage.service.model.FileLayout;
+import dev.vality.file.storage.service.multipart.MultipartUploadRegistry;
+import dev.vality.file.storage.service.part.PartContent;
+import dev.vality.file.storage.service.presign.DownloadUrlPresigner;
+import dev.vality.file.storage.service.presign.UploadUrlPresigner;
+import dev.vality.file.storage.service.shard.ShardedStorageService;
+import dev.vality.file.storage.util.MetadataValueCodec;
 import dev.vality.msgpack.Value;
-import lombok.Getter;
 import lombok.RequiredArgsConstructor;
-import lombok.ToString;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
-import org.springframework.util.CollectionUtils;
 import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.core.sync.RequestBody;
-import software.amazon.awssdk.http.SdkHttpResponse;
 import software.amazon.awssdk.services.s3.S3Client;
 import software.amazon.awssdk.services.s3.model.*;
-import software.amazon.awssdk.services.s3.presigner.S3Presigner;
-import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
-import software.amazon.awssdk.services.s3.presigner.model.PresignedGetObjectRequest;
-import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
 
-import jakarta.annotation.PostConstruct;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.time.Duration;
 import java.time.Instant;
-import java.util.*;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static dev.vality.file.storage.service.FileMetadataResolver.*;
 
 @Service
 @Slf4j
 @RequiredArgsConstructor
+@Qualifier(ShardedStorageService.DEFAULT_SHARD)
 public class S3V2Service implements StorageService {
 
-    private static final String FILE_ID = "x-vality-file-id";
-    private static final String CREATED_AT = "x-vality-created-at";
-    private static final String METADATA = "x-vality-metadata-";
-    private static final String FILENAME_METADATA = "filename";
-    private static final String FILENAME_PARAM = "filename=";
-
     private final S3SdkV2Properties s3SdkV2Properties;
     private final S3Client s3SdkV2Client;
-    private final S3Presigner s3Presigner;
-
-    @PostConstruct
-    public void init() {
-        if (!doesBucketExist()) {
-            createBucket();
-            enableBucketVersioning();
-        }
-    }
+    private final FileMetadataResolver fileMetadataResolver;
+    private final FileMetadataCache fileMetadataCache;
+    private final DownloadUrlPresigner downloadUrlPresigner;
+    private final UploadUrlPresigner uploadUrlPresigner;
+    private final MultipartUploadRegistry multipartUploadRegistry;
 
     @Override
-    public NewFileResult createNewFile(Map<String, Value> metadata, Instant expirationTime) {
-        var fileId = UUID.randomUUID().toString();
-        uploadFileMetadata(metadata, fileId);
-        var url = presignUploadUrl(expirationTime, fileId);
+    public NewFileResult createNewFile(String fileId, Map<String, Value> metadata, Instant expirationTime) {
+        uploadFileMetadata(metadata, fileId, expirationTime);
+        var url = uploadUrlPresigner.presign(fileId, expirationTime);
         return new NewFileResult(fileId, url.toString());
     }
 
     @Override
     public URL generateDownloadUrl(String fileId, Instant expirationTime) {
-        var versions = getObjectVersions(fileId);
-        checkFileExist(fileId, versions);
-        var fileVersionId = getFileVersionId(fileId, versions);
-        PresignedGetObjectRequest presignedRequest = getPresignedRequest(fileId, expirationTime, fileVersionId);
-        return presignedRequest.url();
+        var fileVersionId = fileMetadataResolver.resolveFileVersionId(fileId);
+        return downloadUrlPresigner.presign(fileId, fileVersionId, expirationTime);
     }
 
     @Override
     public FileData getFileData(String fileId) {
-        var versions = getObjectVersions(fileId);
-        checkFileExist(fileId, versions);
-        var fileMetadataVersionId = getFileMetadataVersionId(fileId, versions);
-        var metadataObjectResponse = getObject(fileId, fileMetadataVersionId);
-        var fileMetadata = getFileMetadata(fileId, fileMetadataVersionId, metadataObjectResponse);
-        var fileVersionId = getFileVersionId(fileId, versions);
-        var fileObjectResponse = getObject(fileId, fileVersionId);
-        String fileName = getFileName(fileId, fileVersionId, fileObjectResponse);
-        return new FileData(
-                fileMetadata.getFileId(),
-                fileName,
-                fileMetadata.getCreatedAt(),
-                fileMetadata.getMetadata());
+        return fileMetadataResolver.resolveFileData(fileId);
     }
 
     @Override
     public FileData getMultipartFileData(String fileId) {
-        var versions = getObjectVersions(fileId);
-        if (CollectionUtils.isEmpty(versions)) {
-            throw new FileNotFoundException(String.format(
-                    "Failed to check object version with file on exist, fileId=%s, bucketName=%s ",
-                    fileId,
-                    s3SdkV2Properties.getBucketName()));
-        }
-        var fileVersionId = getFileVersionId(fileId, versions);
-        var objectResponse = getObject(fileId, fileVersionId);
-        var fileMetadata = getFileMetadata(fileId, fileVersionId, objectResponse);
-        Map<String, Value> metadata = fileMetadata.getMetadata();
-        String fileName = metadata.get(FILENAME_METADATA).getStr();
-        return new FileData(
-                fileId,
-                fileName,
-                fileMetadata.getCreatedAt(),
-                metadata);
-    }
-
-    // единственный доступный вариант проверки существования бакета на данный момент через catch
-    // в репе сдк висит таска https://github.com/aws/aws-sdk-java-v2/issues/392#issuecomment-880224831
-    // в первой версии сдк тоже через catch проверка на существование
-    // разница только в том, что проверка идет через метод S3Client#getBucketAcl
-    // во второй версии тоже есть этот метод, не уверен в чем разница с выбранным вариантом,
-    // но везде советуют его
-    private boolean doesBucketExist() {
-        try {
-            var request = HeadBucketRequest.builder()
-                    .bucket(s3SdkV2Properties.getBucketName())
-                    .build();
-            var headBucketResponse = s3SdkV2Client.headBucket(request);
-            var response = headBucketResponse.sdkHttpResponse();
-            log.info(String.format("Check exist bucket result %d:%s",
-                    response.statusCode(), response.statusText()));
-            if (response.isSuccessful()) {
-                log.info("Bucket is exist, bucketName={}", s3SdkV2Properties.getBucketName());
-            } else {
-                throw new StorageException(String.format(
-                        "Failed to check bucket on exist, bucketName=%s", s3SdkV2Properties.getBucketName()));
-            }
-            return true;
-        } catch (NoSuchBucketException ex) {
-            log.info("Bucket does not exist, bucketName={}", s3SdkV2Properties.getBucketName());
-            return false;
-        } catch (S3Exception ex) {
-            throw new StorageException(
-                    String.format("Failed to check bucket on exist, bucketName=%s", s3SdkV2Properties.getBucketName()),
-                    ex);
-        }
-    }
-
-    private void createBucket() {
-        try {
-            var s3Waiter = s3SdkV2Client.waiter();
-            var createBucketRequest = CreateBucketRequest.builder()
-                    .bucket(s3SdkV2Properties.getBucketName())
-                    .build();
-            s3SdkV2Client.createBucket(createBucketRequest);
-            var headBucketRequest = HeadBucketRequest.builder()
-                    .bucket(s3SdkV2Properties.getBucketName())
-                    .build();
-            // Wait until the bucket is created and print out the response.
-            s3Waiter.waitUntilBucketExists(headBucketRequest)
-                    .matched()
-                    .response()
-                    .ifPresent(headBucketResponse -> {
-                        var response = headBucketResponse.sdkHttpResponse();
-                        log.info(String.format("Check created bucket result %d:%s",
-                                response.statusCode(), response.statusText()));
-                        if (response.isSuccessful()) {
-                            log.info("Bucket has been created, bucketName={}", s3SdkV2Properties.getBucketName());
-                        } else {
-                            throw new StorageException(String.format(
-                                    "Failed to create bucket, bucketName=%s", s3SdkV2Properties.getBucketName()));
-                        }
-                    });
-        } catch (S3Exception ex) {
-            throw new StorageException(
-                    String.format("Failed to create bucket, bucketName=%s", s3SdkV2Properties.getBucketName()),
-                    ex);
-        }
+        return fileMetadataResolver.resolveMultipartFileData(fileId);
     }
 
-    private void enableBucketVersioning() {
+    private void uploadFileMetadata(Map<String, Value> metadata, String fileId, Instant expirationTime) {
         try {
-            var request = PutBucketVersioningRequest.builder()
-                    .bucket(s3SdkV2Properties.getBucketName())
-                    .versioningConfiguration(VersioningConfiguration.builder()
-                            .status(BucketVersioningStatus.ENABLED)
-                            .build())
-                    .build();
-            var putBucketVersioningResponse = s3SdkV2Client.putBucketVersioning(request);
-            var response = putBucketVersioningResponse.sdkHttpResponse();
-            log.info(String.format("Check enable versioning bucket result %d:%s",
-                    response.statusCode(), response.statusText()));
-            if (response.isSuccessful()) {
-                log.info("Versioning bucket has been enabled, bucketName={}", s3SdkV2Properties.getBucketName());
-            } else {
-                throw new StorageException(String.format(
-                        "Failed to enable bucket versioning, bucketName=%s", s3SdkV2Properties.getBucketName()));
+            var layout = s3SdkV2Properties.getLayout().getWrite();
+            HashMap<String, String> s3Metadata = buildS3Metadata(
+                    metadata,
+                    fileId,
+                    layout,
+                    s3SdkV2Properties.getMetadataEncoding());
+            if (expirationTime != null) {
+                // загрузка через прокси после этого срока отклоняется, как и по подписанной ссылке
+                s3Metadata.put(EXPIRATION_TIME, expirationTime.toString());
             }
-        } catch (S3Exception ex) {
-            throw new StorageException(
-                    String.format("Failed to enable bucket versioning, " +
-                            "bucketName=%s", s3SdkV2Properties.getBucketName()),
-                    ex);
-        }
-    }
-
-    private void uploadFileMetadata(Map<String, Value> metadata, String fileId) {
-        try {
-            HashMap<String, String> s3Metadata = buildS3Metadata(metadata, fileId);
             var request = PutObjectRequest.builder()
                     .bucket(s3SdkV2Properties.getBucketName())
-                    .key(fileId)
+                    .key(metadataKey(fileId, layout))
                     .metadata(s3Metadata)
                     .build();
             var putObjectResponse = s3SdkV2Client.putObject(request, RequestBody.empty());
@@ -214,8 +92,10 @@ public class S3V2Service implements StorageService {
             log.info(String.format("Check upload object version with file metadata result %d:%s",
                     response.statusCode(), response.statusText()));
             if (response.isSuccessful()) {
-                log.info("Object version with file metadata was uploaded, fileId={}, bucketName={}",
-                        fileId, s3SdkV2Properties.getBucketName());
+                log.info("Object version with file metadata was uploaded, fileId={}, bucketName={}, versionId={}, " +
+                                "layout={}",
+                        fileId, s3SdkV2Properties.getBucketName(), putObjectResponse.versionId(), layout);
+                putWrittenFileMetadata(fileMetadataCache, fileId, layout, putObjectResponse, metadata, s3Metadata);
             } else {
                 throw new StorageException(String.format(
                         "Failed to upload object version with file metadata, fileId=%s, bucketName=%s",
@@ -229,178 +109,17 @@ public class S3V2Service implements StorageService {
         }
     }
 
-    private URL presignUploadUrl(Instant expirationTime, String fileId) {
-        var presignRequest = PutObjectPresignRequest.builder()
-                .signatureDuration(Duration.between(Instant.now(), expirationTime))
-                .putObjectRequest(PutObjectRequest.builder()
-                        .bucket(s3SdkV2Properties.getBucketName())
-                        .key(fileId)
-                        .build())
-                .build();
-        var presignedRequest = s3Presigner.presignPutObject(presignRequest);
-        log.info("Upload url was presigned, fileId={}, bucketName={}", fileId, s3SdkV2Properties.getBucketName());
-        log.debug("Presigned http request={}", presignedRequest.httpRequest().toString());
-        return presignedRequest.url();
-    }
-
-    private List<ObjectVersion> getObjectVersions(String fileId) {
-        try {
-            var request = ListObjectVersionsRequest.builder()
-                    .bucket(s3SdkV2Properties.getBucketName())
-                    .prefix(fileId)
-                    .build();
-            var listObjectVersionsResponse = s3SdkV2Client.listObjectVersions(request);
-            var response = listObjectVersionsResponse.sdkHttpResponse();
-            log.info(String.format("Check list object versions result %d:%s",
-                    response.statusCode(), response.statusText()));
-            if (response.isSuccessful()) {
-                var versions = listObjectVersionsResponse.versions();
-                log.info("List object versions has been got, fileId={}, bucketName={}, objectVersions={}, ",
-                        fileId,
-                        s3SdkV2Properties.getBucketName(),
-                        versions.stream().map(ObjectVersion::toString).collect(Collectors.joining(",")));
-                return versions;
-            } else {
-                throw new StorageException(String.format(
-                        "Failed to get list object versions, fileId=%s, bucketName=%s",
-                        fileId, s3SdkV2Properties.getBucketName()));
-            }
-        } catch (S3Exception ex) {
-            throw new StorageException(
-                    String.format(
-                            "Failed to get list object versions, fileId=%s, bucketName=%s",
-                            fileId, s3SdkV2Properties.getBucketName()),
-                    ex);
-        }
-    }
-
-    private void checkFileExist(String fileId, List<ObjectVersion> versions) {
-        if (!doesFileExist(versions)) {
-            throw new FileNotFoundException(String.format(
-                    "Failed to check object version with file on exist, fileId=%s, bucketName=%s, objectVersions=%s, ",
-                    fileId,
-                    s3SdkV2Properties.getBucketName(),
-                    versions.stream().map(ObjectVersion::toString).collect(Collectors.joining(","))));
-        }
-    }
-
-    private Boolean doesFileExist(List<ObjectVersion> versions) {
-        // должно быть 2 ревизии — 1я это метаданные, 2ая это сам загруженный файл
-        return versions.size() == 2;
-//                && versions.stream()
-//                .filter(v -> v.size() > 0)
-//                .map(v -> true)
-//                .findFirst()
-//                .orElse(false);
-    }
-
-    private String getFileMetadataVersionId(String fileId, List<ObjectVersion> versions) {
-        return versions.stream()
-                .filter(Predicate.not(ObjectVersion::isLatest))
-                .findFirst()
-                .orElseThrow(() -> new StorageException(String.format(
-                        "Object version with file metadata not found, fileId=%s, bucketName=%s, objectVersions=%s, ",
-                        fileId,
-                        s3SdkV2Properties.getBucketName(),
-                        versions.stream().map(ObjectVersion::toString).collect(Collectors.joining(",")))))
-                .versionId();
-    }
-
-    private FileMetadata getFileMetadata(String fileId,
-                                         String versionId,
-                                         GetObjectResponse objectResponse) {
-        if (objectResponse.hasMetadata() && !objectResponse.metadata().isEmpty()) {
-            var s3Metadata = objectResponse.metadata();
-            var metadata = s3Metadata.entrySet().stream()
-                    .filter(entry -> entry.getKey().startsWith(METADATA)
-                            && entry.getValue() != null)
-                    .collect(Collectors.toMap(
-                            o -> o.getKey().substring(METADATA.length()),
-                            o -> DamselUtil.fromJson(o.getValue(), Value.class)));
-            return new FileMetadata(fileId, s3Metadata.get(CREATED_AT), metadata);
-        } else {
-            throw new StorageException(String.format(
-                    "Object version with file metadata is empty, " +
-                            "fileId=%s, fileMetadataVersionId=%s, bucketName=%s",
-                    fileId, versionId, s3SdkV2Properties.getBucketName()));
-        }
-    }
-
-    private String getFileVersionId(String fileId, List<ObjectVersion> versions) {
-        return versions.stream()
-                .filter(ObjectVersion::isLatest)
-                .findFirst()
-                .orElseThrow(() -> new StorageException(String.format(
-                        "Object version with file not found, fileId=%s, bucketName=%s, objectVersions=%s, ",
-                        fileId,
-                        s3SdkV2Properties.getBucketName(),
-                        versions.stream().map(ObjectVersion::toString).collect(Collectors.joining(",")))))
-                .versionId();
-    }
-
-    private GetObjectResponse getObject(String fileId, String versionId) {
-        try {
-            var request = GetObjectRequest.builder()
-                    .bucket(s3SdkV2Properties.getBucketName())
-                    .key(fileId)
-                    .versionId(versionId)
-                    .build();
-            GetObjectResponse objectResponse = s3SdkV2Client.getObject(
-                    request,
-                    (getObjectResponse, inputStream) -> getObjectResponse);
-            SdkHttpResponse response = objectResponse.sdkHttpResponse();
-            log.info(String.format("Check get object result %d:%s",
-                    response.statusCode(), response.statusText()));
-            if (response.isSuccessful()) {
-                log.info("Object version with file has been got, " +
-                                "fileId={}, fileVersionId={}, bucketName={}",
-                        fileId, versionId, s3SdkV2Properties.getBucketName());
-                return objectResponse;
-            } else {
-                throw new StorageException(String.format(
-                        "Failed to get object version with file, " +
-                                "fileId=%s, fileVersionId=%s, bucketName=%s",
-                        fileId, versionId, s3SdkV2Properties.getBucketName()));
-            }
-        } catch (S3Exception ex) {
-            throw new StorageException(
-                    String.format(
-                            "Failed to get object version with file, " +
-                                    "fileId=%s, fileVersionId=%s, bucketName=%s",
-                            fileId, versionId, s3SdkV2Properties.getBucketName()),
-                    ex);
-        }
-    }
-
-    private String getFileName(String fileId,
-                               String fileVersionId,
-                               GetObjectResponse getObjectResponse) {
-        var response = getObjectResponse.sdkHttpResponse();
-        return Optional.ofNullable(getObjectResponse.contentDisposition())
-                .map(this::extractFileName)
-                .or(() -> response.firstMatchingHeader("Content-Disposition")
-                        .map(this::extractFileName))
-                .orElseThrow(() -> new StorageException(String.format(
-                        "Header 'Content-Disposition' in object version with file is empty, " +
-                                "fileId=%s, fileVersionId=%s, bucketName=%s",
-                        fileId, fileVersionId, s3SdkV2Properties.getBucketName())));
-    }
-
-    private String extractFileName(String contentDisposition) {
-        int fileNameIndex = contentDisposition.lastIndexOf(FILENAME_PARAM) + FILENAME_PARAM.length();
-        return contentDisposition.substring(fileNameIndex).replaceAll("\"", "");
-    }
-
-
     @Override
-    public CreateMultipartUploadResult createMultipartUpload(Map<String, Value> metadata) {
+    public CreateMultipartUploadResult createMultipartUpload(String fileId, Map<String, Value> metadata) {
         if (!metadata.containsKey(FILENAME_METADATA)) {
             throw new StorageException("Can't create multipart upload object without fileName");
         }
-        var fileId = UUID.randomUUID().toString();
-        uploadFileMetadata(metadata, fileId);
+        uploadFileMetadata(metadata, fileId, null);
         try {
-            HashMap<String, String> s3Metadata = buildS3Metadata(metadata, fileId);
+            HashMap<String, String> s3Metadata = buildS3Metadata(
+                    metadata,
+                    fileId,
+                    s3SdkV2Properties.getMetadataEncoding());
             String filename = URLEncoder.encode(metadata.get(FILENAME_METADATA).getStr(), StandardCharsets.UTF_8);
             var createRequest = CreateMultipartUploadRequest.builder()
                     .bucket(s3SdkV2Properties.getBucketName())
@@ -415,6 +134,7 @@ public class S3V2Service implements StorageService {
             if (response.isSuccessful()) {
                 log.info("Multipart upload was created, fileId={}, bucketName={}, uploadId={}",
                         fileId, s3SdkV2Properties.getBucketName(), createResponse.uploadId());
+                multipartUploadRegistry.register(createResponse.uploadId());
             } else {
                 throw new StorageException(String.format(
                         "Failed to create multipart upload, fileId=%s, bucketName=%s",
@@ -431,14 +151,44 @@ public class S3V2Service implements StorageService {
         }
     }
 
-    private static HashMap<String, String> buildS3Metadata(Map<String, Value> metadata, String fileId) {
+    static HashMap<String, String> buildS3Metadata(Map<String, Value> metadata,
+                                                   String fileId,
+                                                   MetadataValueCodec.Encoding encoding) {
         var s3Metadata = new HashMap<String, String>();
         s3Metadata.put(FILE_ID, fileId);
         s3Metadata.put(CREATED_AT, Instant.now().toString());
-        metadata.forEach((key, value) -> s3Metadata.put(METADATA + key, DamselUtil.toJsonString(value)));
+        metadata.forEach((key, value) -> s3Metadata.put(METADATA + key, MetadataValueCodec.encode(value, encoding)));
         return s3Metadata;
     }
 
+    static HashMap<String, String> buildS3Metadata(Map<String, Value> metadata,
+                                                   String fileId,
+                                                   FileLayout layout,
+                                                   MetadataValueCodec.Encoding encoding) {
+        var s3Metadata = buildS3Metadata(metadata, fileId, encoding);
+        if (layout == FileLayout.METADATA_OBJECT) {
+            s3Metadata.put(LAYOUT_VERSION, layout.getVersion());
+        }
+        return s3Metadata;
+    }
+
+    private static String metadataKey(String fileId, FileLayout layout) {
+        return layout == FileLayout.METADATA_OBJECT ? metadataObjectKey(fileId) : fileId;
+    }
+
+    private static void putWrittenFileMetadata(FileMetadataCache fileMetadataCache,
+                                               String fileId,
+                                               FileLayout layout,
+                                               PutObjectResponse putObjectResponse,
+                                               Map<String, Value> metadata,
+                                               Map<String, String> s3Metadata) {
+        if (layout == FileLayout.METADATA_OBJECT) {
+            fileMetadataCache.putWrittenMetadataObject(fileId, metadata, s3Metadata);
+        } else {
+            fileMetadataCache.putWrittenFileMetadata(fileId, putObjectResponse.versionId(), metadata, s3Metadata);
+        }
+    }
+
     @Override
     public UploadMultipartResult uploadMultipart(UploadMultipartRequestData requestData) {
         String fileId = requestData.getFileDataId();
@@ -451,14 +201,20 @@ public class S3V2Service implements StorageService {
                     .partNumber(requestData.getSequencePart())
                     .contentLength((long) requestData.getContentLength())
                     .build();
-            RequestBody requestBody = RequestBody.fromBytes(requestData.getContent());
-            UploadPartResponse uploadPartResponse = s3SdkV2Client.uploadPart(uploadPartRequest, requestBody);
+            var partContent = PartContent.of(requestData);
+            // тело дальше читается только через partContent, запрос не должен держать буфер во время отправки
+            requestData.setContent((ByteBuffer) null);
+            UploadPartResponse uploadPartResponse = s3SdkV2Client.uploadPart(
+                    uploadPartRequest,
+                    partContent.requestBody());
             var response = uploadPartResponse.sdkHttpResponse();
             log.info("Check file part upload result {}:{}",
                     response.statusCode(), response.statusText());
             if (response.isSuccessful()) {
                 log.info("File part was uploaded, fileId={}, bucketName={}, uploadId={}, partId={}",
                         fileId, s3SdkV2Properties.getBucketName(), multipartUploadId, uploadPartResponse.eTag());
+                checkPartContent(partContent, fileId, multipartUploadId, uploadPartResponse.eTag());
+                multipartUploadRegistry.recordPart(multipartUploadId);
             } else {
                 throw new StorageException(String.format(
                         "Failed to upload file part, fileId=%s, bucketName=%s, uploadId=%s",
@@ -475,6 +231,17 @@ public class S3V2Service implements StorageService {
         }
     }
 
+    private static void checkPartContent(PartContent partContent,
+                                         String fileId,
+                                         String multipartUploadId,
+                                         String eTag) {
+        if (!partContent.matches(eTag)) {
+            throw new StorageException(String.format(
+                    "File part checksum does not match ETag, fileId=%s, uploadId=%s, partId=%s",
+                    fileId, multipartUploadId, eTag));
+        }
+    }
+
     @Override
     public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
         String fileId = request.getFileDataId();
@@ -488,6 +255,9 @@ public class S3V2Service implements StorageService {
             if (response.isSuccessful()) {
                 log.info("Multipart upload was completed, fileId={}, bucketName={}, uploadId={}",
                         fileId, s3SdkV2Properties.getBucketName(), multipartUploadId);
+                // файл загружен, закешированный отрицательный результат больше не актуален
+                fileMetadataResolver.invalidateFileVersions(fileId);
+                multipartUploadRegistry.remove(multipartUploadId);
             } else {
                 throw new StorageException(String.format(
                         "Failed to complete multipart upload, fileId=%s, bucketName=%s, uploadId=%s",
@@ -512,32 +282,8 @@ public class S3V2Service implements StorageService {
 
     @Override
     public URL generateMultipartDownloadUrl(String fileId, Instant expirationTime) {
-        var versions = getObjectVersions(fileId);
-        if (CollectionUtils.isEmpty(versions)) {
-            throw new FileNotFoundException(String.format(
-                    "Failed to check object version with file on exist, fileId=%s, bucketName=%s ",
-                    fileId,
-                    s3SdkV2Properties.getBucketName()));
-        }
-        var fileVersionId = getFileVersionId(fileId, versions);
-        PresignedGetObjectRequest presignedRequest = getPresignedRequest(fileId, expirationTime, fileVersionId);
-        return presignedRequest.url();
-    }
-
-    private PresignedGetObjectRequest getPresignedRequest(String fileId, Instant expirationTime, String fileVersionId) {
-        var presignRequest = GetObjectPresignRequest.builder()
-                .signatureDuration(Duration.between(Instant.now(), expirationTime))
-                .getObjectRequest(GetObjectRequest.builder()
-                        .bucket(s3SdkV2Properties.getBucketName())
-                        .key(fileId)
-                        .versionId(fileVersionId)
-                        .build())
-                .build();
-        var presignedRequest = s3Presigner.presignGetObject(presignRequest);
-        log.info("Download url was presigned, fileId={}, bucketName={}, isBrowserExecutable={}",
-                fileId, s3SdkV2Properties.getBucketName(), presignedRequest.isBrowserExecutable());
-        log.debug("Presigned http request={}", presignedRequest.httpRequest().toString());
-        return presignedRequest;
+        var fileVersionId = fileMetadataResolver.resolveLatestVersionId(fileId);
+        return downloadUrlPresigner.presign(fileId, fileVersionId, expirationTime);
     }
 
     private software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest buildRequest(
@@ -560,15 +306,4 @@ public class S3V2Service implements StorageService {
                 .multipartUpload(completedUpload)
                 .build();
     }
-
-    @RequiredArgsConstructor
-    @Getter
-    @ToString
-    private static class FileMetadata {
-
-        private final String fileId;
-        private final String createdAt;
-        private final Map<String, Value> metadata;
-
-    }
 }
@@ -6,10 +6,18 @@ import dev.vality.msgpack.Value;
 import java.net.URL;
 import java.time.Instant;
 import java.util.Map;
+import java.util.UUID;
 
 public interface StorageService {
 
-    NewFileResult createNewFile(Map<String, Value> metadata, Instant expirationTime);
+    default NewFileResult createNewFile(Map<String, Value> metadata, Instant expirationTime) {
+        return createNewFile(UUID.randomUUID().toString(), metadata, expirationTime);
+    }
+
+    /**
+     * @param fileDataId ключ нового файла, выбранный вызывающим, например для выбора шарда по этому же ключу
+     */
+    NewFileResult createNewFile(String fileDataId, Map<String, Value> metadata, Instant expirationTime);
 
     URL generateDownloadUrl(String fileDataId, Instant expirationTime);
 
@@ -17,7 +25,11 @@ public interface StorageService {
 
     FileData getMultipartFileData(String fileId);
 
-    CreateMultipartUploadResult createMultipartUpload(Map<String, Value> metadata);
+    default CreateMultipartUploadResult createMultipartUpload(Map<String, Value> metadata) {
+        return createMultipartUpload(UUID.randomUUID().toString(), metadata);
+    }
+
+    CreateMultipartUploadResult createMultipartUpload(String fileDataId, Map<String, Value> metadata);
 
     UploadMultipartResult uploadMultipart(UploadMultipartRequestData requestData);
 
@@ -0,0 +1,33 @@
+package dev.vality.file.storage.service.cache;
+
+import dev.vality.file.storage.service.model.FileMetadata;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+import java.util.Map;
+
+@RequiredArgsConstructor
+@Getter
+@ToString
+public class CachedVersion {
+
+    private final FileMetadata fileMetadata;
+    private final String fileName;
+    private final int weight;
+
+    public static CachedVersion ofFileMetadata(FileMetadata fileMetadata, Map<String, String> s3Metadata) {
+        return new CachedVersion(fileMetadata, null, weigh(s3Metadata));
+    }
+
+    public static CachedVersion ofFileName(String fileName) {
+        return new CachedVersion(null, fileName, fileName.length());
+    }
+
+    private static int weigh(Map<String, String> s3Metadata) {
+        return s3Metadata.entrySet().stream()
+                .mapToInt(entry -> entry.getKey().length()
+                        + (entry.getValue() != null ? entry.getValue().length() : 0))
+                .sum();
+    }
+}
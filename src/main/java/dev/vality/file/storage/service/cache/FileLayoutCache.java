@@ -0,0 +1,37 @@
+package dev.vality.file.storage.service.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.stereotype.Component;
+
+/**
+ * Запоминает файлы в раскладке {@code TWO_VERSIONS}, чтобы не проверять для них каждый раз отсутствие
+ * отдельного объекта с метаданными. Раскладка файла не меняется, поэтому записи не инвалидируются.
+ * Файлы в раскладке {@code METADATA_OBJECT} определяются по наличию объекта в {@link FileMetadataCache}.
+ */
+@Component
+public class FileLayoutCache {
+
+    public static final String CACHE_NAME = "file-layout";
+
+    private final Cache<String, Boolean> twoVersionsFiles;
+
+    public FileLayoutCache(S3SdkV2Properties s3SdkV2Properties, MeterRegistry meterRegistry) {
+        this.twoVersionsFiles = Caffeine.newBuilder()
+                .maximumSize(s3SdkV2Properties.getLayout().getCacheMaxSize())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, twoVersionsFiles, CACHE_NAME);
+    }
+
+    public boolean isTwoVersionsLayout(String fileId) {
+        return twoVersionsFiles.getIfPresent(fileId) != null;
+    }
+
+    public void putTwoVersionsLayout(String fileId) {
+        twoVersionsFiles.put(fileId, Boolean.TRUE);
+    }
+}
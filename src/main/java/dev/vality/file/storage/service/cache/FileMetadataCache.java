@@ -0,0 +1,139 @@
+package dev.vality.file.storage.service.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import dev.vality.file.storage.service.model.FileMetadata;
+import dev.vality.msgpack.Value;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static dev.vality.file.storage.service.FileMetadataResolver.CREATED_AT;
+import static dev.vality.file.storage.service.FileMetadataResolver.EXPIRATION_TIME;
+import static dev.vality.file.storage.service.FileMetadataResolver.metadataObjectKey;
+
+/**
+ * Кеш метаданных по ревизии объекта. Ревизии в версионируемом бакете неизменяемы, поэтому записи
+ * не инвалидируются, а только вытесняются по суммарному размеру (W-TinyLFU) и времени без обращений.
+ * Метаданные и имя файла одной ревизии хранятся под разными ключами, чтобы запись одного не вытесняла другое.
+ */
+@Slf4j
+@Component
+public class FileMetadataCache {
+
+    public static final String CACHE_NAME = "file-metadata";
+
+    // объект с метаданными пишется один раз и не перезаписывается, поэтому кешируется без versionId
+    private static final String METADATA_OBJECT_VERSION = "";
+
+    private final boolean enabled;
+    private final Cache<VersionKey, CachedVersion> cache;
+
+    public FileMetadataCache(S3SdkV2Properties s3SdkV2Properties, MeterRegistry meterRegistry) {
+        var properties = s3SdkV2Properties.getMetadataCache();
+        this.enabled = properties.isEnabled();
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(properties.getMaxWeight())
+                .weigher((VersionKey key, CachedVersion value) -> key.weight() + value.weight())
+                .expireAfterAccess(properties.getExpireAfterAccess())
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        log.info("File metadata cache initialized, enabled={}, maxWeight={}",
+                enabled, properties.getMaxWeight());
+    }
+
+    public FileMetadata getFileMetadata(String fileId, String versionId, Supplier<CachedVersion> loader) {
+        if (!enabled) {
+            return loader.get().getFileMetadata();
+        }
+        var key = new VersionKey(Kind.FILE_METADATA, fileId, versionId);
+        var cachedVersion = cache.getIfPresent(key);
+        if (cachedVersion == null) {
+            // загрузка идет вне cache.get, чтобы не держать блокировку кеша на время запроса в s3
+            cachedVersion = loader.get();
+            cache.put(key, cachedVersion);
+        }
+        return cachedVersion.getFileMetadata();
+    }
+
+    public FileMetadata getMetadataObjectIfPresent(String fileId) {
+        return getFileMetadataIfPresent(metadataObjectKey(fileId), METADATA_OBJECT_VERSION);
+    }
+
+    public FileMetadata getFileMetadataIfPresent(String fileId, String versionId) {
+        if (!enabled) {
+            return null;
+        }
+        var cachedVersion = cache.getIfPresent(new VersionKey(Kind.FILE_METADATA, fileId, versionId));
+        return cachedVersion != null ? cachedVersion.getFileMetadata() : null;
+    }
+
+    public String getFileName(String fileId, String versionId, Supplier<String> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        var key = new VersionKey(Kind.FILE_NAME, fileId, versionId);
+        var cachedVersion = cache.getIfPresent(key);
+        if (cachedVersion == null) {
+            cachedVersion = CachedVersion.ofFileName(loader.get());
+            cache.put(key, cachedVersion);
+        }
+        return cachedVersion.getFileName();
+    }
+
+    public void putFileMetadata(String fileId, String versionId, CachedVersion cachedVersion) {
+        if (enabled && versionId != null) {
+            cache.put(new VersionKey(Kind.FILE_METADATA, fileId, versionId), cachedVersion);
+        }
+    }
+
+    public void putMetadataObject(String fileId, CachedVersion cachedVersion) {
+        putFileMetadata(metadataObjectKey(fileId), METADATA_OBJECT_VERSION, cachedVersion);
+    }
+
+    public void putWrittenFileMetadata(String fileId,
+                                       String versionId,
+                                       Map<String, Value> metadata,
+                                       Map<String, String> s3Metadata) {
+        if (!enabled || versionId == null) {
+            return;
+        }
+        // ревизия неизменяема, поэтому метаданные можно положить в кеш сразу после записи
+        putFileMetadata(fileId, versionId, toWrittenVersion(fileId, metadata, s3Metadata));
+    }
+
+    public void putWrittenMetadataObject(String fileId, Map<String, Value> metadata, Map<String, String> s3Metadata) {
+        if (enabled) {
+            putMetadataObject(fileId, toWrittenVersion(fileId, metadata, s3Metadata));
+        }
+    }
+
+    private CachedVersion toWrittenVersion(String fileId,
+                                           Map<String, Value> metadata,
+                                           Map<String, String> s3Metadata) {
+        var metadataCopy = metadata.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().deepCopy()));
+        var fileMetadata = new FileMetadata(
+                fileId, s3Metadata.get(CREATED_AT), metadataCopy, s3Metadata.get(EXPIRATION_TIME));
+        return CachedVersion.ofFileMetadata(fileMetadata, s3Metadata);
+    }
+
+    private enum Kind {
+        FILE_METADATA,
+        FILE_NAME
+    }
+
+    private record VersionKey(Kind kind, String fileId, String versionId) {
+
+        int weight() {
+            return fileId.length() + versionId.length();
+        }
+    }
+}
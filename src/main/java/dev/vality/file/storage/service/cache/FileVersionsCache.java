@@ -0,0 +1,87 @@
+package dev.vality.file.storage.service.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.model.ObjectVersion;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Короткоживущий кеш списка ревизий по fileId. Кешируются в том числе отрицательные результаты
+ * (ревизий нет или есть только ревизия с метаданными), чтобы клиенты, опрашивающие {@code getFileData}
+ * в ожидании загрузки, не делали {@code ListObjectVersions} на каждый запрос. Одновременные запросы
+ * по одному fileId объединяются в один запрос в s3, список загружается в потоке запроса.
+ */
+@Slf4j
+@Component
+public class FileVersionsCache {
+
+    public static final String CACHE_NAME = "file-versions";
+
+    // метаданные + сам файл
+    private static final int UPLOADED_FILE_VERSIONS = 2;
+
+    private final boolean enabled;
+    private final Cache<String, List<ObjectVersion>> cache;
+
+    public FileVersionsCache(S3SdkV2Properties s3SdkV2Properties, MeterRegistry meterRegistry) {
+        var properties = s3SdkV2Properties.getVersionsCache();
+        this.enabled = properties.isEnabled();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxSize())
+                .expireAfter(new VersionsExpiry(
+                        properties.getTtl().toNanos(),
+                        properties.getNegativeTtl().toNanos()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, CACHE_NAME);
+        log.info("File versions cache initialized, enabled={}, ttl={}, negativeTtl={}",
+                enabled, properties.getTtl(), properties.getNegativeTtl());
+    }
+
+    public List<ObjectVersion> get(String fileId, Function<String, List<ObjectVersion>> loader) {
+        if (!enabled) {
+            return loader.apply(fileId);
+        }
+        return cache.get(fileId, loader);
+    }
+
+    public void invalidate(String fileId) {
+        if (enabled) {
+            cache.invalidate(fileId);
+            log.debug("File versions cache was invalidated, fileId={}", fileId);
+        }
+    }
+
+    private record VersionsExpiry(long ttlNanos, long negativeTtlNanos)
+            implements Expiry<String, List<ObjectVersion>> {
+
+        @Override
+        public long expireAfterCreate(String fileId, List<ObjectVersion> versions, long currentTime) {
+            return versions.size() == UPLOADED_FILE_VERSIONS ? ttlNanos : negativeTtlNanos;
+        }
+
+        @Override
+        public long expireAfterUpdate(String fileId,
+                                      List<ObjectVersion> versions,
+                                      long currentTime,
+                                      long currentDuration) {
+            return expireAfterCreate(fileId, versions, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String fileId,
+                                    List<ObjectVersion> versions,
+                                    long currentTime,
+                                    long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package dev.vality.file.storage.service.exception;
+
+public class ServiceOverloadedException extends StorageException {
+
+    public ServiceOverloadedException(String message) {
+        super(message);
+    }
+
+    public ServiceOverloadedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
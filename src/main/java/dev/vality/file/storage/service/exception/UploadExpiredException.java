@@ -0,0 +1,12 @@
+package dev.vality.file.storage.service.exception;
+
+public class UploadExpiredException extends StorageException {
+
+    public UploadExpiredException(String message) {
+        super(message);
+    }
+
+    public UploadExpiredException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
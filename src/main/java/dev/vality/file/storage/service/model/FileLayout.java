@@ -0,0 +1,25 @@
+package dev.vality.file.storage.service.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+@Getter
+@RequiredArgsConstructor
+public enum FileLayout {
+
+    // метаданные — первая ревизия ключа fileId, сам файл — вторая ревизия того же ключа
+    TWO_VERSIONS("1"),
+    // метаданные — отдельный объект fileId.metadata с маркером версии раскладки, файл — ключ fileId
+    METADATA_OBJECT("2");
+
+    private final String version;
+
+    public static Optional<FileLayout> ofVersion(String version) {
+        return Arrays.stream(values())
+                .filter(layout -> layout.getVersion().equals(version))
+                .findFirst();
+    }
+}
@@ -0,0 +1,21 @@
+package dev.vality.file.storage.service.model;
+
+import dev.vality.msgpack.Value;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+import java.util.Map;
+
+@RequiredArgsConstructor
+@Getter
+@ToString
+public class FileMetadata {
+
+    private final String fileId;
+    private final String createdAt;
+    private final Map<String, Value> metadata;
+    // срок подписанной ссылки на загрузку из createNewFile, у multipart загрузок и старых файлов отсутствует
+    private final String expirationTime;
+
+}
@@ -0,0 +1,16 @@
+package dev.vality.file.storage.service.model;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+@RequiredArgsConstructor
+@Getter
+@ToString
+public class FileVersions {
+
+    private final String fileId;
+    private final String metadataVersionId;
+    private final String fileVersionId;
+
+}
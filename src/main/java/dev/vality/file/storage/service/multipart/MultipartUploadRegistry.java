@@ -0,0 +1,54 @@
+package dev.vality.file.storage.service.multipart;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+/**
+ * Время последней активности незавершенных multipart загрузок, созданных или дополненных через этот инстанс.
+ * Реестр хранится в памяти и вытесняется после {@code multipart-sessions.idle-timeout} без обращений, поэтому
+ * {@link StaleMultipartUploadReaper} сверяется с ним только чтобы не листить части активных загрузок, а источником
+ * истины остается s3.
+ */
+@Component
+public class MultipartUploadRegistry {
+
+    private final Cache<String, Instant> lastActivities;
+
+    public MultipartUploadRegistry(S3SdkV2Properties s3SdkV2Properties, MeterRegistry meterRegistry) {
+        var properties = s3SdkV2Properties.getMultipartSessions();
+        this.lastActivities = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxSize())
+                .expireAfterAccess(properties.getIdleTimeout())
+                .build();
+        Gauge.builder("file.storage.multipart.sessions", lastActivities, Cache::estimatedSize)
+                .description("Multipart uploads in progress tracked by this instance")
+                .tag("shard", s3SdkV2Properties.getSharding().getShardId())
+                .register(meterRegistry);
+    }
+
+    public void register(String uploadId) {
+        lastActivities.put(uploadId, Instant.now());
+    }
+
+    public void recordPart(String uploadId) {
+        // загрузка могла быть создана другим инстансом
+        lastActivities.put(uploadId, Instant.now());
+    }
+
+    public void remove(String uploadId) {
+        lastActivities.invalidate(uploadId);
+    }
+
+    /**
+     * @return время последней активности загрузки, известное этому инстансу, или {@code null}
+     */
+    public Instant getLastActivity(String uploadId) {
+        return lastActivities.getIfPresent(uploadId);
+    }
+}
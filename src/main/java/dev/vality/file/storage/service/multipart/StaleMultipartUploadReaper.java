@@ -0,0 +1,183 @@
+package dev.vality.file.storage.service.multipart;
+
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import dev.vality.file.storage.migration.RateLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.ListMultipartUploadsRequest;
+import software.amazon.awssdk.services.s3.model.ListPartsRequest;
+import software.amazon.awssdk.services.s3.model.MultipartUpload;
+import software.amazon.awssdk.services.s3.model.NoSuchUploadException;
+import software.amazon.awssdk.services.s3.model.Part;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Отменяет multipart загрузки, в которые дольше {@code multipart-sessions.idle-timeout} не загружалось
+ * ни одной части, чтобы брошенные клиентами части не занимали место в s3. Бакет обходится постранично через
+ * {@code ListMultipartUploads} в одном фоновом потоке с паузой между страницами и ограничением отмен в секунду,
+ * поэтому обход не конкурирует с запросами клиентов. Активность определяется по реестру инстанса и по времени
+ * последней части из {@code ListParts}, так что загрузки через другие инстансы не отменяются. {@code ListParts}
+ * только читается и реестр не заполняет. Обход выполняет только инстанс с
+ * {@code multipart-sessions.reaper.runner-enabled}.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(
+        name = {"s3-sdk-v2.multipart-sessions.reaper.enabled", "s3-sdk-v2.multipart-sessions.reaper.runner-enabled"},
+        havingValue = "true")
+public class StaleMultipartUploadReaper {
+
+    private final S3SdkV2Properties s3SdkV2Properties;
+    private final S3Client s3SdkV2Client;
+    private final MultipartUploadRegistry multipartUploadRegistry;
+    private final RateLimiter abortsRateLimiter;
+    private final Counter abortedCounter;
+    private final Counter failedCounter;
+    private final ScheduledExecutorService reaperExecutor;
+
+    public StaleMultipartUploadReaper(S3SdkV2Properties s3SdkV2Properties,
+                                      S3Client s3SdkV2Client,
+                                      MultipartUploadRegistry multipartUploadRegistry,
+                                      MeterRegistry meterRegistry) {
+        this.s3SdkV2Properties = s3SdkV2Properties;
+        this.s3SdkV2Client = s3SdkV2Client;
+        this.multipartUploadRegistry = multipartUploadRegistry;
+        this.abortsRateLimiter = new RateLimiter(s3SdkV2Properties.getMultipartSessions().getReaper()
+                .getAbortsPerSecond());
+        this.abortedCounter = Counter.builder("file.storage.multipart.reaper.uploads")
+                .tag("result", "aborted")
+                .register(meterRegistry);
+        this.failedCounter = Counter.builder("file.storage.multipart.reaper.uploads")
+                .tag("result", "failed")
+                .register(meterRegistry);
+        this.reaperExecutor = Executors.newSingleThreadScheduledExecutor(
+                new CustomizableThreadFactory("multipart-reaper-"));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        var interval = s3SdkV2Properties.getMultipartSessions().getReaper().getInterval();
+        reaperExecutor.scheduleWithFixedDelay(this::reap, interval.toMillis(), interval.toMillis(),
+                TimeUnit.MILLISECONDS);
+        log.info("Stale multipart upload reaper has been started, bucketName={}, interval={}, idleTimeout={}",
+                s3SdkV2Properties.getBucketName(), interval, s3SdkV2Properties.getMultipartSessions().getIdleTimeout());
+    }
+
+    @PreDestroy
+    public void stop() {
+        reaperExecutor.shutdownNow();
+    }
+
+    void reap() {
+        var properties = s3SdkV2Properties.getMultipartSessions();
+        var idleSince = Instant.now().minus(properties.getIdleTimeout());
+        String keyMarker = null;
+        String uploadIdMarker = null;
+        var aborted = 0;
+        try {
+            boolean truncated;
+            do {
+                var response = s3SdkV2Client.listMultipartUploads(ListMultipartUploadsRequest.builder()
+                        .bucket(s3SdkV2Properties.getBucketName())
+                        .keyMarker(keyMarker)
+                        .uploadIdMarker(uploadIdMarker)
+                        .maxUploads(properties.getReaper().getPageSize())
+                        .build());
+                for (MultipartUpload upload : response.uploads()) {
+                    if (isIdle(upload, idleSince) && abort(upload)) {
+                        aborted++;
+                    }
+                }
+                keyMarker = response.nextKeyMarker();
+                uploadIdMarker = response.nextUploadIdMarker();
+                truncated = Boolean.TRUE.equals(response.isTruncated());
+                if (truncated) {
+                    Thread.sleep(properties.getReaper().getPageDelay().toMillis());
+                }
+            } while (truncated);
+            log.info("Stale multipart uploads have been reaped, bucketName={}, aborted={}",
+                    s3SdkV2Properties.getBucketName(), aborted);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (SdkException ex) {
+            // следующий обход начнется с начала бакета
+            log.error("Stale multipart upload reaping has been stopped, bucketName={}, keyMarker={}",
+                    s3SdkV2Properties.getBucketName(), keyMarker, ex);
+        }
+    }
+
+    private boolean isIdle(MultipartUpload upload, Instant idleSince) {
+        if (upload.initiated() != null && upload.initiated().isAfter(idleSince)) {
+            return false;
+        }
+        var lastActivity = multipartUploadRegistry.getLastActivity(upload.uploadId());
+        if (lastActivity != null && lastActivity.isAfter(idleSince)) {
+            return false;
+        }
+        try {
+            lastActivity = lastPartModified(upload);
+            return lastActivity == null || !lastActivity.isAfter(idleSince);
+        } catch (NoSuchUploadException ex) {
+            // загрузка завершена или отменена после листинга
+            multipartUploadRegistry.remove(upload.uploadId());
+            return false;
+        }
+    }
+
+    /**
+     * @return время загрузки последней части по данным s3 или {@code null}, если частей нет
+     */
+    private Instant lastPartModified(MultipartUpload upload) {
+        Instant result = null;
+        var parts = s3SdkV2Client.listPartsPaginator(ListPartsRequest.builder()
+                        .bucket(s3SdkV2Properties.getBucketName())
+                        .key(upload.key())
+                        .uploadId(upload.uploadId())
+                        .build())
+                .parts();
+        for (Part part : parts) {
+            if (part.lastModified() != null && (result == null || part.lastModified().isAfter(result))) {
+                result = part.lastModified();
+            }
+        }
+        return result;
+    }
+
+    private boolean abort(MultipartUpload upload) throws InterruptedException {
+        abortsRateLimiter.acquire(1);
+        try {
+            s3SdkV2Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(s3SdkV2Properties.getBucketName())
+                    .key(upload.key())
+                    .uploadId(upload.uploadId())
+                    .build());
+            multipartUploadRegistry.remove(upload.uploadId());
+            abortedCounter.increment();
+            log.info("Stale multipart upload was aborted, fileId={}, bucketName={}, uploadId={}, initiated={}",
+                    upload.key(), s3SdkV2Properties.getBucketName(), upload.uploadId(), upload.initiated());
+            return true;
+        } catch (NoSuchUploadException ex) {
+            multipartUploadRegistry.remove(upload.uploadId());
+            return false;
+        } catch (SdkException ex) {
+            failedCounter.increment();
+            log.warn("Failed to abort stale multipart upload, fileId={}, bucketName={}, uploadId={}",
+                    upload.key(), s3SdkV2Properties.getBucketName(), upload.uploadId(), ex);
+            return false;
+        }
+    }
+}
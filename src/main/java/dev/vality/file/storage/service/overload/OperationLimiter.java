@@ -0,0 +1,134 @@
+package dev.vality.file.storage.service.overload;
+
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+
+/**
+ * Лимит одновременных вызовов одной операции s3 на одном endpoint и circuit breaker над ним.
+ * Лимит подбирается по AIMD: растет на единицу после успешного вызова, когда занята хотя бы половина
+ * лимита, и умножается на {@code backoff-ratio} после ошибки s3 или вызова дольше {@code latency-threshold}.
+ * Вызовы сверх лимита не ждут в очереди, а сразу отклоняются.
+ */
+class OperationLimiter {
+
+    enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    enum Reason {
+        LIMIT, CIRCUIT
+    }
+
+    private final S3SdkV2Properties.Overload properties;
+    private final boolean sizeDependent;
+
+    private double limit;
+    private int inFlight;
+
+    private State state = State.CLOSED;
+    private long windowStart;
+    private int calls;
+    private int failures;
+    private long openedAt;
+    private int probes;
+    private int probesSucceeded;
+
+    OperationLimiter(S3SdkV2Properties.Overload properties, boolean sizeDependent, long now) {
+        this.properties = properties;
+        this.sizeDependent = sizeDependent;
+        this.limit = Math.max(
+                properties.getMinLimit(),
+                Math.min(properties.getMaxLimit(), properties.getInitialLimit()));
+        this.windowStart = now;
+    }
+
+    /**
+     * @return причина отказа или {@code null}, если вызов допущен и должен быть завершен {@link #release}
+     */
+    synchronized Reason tryAcquire(long now) {
+        if (state == State.OPEN) {
+            if (now - openedAt < properties.getCircuitBreaker().getOpenDuration().toNanos()) {
+                return Reason.CIRCUIT;
+            }
+            state = State.HALF_OPEN;
+            probes = 0;
+            probesSucceeded = 0;
+        }
+        if (state == State.HALF_OPEN && probes >= properties.getCircuitBreaker().getHalfOpenCalls()) {
+            return Reason.CIRCUIT;
+        }
+        if (inFlight >= (int) limit) {
+            return Reason.LIMIT;
+        }
+        if (state == State.HALF_OPEN) {
+            probes++;
+        }
+        inFlight++;
+        return null;
+    }
+
+    synchronized void release(long now, long latencyNanos, boolean failure) {
+        inFlight--;
+        var slow = !sizeDependent && latencyNanos > properties.getLatencyThreshold().toNanos();
+        if (failure || slow) {
+            limit = Math.max(properties.getMinLimit(), limit * properties.getBackoffRatio());
+        } else if (inFlight * 2 >= limit) {
+            limit = Math.min(properties.getMaxLimit(), limit + 1);
+        }
+        if (properties.getCircuitBreaker().isEnabled()) {
+            recordCall(now, failure);
+        }
+    }
+
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    private void recordCall(long now, boolean failure) {
+        var circuitBreaker = properties.getCircuitBreaker();
+        switch (state) {
+            case HALF_OPEN -> {
+                if (failure) {
+                    open(now);
+                } else if (++probesSucceeded >= circuitBreaker.getHalfOpenCalls()) {
+                    state = State.CLOSED;
+                    resetWindow(now);
+                }
+            }
+            case CLOSED -> {
+                if (now - windowStart >= circuitBreaker.getWindow().toNanos()) {
+                    resetWindow(now);
+                }
+                calls++;
+                if (failure) {
+                    failures++;
+                }
+                if (calls >= circuitBreaker.getMinimumCalls()
+                        && failures >= calls * circuitBreaker.getFailureRateThreshold()) {
+                    open(now);
+                }
+            }
+            // вызовы, начатые до срабатывания, не влияют на открытый circuit breaker
+            case OPEN -> {
+            }
+        }
+    }
+
+    private void open(long now) {
+        state = State.OPEN;
+        openedAt = now;
+    }
+
+    private void resetWindow(long now) {
+        windowStart = now;
+        calls = 0;
+        failures = 0;
+    }
+}
@@ -0,0 +1,242 @@
+package dev.vality.file.storage.service.overload;
+
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import dev.vality.file.storage.service.exception.ServiceOverloadedException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.core.interceptor.*;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Сбрасывает нагрузку на s3: каждая операция на каждом endpoint ограничена адаптивным лимитом одновременных
+ * вызовов и circuit breaker ({@link OperationLimiter}). Вызов сверх лимита или при открытом circuit breaker
+ * завершается {@link ServiceOverloadedException} до отправки запроса, поэтому перегрузка s3 не копит очереди
+ * в пулах соединений и потоков сервиса. Ограничение стоит в клиентах SDK и действует для всех путей: синхронного
+ * и асинхронного сервиса, прокси, чтения с нескольких endpoint и шардов. Ошибкой s3 считаются 5xx, throttling
+ * и ошибки соединения, ответы 4xx — штатные. Тело {@code GetObject} синхронного клиента читается уже после
+ * завершения вызова SDK, поэтому разрешение держится до закрытия или дочитывания тела, а время вызова считается
+ * до получения ответа.
+ */
+@Slf4j
+@Component
+public class S3OverloadInterceptor implements ExecutionInterceptor {
+
+    public static final String LIMIT_METRIC = "file.storage.s3.concurrency.limit";
+    public static final String IN_FLIGHT_METRIC = "file.storage.s3.concurrency.in.flight";
+    public static final String CIRCUIT_STATE_METRIC = "file.storage.s3.circuit.state";
+    public static final String REJECTED_METRIC = "file.storage.s3.rejected";
+
+    private static final String GET_OBJECT = "GetObject";
+
+    private static final ExecutionAttribute<Permit> PERMIT = new ExecutionAttribute<>("FileStorageOverloadPermit");
+
+    private final S3SdkV2Properties.Overload properties;
+    private final Set<String> sizeDependentOperations;
+    private final MeterRegistry meterRegistry;
+    private final Map<Key, OperationLimiter> limiters = new ConcurrentHashMap<>();
+
+    public S3OverloadInterceptor(S3SdkV2Properties s3SdkV2Properties, MeterRegistry meterRegistry) {
+        this.properties = s3SdkV2Properties.getOverload();
+        this.sizeDependentOperations = new HashSet<>(properties.getSizeDependentOperations());
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void beforeExecution(Context.BeforeExecution context, ExecutionAttributes executionAttributes) {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        var key = new Key(endpoint(executionAttributes), operation(executionAttributes));
+        var limiter = limiters.computeIfAbsent(key, this::createLimiter);
+        var now = System.nanoTime();
+        var reason = limiter.tryAcquire(now);
+        if (reason != null) {
+            rejected(key, reason).increment();
+            throw new ServiceOverloadedException(String.format(
+                    "S3 call has been rejected, reason=%s, endpoint=%s, operation=%s, limit=%d",
+                    reason, key.endpoint(), key.operation(), limiter.getLimit()));
+        }
+        executionAttributes.putAttribute(PERMIT, new Permit(limiter, now));
+    }
+
+    @Override
+    public Optional<InputStream> modifyHttpResponseContent(Context.ModifyHttpResponse context,
+                                                           ExecutionAttributes executionAttributes) {
+        var permit = executionAttributes.getAttribute(PERMIT);
+        if (permit == null || !GET_OBJECT.equals(operation(executionAttributes))) {
+            return context.responseBody();
+        }
+        return context.responseBody().map(body -> new PermitInputStream(body, permit));
+    }
+
+    @Override
+    public void afterExecution(Context.AfterExecution context, ExecutionAttributes executionAttributes) {
+        var permit = executionAttributes.getAttribute(PERMIT);
+        // вызов отклонен до получения разрешения
+        if (permit == null) {
+            return;
+        }
+        if (permit.isStreaming()) {
+            // тело еще читается вызывающим кодом, разрешение освободит PermitInputStream
+            permit.responded();
+            return;
+        }
+        permit.release(false);
+    }
+
+    @Override
+    public void onExecutionFailure(Context.FailedExecution context, ExecutionAttributes executionAttributes) {
+        var permit = executionAttributes.getAttribute(PERMIT);
+        if (permit != null) {
+            permit.release(isFailure(context.exception()));
+        }
+    }
+
+    private OperationLimiter createLimiter(Key key) {
+        var limiter = new OperationLimiter(
+                properties,
+                sizeDependentOperations.contains(key.operation()),
+                System.nanoTime());
+        Gauge.builder(LIMIT_METRIC, limiter, OperationLimiter::getLimit)
+                .tag("endpoint", key.endpoint())
+                .tag("operation", key.operation())
+                .register(meterRegistry);
+        Gauge.builder(IN_FLIGHT_METRIC, limiter, OperationLimiter::getInFlight)
+                .tag("endpoint", key.endpoint())
+                .tag("operation", key.operation())
+                .register(meterRegistry);
+        // 0 — closed, 1 — half-open, 2 — open
+        Gauge.builder(CIRCUIT_STATE_METRIC, limiter, value -> value.getState().ordinal())
+                .tag("endpoint", key.endpoint())
+                .tag("operation", key.operation())
+                .register(meterRegistry);
+        log.info("S3 concurrency limit has been initialized, endpoint={}, operation={}, limit={}",
+                key.endpoint(), key.operation(), limiter.getLimit());
+        return limiter;
+    }
+
+    private Counter rejected(Key key, OperationLimiter.Reason reason) {
+        return meterRegistry.counter(REJECTED_METRIC,
+                "endpoint", key.endpoint(),
+                "operation", key.operation(),
+                "reason", reason.name().toLowerCase());
+    }
+
+    private static boolean isFailure(Throwable exception) {
+        if (exception instanceof SdkServiceException serviceException) {
+            return serviceException.statusCode() >= 500 || serviceException.isThrottlingException();
+        }
+        return exception instanceof SdkClientException;
+    }
+
+    private static String endpoint(ExecutionAttributes executionAttributes) {
+        return Optional.ofNullable(executionAttributes.getAttribute(SdkExecutionAttribute.CLIENT_ENDPOINT))
+                .map(URI::toString)
+                .orElse("unknown");
+    }
+
+    private static String operation(ExecutionAttributes executionAttributes) {
+        return Optional.ofNullable(executionAttributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME))
+                .orElse("unknown");
+    }
+
+    private record Key(String endpoint, String operation) {
+    }
+
+    private static class Permit {
+
+        private final OperationLimiter limiter;
+        private final long startNanos;
+        private final AtomicBoolean released = new AtomicBoolean();
+        private final AtomicLong latencyNanos = new AtomicLong(-1);
+        private volatile boolean streaming;
+
+        Permit(OperationLimiter limiter, long startNanos) {
+            this.limiter = limiter;
+            this.startNanos = startNanos;
+        }
+
+        boolean isStreaming() {
+            return streaming && !released.get();
+        }
+
+        void responded() {
+            latencyNanos.compareAndSet(-1, System.nanoTime() - startNanos);
+        }
+
+        void release(boolean failure) {
+            // разрешение освобождается один раз: при ошибке, после ответа или после чтения тела
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            var now = System.nanoTime();
+            var latency = latencyNanos.get();
+            limiter.release(now, latency >= 0 ? latency : now - startNanos, failure);
+        }
+    }
+
+    private static class PermitInputStream extends FilterInputStream {
+
+        private final Permit permit;
+        private volatile boolean failed;
+
+        PermitInputStream(InputStream body, Permit permit) {
+            super(body);
+            this.permit = permit;
+            permit.streaming = true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            try {
+                var value = super.read();
+                if (value == -1) {
+                    permit.release(false);
+                }
+                return value;
+            } catch (IOException ex) {
+                failed = true;
+                throw ex;
+            }
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            try {
+                var count = super.read(bytes, offset, length);
+                if (count == -1) {
+                    permit.release(false);
+                }
+                return count;
+            } catch (IOException ex) {
+                failed = true;
+                throw ex;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                permit.release(failed);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package dev.vality.file.storage.service.part;
+
+import dev.vality.file.storage.UploadMultipartRequestData;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.utils.BinaryUtils;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Тело части multipart загрузки поверх буфера, который thrift выделил при десериализации запроса.
+ * {@code RequestBody.fromBytes} копирует массив, а {@code UploadMultipartRequestData.getContent()} может
+ * скопировать его еще раз, выравнивая буфер по размеру, поэтому тело читается из read-only представления
+ * буфера напрямую. MD5 части считается один раз при создании, до отправки, и сверяется с ETag ответа s3.
+ */
+public class PartContent {
+
+    private static final String MD5 = "MD5";
+    private static final String CONTENT_TYPE = "application/octet-stream";
+
+    private final ByteBuffer buffer;
+    private final byte[] md5;
+
+    private PartContent(ByteBuffer buffer) {
+        this.buffer = buffer;
+        var digest = newMd5();
+        digest.update(buffer.duplicate());
+        this.md5 = digest.digest();
+    }
+
+    public static PartContent of(UploadMultipartRequestData requestData) {
+        // поле, а не getContent() или bufferForContent(): оба метода могут вернуть копию буфера
+        var content = requestData.content;
+        if (content == null) {
+            throw new IllegalArgumentException(String.format(
+                    "Part content is empty, fileId=%s, sequencePart=%d",
+                    requestData.getFileDataId(), requestData.getSequencePart()));
+        }
+        return new PartContent(content.asReadOnlyBuffer());
+    }
+
+    public long length() {
+        return buffer.remaining();
+    }
+
+    public RequestBody requestBody() {
+        // новый поток на каждую попытку, поэтому SDK может повторить запрос без копии буфера
+        return RequestBody.fromContentProvider(
+                () -> new BufferInputStream(buffer.duplicate()),
+                length(),
+                CONTENT_TYPE);
+    }
+
+    /**
+     * Сверяет MD5 отправленного тела с ETag части. ETag, который не является MD5 (например, при шифровании
+     * SSE-KMS), не проверяется.
+     *
+     * @return {@code false}, если ETag является MD5 и не совпадает с отправленным телом
+     */
+    public boolean matches(String eTag) {
+        if (eTag == null) {
+            return true;
+        }
+        var hex = eTag.replace("\"", "");
+        return hex.length() != 32 || hex.equalsIgnoreCase(BinaryUtils.toHex(md5));
+    }
+
+    private static MessageDigest newMd5() {
+        try {
+            return MessageDigest.getInstance(MD5);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static class BufferInputStream extends InputStream {
+
+        private final ByteBuffer source;
+
+        BufferInputStream(ByteBuffer source) {
+            this.source = source;
+        }
+
+        @Override
+        public int read() {
+            if (!source.hasRemaining()) {
+                return -1;
+            }
+            return source.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!source.hasRemaining()) {
+                return -1;
+            }
+            var count = Math.min(length, source.remaining());
+            source.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return source.remaining();
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package dev.vality.file.storage.service.presign;
+
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import dev.vality.file.storage.util.ObjectPool;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.utils.BinaryUtils;
+import software.amazon.awssdk.utils.http.SdkHttpUtils;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Подписывает ссылки на {@code GetObject} и {@code PutObject} по SigV4 в query string так же, как
+ * {@code S3Presigner} с path-style адресацией, но без построения {@code SdkHttpFullRequest} на каждую ссылку.
+ * Ключ подписи зависит только от даты, региона и сервиса, поэтому вычисляется один раз в сутки, а {@link Mac}
+ * и {@link MessageDigest} переиспользуются через {@link ObjectPool}.
+ */
+@Component
+public class CachedSigV4Presigner {
+
+    private static final String ALGORITHM = "AWS4-HMAC-SHA256";
+    private static final String HMAC_SHA256 = "HmacSHA256";
+    private static final String SHA256 = "SHA-256";
+    private static final String SERVICE_NAME = "s3";
+    private static final String TERMINATOR = "aws4_request";
+    private static final String SIGNED_HEADERS = "host";
+    private static final String UNSIGNED_PAYLOAD = "UNSIGNED-PAYLOAD";
+    // ограничение SigV4, S3Presigner в этом случае тоже бросает IllegalArgumentException
+    private static final long MAX_EXPIRATION_SECONDS = 604_800;
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd")
+            .withZone(ZoneOffset.UTC);
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'")
+            .withZone(ZoneOffset.UTC);
+
+    private static final int POOL_SIZE = 256;
+    private static final ObjectPool<Mac> MACS = new ObjectPool<>(POOL_SIZE, () -> Mac.getInstance(HMAC_SHA256));
+    private static final ObjectPool<MessageDigest> DIGESTS =
+            new ObjectPool<>(POOL_SIZE, () -> MessageDigest.getInstance(SHA256));
+
+    private final String accessKey;
+    private final byte[] secretKey;
+    private final String region;
+    private final String endpoint;
+    private final String host;
+    private final String bucketPath;
+
+    private volatile SigningKey signingKey;
+
+    public CachedSigV4Presigner(S3SdkV2Properties s3SdkV2Properties) {
+        this.accessKey = s3SdkV2Properties.getAccessKey();
+        this.secretKey = ("AWS4" + s3SdkV2Properties.getSecretKey()).getBytes(StandardCharsets.UTF_8);
+        this.region = s3SdkV2Properties.getRegion();
+        var uri = URI.create(s3SdkV2Properties.getEndpoint());
+        var standardPort = uri.getPort() == -1
+                || "http".equals(uri.getScheme()) && uri.getPort() == 80
+                || "https".equals(uri.getScheme()) && uri.getPort() == 443;
+        this.host = standardPort ? uri.getHost() : uri.getHost() + ":" + uri.getPort();
+        this.endpoint = uri.getScheme() + "://" + host;
+        var basePath = uri.getRawPath() == null ? "" : uri.getRawPath().replaceAll("/+$", "");
+        this.bucketPath = basePath + "/" + SdkHttpUtils.urlEncode(s3SdkV2Properties.getBucketName()) + "/";
+    }
+
+    public URL presignGetObject(String key, String versionId, Instant signingTime, Instant expirationTime) {
+        return presign("GET", key, versionIdParameter(versionId), signingContext(signingTime, expirationTime));
+    }
+
+    public URL presignPutObject(String key, Instant signingTime, Instant expirationTime) {
+        return presign("PUT", key, Map.of(), signingContext(signingTime, expirationTime));
+    }
+
+    private static Map<String, String> versionIdParameter(String versionId) {
+        return versionId != null ? Map.of("versionId", versionId) : Map.of();
+    }
+
+    private URL presign(String method, String key, Map<String, String> parameters, SigningContext context) {
+        var path = bucketPath + SdkHttpUtils.urlEncodeIgnoreSlashes(key);
+        var encodedParameters = new LinkedHashMap<String, String>();
+        parameters.forEach((name, value) -> encodedParameters.put(
+                SdkHttpUtils.urlEncode(name),
+                SdkHttpUtils.urlEncode(value)));
+        var signingParameters = new LinkedHashMap<String, String>();
+        signingParameters.put("X-Amz-Algorithm", ALGORITHM);
+        signingParameters.put("X-Amz-Date", context.amzDate());
+        signingParameters.put("X-Amz-SignedHeaders", SIGNED_HEADERS);
+        signingParameters.put("X-Amz-Expires", Long.toString(context.expiresSeconds()));
+        signingParameters.put("X-Amz-Credential", context.encodedCredential());
+        // query string подписываемого запроса: параметры отсортированы по имени
+        var sortedParameters = new TreeMap<>(encodedParameters);
+        sortedParameters.putAll(signingParameters);
+        var canonicalRequest = method + "\n"
+                + path + "\n"
+                + joinParameters(sortedParameters) + "\n"
+                + "host:" + host + "\n"
+                + "\n"
+                + SIGNED_HEADERS + "\n"
+                + UNSIGNED_PAYLOAD;
+        var stringToSign = ALGORITHM + "\n"
+                + context.amzDate() + "\n"
+                + context.scope() + "\n"
+                + BinaryUtils.toHex(sha256(canonicalRequest));
+        var signature = BinaryUtils.toHex(hmacSha256(context.signingKey(), stringToSign));
+        // в ссылке параметры идут в том же порядке, что у S3Presigner: сначала параметры запроса, затем подпись
+        var urlParameters = new LinkedHashMap<>(encodedParameters);
+        urlParameters.putAll(signingParameters);
+        urlParameters.put("X-Amz-Signature", signature);
+        var url = endpoint + path + "?" + joinParameters(urlParameters);
+        try {
+            return URI.create(url).toURL();
+        } catch (MalformedURLException ex) {
+            throw new IllegalArgumentException(ex);
+        }
+    }
+
+    private static String joinParameters(Map<String, String> parameters) {
+        var query = new StringBuilder(512);
+        parameters.forEach((name, value) -> {
+            if (!query.isEmpty()) {
+                query.append('&');
+            }
+            query.append(name).append('=').append(value);
+        });
+        return query.toString();
+    }
+
+    private SigningContext signingContext(Instant signingTime, Instant expirationTime) {
+        var expiresSeconds = expirationTime.getEpochSecond() - signingTime.getEpochSecond();
+        // X-Amz-Expires должен быть положительным, иначе ссылка недействительна с момента подписи
+        if (expiresSeconds <= 0) {
+            throw new IllegalArgumentException(String.format(
+                    "Expiration time must be after signing time, signingTime=%s, expirationTime=%s",
+                    signingTime, expirationTime));
+        }
+        if (expiresSeconds > MAX_EXPIRATION_SECONDS) {
+            throw new IllegalArgumentException(String.format(
+                    "Requests that are pre-signed by SigV4 algorithm are valid for at most 7 days, expires=%d",
+                    expiresSeconds));
+        }
+        var date = DATE_FORMAT.format(signingTime);
+        var scope = date + "/" + region + "/" + SERVICE_NAME + "/" + TERMINATOR;
+        return new SigningContext(
+                DATE_TIME_FORMAT.format(signingTime),
+                scope,
+                SdkHttpUtils.urlEncode(accessKey + "/" + scope),
+                expiresSeconds,
+                signingKey(date));
+    }
+
+    private byte[] signingKey(String date) {
+        var currentKey = signingKey;
+        if (currentKey != null && currentKey.date().equals(date)) {
+            return currentKey.key();
+        }
+        // при гонке ключ может быть вычислен дважды, результат от этого не меняется
+        var dateKey = hmacSha256(secretKey, date);
+        var regionKey = hmacSha256(dateKey, region);
+        var serviceKey = hmacSha256(regionKey, SERVICE_NAME);
+        var key = hmacSha256(serviceKey, TERMINATOR);
+        signingKey = new SigningKey(date, key);
+        return key;
+    }
+
+    private static byte[] hmacSha256(byte[] key, String data) {
+        var mac = MACS.borrow();
+        try {
+            mac.init(new SecretKeySpec(key, HMAC_SHA256));
+            return mac.doFinal(data.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException ex) {
+            throw new IllegalStateException(ex);
+        } finally {
+            MACS.release(mac);
+        }
+    }
+
+    private static byte[] sha256(String data) {
+        var digest = DIGESTS.borrow();
+        try {
+            return digest.digest(data.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            DIGESTS.release(digest);
+        }
+    }
+
+    private record SigningKey(String date, byte[] key) {
+    }
+
+    private record SigningContext(String amzDate,
+                                  String scope,
+                                  String encodedCredential,
+                                  long expiresSeconds,
+                                  byte[] signingKey) {
+    }
+}
@@ -0,0 +1,173 @@
+package dev.vality.file.storage.service.presign;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
+
+import java.net.URL;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Подписывает ссылки на скачивание ревизии файла. В режиме {@code BUCKETED} время подписи и время
+ * истечения выравниваются вниз по {@code bucket-size}, а подписанный запрос кешируется по
+ * (fileId, versionId, время истечения), поэтому одинаковые запросы получают одну и ту же ссылку
+ * и ее можно кешировать в nginx и браузере. Подпись выполняет {@code S3Presigner} или
+ * {@link CachedSigV4Presigner} в зависимости от {@code presign.engine}.
+ */
+@Slf4j
+@Component
+public class DownloadUrlPresigner {
+
+    public static final String CACHE_NAME = "presigned-download-url";
+
+    private static final Duration MAX_SIGNATURE_DURATION = Duration.ofDays(7);
+
+    private final S3SdkV2Properties s3SdkV2Properties;
+    private final S3Presigner s3Presigner;
+    private final CachedSigV4Presigner cachedSigV4Presigner;
+    private final Cache<PresignKey, URL> cache;
+
+    public DownloadUrlPresigner(S3SdkV2Properties s3SdkV2Properties,
+                                S3Presigner s3Presigner,
+                                CachedSigV4Presigner cachedSigV4Presigner,
+                                MeterRegistry meterRegistry) {
+        this.s3SdkV2Properties = s3SdkV2Properties;
+        this.s3Presigner = s3Presigner;
+        this.cachedSigV4Presigner = cachedSigV4Presigner;
+        var properties = s3SdkV2Properties.getPresign();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(properties.getCacheMaxSize())
+                .expireAfter(new PresignExpiry(properties.getMinValidity()))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(
+                meterRegistry, cache, CACHE_NAME, "shard", s3SdkV2Properties.getSharding().getShardId());
+    }
+
+    public URL presign(String fileId, String fileVersionId, Instant expirationTime) {
+        var window = signingWindow(expirationTime);
+        if (window.bucketed()) {
+            var cachedUrl = getCachedUrl(fileId, fileVersionId, window);
+            if (cachedUrl != null) {
+                return cachedUrl;
+            }
+        }
+        var url = presignGetObject(fileId, fileVersionId, window);
+        if (window.bucketed()) {
+            cache.put(new PresignKey(fileId, fileVersionId, window.expirationTime()), url);
+        }
+        return url;
+    }
+
+    /**
+     * В режиме {@code BUCKETED} время истечения выравнивается вниз, чтобы ссылка не жила дольше запрошенного,
+     * и ограничивается 7 днями от выровненного времени подписи — пределом SigV4. Если до выровненного времени
+     * истечения ссылке осталось жить меньше {@code min-validity}, она подписывается как в {@code EXACT}.
+     */
+    private SigningWindow signingWindow(Instant expirationTime) {
+        var properties = s3SdkV2Properties.getPresign();
+        var now = Instant.now();
+        if (properties.getMode() == S3SdkV2Properties.PresignMode.EXACT) {
+            return new SigningWindow(now, expirationTime, false);
+        }
+        var bucketMillis = properties.getBucketSize().toMillis();
+        var signingTime = alignDown(now, bucketMillis);
+        var maxExpirationTime = alignDown(signingTime.plus(MAX_SIGNATURE_DURATION), bucketMillis);
+        var alignedExpirationTime = alignDown(expirationTime, bucketMillis);
+        if (alignedExpirationTime.isAfter(maxExpirationTime)) {
+            alignedExpirationTime = maxExpirationTime;
+        }
+        if (!hasEnoughValidity(alignedExpirationTime, now)) {
+            return new SigningWindow(now, expirationTime, false);
+        }
+        return new SigningWindow(signingTime, alignedExpirationTime, true);
+    }
+
+    private static Instant alignDown(Instant instant, long bucketMillis) {
+        return Instant.ofEpochMilli(Math.floorDiv(instant.toEpochMilli(), bucketMillis) * bucketMillis);
+    }
+
+    private URL getCachedUrl(String fileId, String fileVersionId, SigningWindow window) {
+        var cachedUrl = cache.getIfPresent(new PresignKey(fileId, fileVersionId, window.expirationTime()));
+        if (cachedUrl != null && hasEnoughValidity(window.expirationTime(), Instant.now())) {
+            log.info("Download url was taken from cache, fileId={}, bucketName={}",
+                    fileId, s3SdkV2Properties.getBucketName());
+            return cachedUrl;
+        }
+        return null;
+    }
+
+    private boolean hasEnoughValidity(Instant expirationTime, Instant now) {
+        return expirationTime.isAfter(now.plus(s3SdkV2Properties.getPresign().getMinValidity()));
+    }
+
+    private URL presignGetObject(String fileId, String fileVersionId, SigningWindow window) {
+        if (s3SdkV2Properties.getPresign().getEngine() == S3SdkV2Properties.PresignEngine.CACHED_SIGV4) {
+            var url = cachedSigV4Presigner.presignGetObject(
+                    fileId,
+                    fileVersionId,
+                    window.signingTime(),
+                    window.expirationTime());
+            log.info("Download url was presigned, fileId={}, bucketName={}",
+                    fileId, s3SdkV2Properties.getBucketName());
+            return url;
+        }
+        var getObjectRequest = GetObjectRequest.builder()
+                .bucket(s3SdkV2Properties.getBucketName())
+                .key(fileId)
+                .versionId(fileVersionId);
+        if (window.bucketed()) {
+            var signer = new FixedTimeS3Presigner(window.signingTime(), window.expirationTime());
+            getObjectRequest.overrideConfiguration(configuration -> configuration.signer(signer));
+        }
+        var presignRequest = GetObjectPresignRequest.builder()
+                .signatureDuration(Duration.between(window.signingTime(), window.expirationTime()))
+                .getObjectRequest(getObjectRequest.build())
+                .build();
+        var presignedRequest = s3Presigner.presignGetObject(presignRequest);
+        log.info("Download url was presigned, fileId={}, bucketName={}, isBrowserExecutable={}",
+                fileId, s3SdkV2Properties.getBucketName(), presignedRequest.isBrowserExecutable());
+        log.debug("Presigned http request={}", presignedRequest.httpRequest().toString());
+        return presignedRequest.url();
+    }
+
+    private record SigningWindow(Instant signingTime, Instant expirationTime, boolean bucketed) {
+    }
+
+    private record PresignKey(String fileId, String fileVersionId, Instant expirationTime) {
+    }
+
+    private record PresignExpiry(Duration minValidity) implements Expiry<PresignKey, URL> {
+
+        @Override
+        public long expireAfterCreate(PresignKey key, URL value, long currentTime) {
+            var ttl = Duration.between(Instant.now(), key.expirationTime().minus(minValidity));
+            return Math.max(0, ttl.toNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(PresignKey key,
+                                      URL value,
+                                      long currentTime,
+                                      long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(PresignKey key,
+                                    URL value,
+                                    long currentTime,
+                                    long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
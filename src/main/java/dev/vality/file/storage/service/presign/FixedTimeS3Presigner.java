@@ -0,0 +1,45 @@
+package dev.vality.file.storage.service.presign;
+
+import lombok.RequiredArgsConstructor;
+import software.amazon.awssdk.auth.signer.AwsS3V4Signer;
+import software.amazon.awssdk.auth.signer.AwsSignerExecutionAttribute;
+import software.amazon.awssdk.auth.signer.params.Aws4PresignerParams;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.signer.Presigner;
+import software.amazon.awssdk.core.signer.Signer;
+import software.amazon.awssdk.http.SdkHttpFullRequest;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+/**
+ * SigV4 подписчик для {@code S3Presigner}, который подписывает запрос с заданным временем подписи
+ * и временем истечения вместо текущего времени.
+ */
+@RequiredArgsConstructor
+public class FixedTimeS3Presigner implements Signer, Presigner {
+
+    private static final AwsS3V4Signer SIGNER = AwsS3V4Signer.create();
+
+    private final Instant signingTime;
+    private final Instant expirationTime;
+
+    @Override
+    public SdkHttpFullRequest sign(SdkHttpFullRequest request, ExecutionAttributes executionAttributes) {
+        return SIGNER.sign(request, executionAttributes);
+    }
+
+    @Override
+    public SdkHttpFullRequest presign(SdkHttpFullRequest request, ExecutionAttributes executionAttributes) {
+        var presignerParams = Aws4PresignerParams.builder()
+                .awsCredentials(executionAttributes.getAttribute(AwsSignerExecutionAttribute.AWS_CREDENTIALS))
+                .signingName(executionAttributes.getAttribute(AwsSignerExecutionAttribute.SERVICE_SIGNING_NAME))
+                .signingRegion(executionAttributes.getAttribute(AwsSignerExecutionAttribute.SIGNING_REGION))
+                .doubleUrlEncode(false)
+                .signingClockOverride(Clock.fixed(signingTime, ZoneOffset.UTC))
+                .expirationTime(expirationTime)
+                .build();
+        return SIGNER.presign(request, presignerParams);
+    }
+}
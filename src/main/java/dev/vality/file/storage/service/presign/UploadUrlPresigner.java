@@ -0,0 +1,42 @@
+package dev.vality.file.storage.service.presign;
+
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
+
+import java.net.URL;
+import java.time.Duration;
+import java.time.Instant;
+
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class UploadUrlPresigner {
+
+    private final S3SdkV2Properties s3SdkV2Properties;
+    private final S3Presigner s3Presigner;
+    private final CachedSigV4Presigner cachedSigV4Presigner;
+
+    public URL presign(String fileId, Instant expirationTime) {
+        if (s3SdkV2Properties.getPresign().getEngine() == S3SdkV2Properties.PresignEngine.CACHED_SIGV4) {
+            var url = cachedSigV4Presigner.presignPutObject(fileId, Instant.now(), expirationTime);
+            log.info("Upload url was presigned, fileId={}, bucketName={}", fileId, s3SdkV2Properties.getBucketName());
+            return url;
+        }
+        var presignRequest = PutObjectPresignRequest.builder()
+                .signatureDuration(Duration.between(Instant.now(), expirationTime))
+                .putObjectRequest(PutObjectRequest.builder()
+                        .bucket(s3SdkV2Properties.getBucketName())
+                        .key(fileId)
+                        .build())
+                .build();
+        var presignedRequest = s3Presigner.presignPutObject(presignRequest);
+        log.info("Upload url was presigned, fileId={}, bucketName={}", fileId, s3SdkV2Properties.getBucketName());
+        log.debug("Presigned http request={}", presignedRequest.httpRequest().toString());
+        return presignedRequest.url();
+    }
+}
@@ -0,0 +1,81 @@
+package dev.vality.file.storage.service.proxy;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Пул буферов фиксированного размера. Буферы выделяются по мере надобности, но не больше {@code maxBuffers},
+ * и после использования возвращаются в пул, поэтому память под данные прокси ограничена
+ * {@code maxBuffers * bufferSize} независимо от количества и размера одновременных запросов.
+ */
+public class BufferPool {
+
+    @Getter
+    private final int bufferSize;
+    @Getter
+    private final int maxBuffers;
+    private final Semaphore permits;
+    private final Queue<byte[]> buffers = new ConcurrentLinkedQueue<>();
+
+    public BufferPool(String name, int bufferSize, int maxBuffers, MeterRegistry meterRegistry) {
+        this.bufferSize = bufferSize;
+        this.maxBuffers = maxBuffers;
+        this.permits = new Semaphore(maxBuffers);
+        Gauge.builder("file.storage.proxy.buffers.in.use", permits, p -> maxBuffers - p.availablePermits())
+                .description("Proxy buffers currently leased")
+                .tag("pool", name)
+                .register(meterRegistry);
+        Gauge.builder("file.storage.proxy.buffers.max", () -> maxBuffers)
+                .description("Maximum number of proxy buffers")
+                .tag("pool", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return буфер или {@code null}, если за {@code timeout} свободный буфер не появился
+     */
+    public byte[] acquire(Duration timeout) throws InterruptedException {
+        if (!permits.tryAcquire(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            return null;
+        }
+        var buffer = buffers.poll();
+        return buffer != null ? buffer : new byte[bufferSize];
+    }
+
+    /**
+     * Выдает {@code count} буферов разом, чтобы загрузки, которым нужно несколько буферов на часть,
+     * не держали часть буферов, ожидая остальные.
+     *
+     * @return буферы или {@code null}, если за {@code timeout} столько свободных буферов не появилось
+     */
+    public byte[][] acquire(int count, Duration timeout) throws InterruptedException {
+        if (!permits.tryAcquire(count, timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+            return null;
+        }
+        var acquired = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            var buffer = buffers.poll();
+            acquired[i] = buffer != null ? buffer : new byte[bufferSize];
+        }
+        return acquired;
+    }
+
+    public void release(byte[] buffer) {
+        buffers.offer(buffer);
+        permits.release();
+    }
+
+    public void release(byte[][] acquired) {
+        for (byte[] buffer : acquired) {
+            buffers.offer(buffer);
+        }
+        permits.release(acquired.length);
+    }
+}
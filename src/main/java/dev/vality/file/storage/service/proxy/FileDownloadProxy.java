@@ -0,0 +1,167 @@
+package dev.vality.file.storage.service.proxy;
+
+import dev.vality.file.storage.configuration.properties.ProxyProperties;
+import dev.vality.file.storage.service.exception.ServiceOverloadedException;
+import dev.vality.file.storage.service.exception.StorageException;
+import dev.vality.file.storage.service.read.S3ReadRouter;
+import dev.vality.file.storage.service.shard.S3ShardResolver;
+import dev.vality.file.storage.util.CheckerUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.http.HttpStatusCode;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.Instant;
+
+/**
+ * Отдает ревизию файла, на которую подписывается ссылка в {@code generateDownloadUrl}. Заголовки
+ * {@code Range}, {@code If-None-Match} и {@code If-Modified-Since} передаются в {@code GetObject} как есть,
+ * поэтому s3 сам отдает только запрошенный диапазон или {@code 304}, и дочитывание файла не требует
+ * повторной передачи уже полученных байт. Тело ответа копируется клиенту через буфер из {@link BufferPool}:
+ * данные приходят из сокета http клиента s3, а не из файла, поэтому передача через {@code FileChannel} здесь
+ * неприменима. С шардированием файл читается из бакета шарда из fileId, см. {@link S3ShardResolver}.
+ */
+@Slf4j
+@Component
+public class FileDownloadProxy {
+
+    public static final String BUFFER_POOL_NAME = "download";
+
+    private final ProxyProperties proxyProperties;
+    private final S3ShardResolver s3ShardResolver;
+    private final BufferPool bufferPool;
+
+    public FileDownloadProxy(ProxyProperties proxyProperties,
+                             S3ShardResolver s3ShardResolver,
+                             MeterRegistry meterRegistry) {
+        this.proxyProperties = proxyProperties;
+        this.s3ShardResolver = s3ShardResolver;
+        var properties = proxyProperties.getDownload();
+        this.bufferPool = new BufferPool(
+                BUFFER_POOL_NAME,
+                properties.getBufferSize(),
+                properties.getMaxBuffers(),
+                meterRegistry);
+    }
+
+    /**
+     * Открывает ревизию файла в s3 и копирует тело ответа в поток, который вернет {@code target}. Буфер берется
+     * до запроса в s3, поэтому при нехватке буферов клиент получает 503 до того, как начата отправка ответа.
+     */
+    public long download(String fileId,
+                         String range,
+                         String ifNoneMatch,
+                         Instant ifModifiedSince,
+                         DownloadTarget target) throws IOException, InterruptedException {
+        CheckerUtil.checkString(fileId, "Bad request parameter, fileId required and not empty arg");
+        var route = s3ShardResolver.resolve(fileId);
+        var fileVersionId = route.fileMetadataResolver().resolveFileVersionId(route.key());
+        var buffer = bufferPool.acquire(proxyProperties.getDownload().getBufferAcquireTimeout());
+        if (buffer == null) {
+            throw new ServiceOverloadedException(String.format(
+                    "Failed to acquire download buffer, fileId=%s, maxBuffers=%d",
+                    fileId, bufferPool.getMaxBuffers()));
+        }
+        try {
+            var objectBody = getObject(route, fileVersionId, range, ifNoneMatch, ifModifiedSince);
+            if (objectBody.body() == null) {
+                target.open(objectBody.status(), null);
+                return 0;
+            }
+            try (var inputStream = objectBody.body()) {
+                try {
+                    return transfer(route, fileVersionId, inputStream, buffer, target, objectBody.status());
+                } catch (IOException | RuntimeException ex) {
+                    // клиент отключился или s3 оборвал ответ: close дочитал бы остаток объекта, чтобы вернуть
+                    // соединение в пул, поэтому соединение закрывается без дочитывания
+                    inputStream.abort();
+                    throw ex;
+                }
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    private static long transfer(S3ShardResolver.S3Route route,
+                                 String fileVersionId,
+                                 ResponseInputStream<GetObjectResponse> inputStream,
+                                 byte[] buffer,
+                                 DownloadTarget target,
+                                 int status) throws IOException {
+        var response = inputStream.response();
+        var outputStream = target.open(status, response);
+        long transferred = 0;
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+            transferred += read;
+        }
+        log.info("Object version with file was sent through proxy, fileId={}, bucketName={}, versionId={}, " +
+                        "range={}, size={}",
+                route.fileId(), route.bucketName(), fileVersionId, response.contentRange(), transferred);
+        return transferred;
+    }
+
+    private ObjectBody getObject(S3ShardResolver.S3Route route,
+                                 String fileVersionId,
+                                 String range,
+                                 String ifNoneMatch,
+                                 Instant ifModifiedSince) {
+        var request = GetObjectRequest.builder()
+                .bucket(route.bucketName())
+                .key(route.key())
+                .versionId(fileVersionId)
+                .range(range)
+                .ifNoneMatch(ifNoneMatch)
+                .ifModifiedSince(ifModifiedSince)
+                .build();
+        try {
+            // ответ читается потоком, поэтому GetObject не дублируется на другой endpoint
+            var responseInputStream = route.s3ReadRouter()
+                    .route(S3ReadRouter.GET_OBJECT, client -> client.getObject(request));
+            var status = responseInputStream.response().contentRange() != null
+                    ? HttpStatusCode.PARTIAL_CONTENT
+                    : HttpStatusCode.OK;
+            return new ObjectBody(status, responseInputStream);
+        } catch (S3Exception ex) {
+            if (ex.statusCode() == HttpStatusCode.NOT_MODIFIED
+                    || ex.statusCode() == HttpStatusCode.PRECONDITION_FAILED
+                    || ex.statusCode() == HttpStatusCode.REQUESTED_RANGE_NOT_SATISFIABLE) {
+                log.info("Object version with file was not sent, fileId={}, bucketName={}, versionId={}, status={}",
+                        route.fileId(), route.bucketName(), fileVersionId, ex.statusCode());
+                return new ObjectBody(ex.statusCode(), null);
+            }
+            throw new StorageException(
+                    String.format("Failed to get object version with file, fileId=%s, versionId=%s, bucketName=%s",
+                            route.fileId(), fileVersionId, route.bucketName()),
+                    ex);
+        } catch (SdkException ex) {
+            throw new StorageException(
+                    String.format("Failed to get object version with file, fileId=%s, versionId=%s, bucketName=%s",
+                            route.fileId(), fileVersionId, route.bucketName()),
+                    ex);
+        }
+    }
+
+    @FunctionalInterface
+    public interface DownloadTarget {
+
+        /**
+         * Вызывается один раз перед отправкой тела. {@code response} равен {@code null}, если s3 ответил
+         * {@code 304}, {@code 412} или {@code 416} и тела нет.
+         */
+        OutputStream open(int status, GetObjectResponse response) throws IOException;
+
+    }
+
+    private record ObjectBody(int status, ResponseInputStream<GetObjectResponse> body) {
+    }
+}
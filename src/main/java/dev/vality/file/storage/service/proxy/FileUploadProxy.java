@@ -0,0 +1,437 @@
+package dev.vality.file.storage.service.proxy;
+
+import dev.vality.file.storage.configuration.properties.ProxyProperties;
+import dev.vality.file.storage.service.exception.FileAlreadyUploadedException;
+import dev.vality.file.storage.service.exception.ServiceOverloadedException;
+import dev.vality.file.storage.service.exception.StorageException;
+import dev.vality.file.storage.service.exception.UploadExpiredException;
+import dev.vality.file.storage.service.model.FileMetadata;
+import dev.vality.file.storage.service.shard.S3ShardResolver;
+import dev.vality.file.storage.util.CheckerUtil;
+import dev.vality.file.storage.util.FutureUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.core.exception.SdkException;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.http.HttpStatusCode;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static dev.vality.file.storage.service.FileMetadataResolver.FILENAME_METADATA;
+
+/**
+ * Загружает тело запроса в файл, созданный через {@code createNewFile}, так же, как клиент загружает его
+ * по подписанной ссылке: объект fileId с {@code Content-Disposition}, метаданные уже записаны в раскладке
+ * {@code s3-sdk-v2.layout.write}. Тело читается частями в буферы из {@link BufferPool}: если файл поместился
+ * в одну часть, он загружается одним {@code PutObject}, иначе частями multipart загрузки. Размер части растет
+ * с {@code Content-Length}, чтобы файл уложился в 10000 частей.
+ * <p>
+ * Буферы под первую часть берутся из пула до чтения тела, и только здесь загрузка может получить 503. Когда первая
+ * часть заполнена, загрузка без ожидания забирает из свободных буферов еще до {@code part-concurrency} частей, но
+ * не больше, чем частей осталось по {@code Content-Length}. Дальше загрузка работает только со своими буферами:
+ * до {@code part-concurrency} частей отправляются в s3 параллельно, пока читается следующая, а буфер отправленной
+ * части переиспользуется. Если свободных буферов не нашлось, части отправляются по одной. Поэтому начатая загрузка
+ * не ждет буферы других запросов и не отклоняется посреди тела, а медленный s3 притормаживает клиента через tcp.
+ * Часть, не отправленная из-за временной ошибки s3, повторяется отдельно, а при окончательной ошибке загрузка
+ * отменяется.
+ * С шардированием файл загружается в бакет шарда из fileId, см. {@link S3ShardResolver}.
+ * <p>
+ * Одновременные загрузки одного fileId в инстансе отклоняются, а перед {@code PutObject} и
+ * {@code CompleteMultipartUpload} список ревизий перечитывается мимо кеша, поэтому файл, загруженный тем временем
+ * по ссылке или через другой инстанс, не перезаписывается. Условной записи в используемой версии SDK нет, так что
+ * между проверкой и записью остается короткое окно. Загрузка после срока ссылки из {@code createNewFile}
+ * отклоняется так же, как s3 отклоняет просроченную ссылку.
+ */
+@Slf4j
+@Component
+public class FileUploadProxy {
+
+    public static final String BUFFER_POOL_NAME = "upload";
+
+    // ограничение s3 на количество частей multipart загрузки
+    private static final int MAX_PARTS = 10_000;
+
+    private final ProxyProperties proxyProperties;
+    private final S3ShardResolver s3ShardResolver;
+    private final ExecutorService s3PartUploadExecutor;
+    private final BufferPool bufferPool;
+    private final Counter partRetries;
+    private final Set<String> uploadsInProgress = ConcurrentHashMap.newKeySet();
+
+    public FileUploadProxy(ProxyProperties proxyProperties,
+                           S3ShardResolver s3ShardResolver,
+                           @Qualifier("s3PartUploadExecutor") ExecutorService s3PartUploadExecutor,
+                           MeterRegistry meterRegistry) {
+        this.proxyProperties = proxyProperties;
+        this.s3ShardResolver = s3ShardResolver;
+        this.s3PartUploadExecutor = s3PartUploadExecutor;
+        var properties = proxyProperties.getUpload();
+        this.bufferPool = new BufferPool(
+                BUFFER_POOL_NAME,
+                properties.getPartSize(),
+                properties.getMaxBuffers(),
+                meterRegistry);
+        this.partRetries = Counter.builder("file.storage.proxy.upload.part.retries")
+                .description("File parts re-sent to s3 after a transient error")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param contentLength заявленный размер тела или {@code -1}, если он неизвестен
+     */
+    public void upload(String fileId,
+                       String contentType,
+                       String contentDisposition,
+                       long contentLength,
+                       InputStream inputStream) throws IOException, InterruptedException {
+        CheckerUtil.checkString(fileId, "Bad request parameter, fileId required and not empty arg");
+        var route = s3ShardResolver.resolve(fileId);
+        if (!uploadsInProgress.add(fileId)) {
+            throw new FileAlreadyUploadedException(String.format(
+                    "File upload is already in progress, fileId=%s, bucketName=%s", fileId, route.bucketName()));
+        }
+        try {
+            upload(route, contentType, contentDisposition, contentLength, inputStream);
+        } finally {
+            uploadsInProgress.remove(fileId);
+        }
+        // файл загружен, закешированный отрицательный результат больше не актуален
+        route.fileMetadataResolver().invalidateFileVersions(route.key());
+    }
+
+    private void upload(S3ShardResolver.S3Route route,
+                        String contentType,
+                        String contentDisposition,
+                        long contentLength,
+                        InputStream inputStream) throws IOException, InterruptedException {
+        var fileId = route.fileId();
+        var fileMetadata = route.fileMetadataResolver().resolveNotUploadedFileMetadata(route.key());
+        checkNotExpired(route, fileMetadata);
+        if (contentDisposition == null) {
+            var fileName = fileMetadata.getMetadata().get(FILENAME_METADATA);
+            if (fileName == null || !fileName.isSetStr()) {
+                throw new IllegalArgumentException(String.format(
+                        "Header 'Content-Disposition' is required for file without fileName, fileId=%s", fileId));
+            }
+            contentDisposition = "attachment;filename=" + URLEncoder.encode(fileName.getStr(), StandardCharsets.UTF_8);
+        }
+        var buffersPerPart = buffersPerPart(fileId, contentLength);
+        List<PartBuffers> parts = new ArrayList<>();
+        parts.add(acquirePart(fileId, buffersPerPart));
+        try {
+            var firstPart = parts.get(0);
+            firstPart.read(inputStream);
+            if (!firstPart.isFull()) {
+                checkNotUploaded(route);
+                putObject(route, contentType, contentDisposition, firstPart);
+            } else {
+                parts.addAll(acquireAvailableParts(buffersPerPart, remainingParts(contentLength, firstPart)));
+                multipartUpload(route, contentType, contentDisposition, inputStream, parts);
+            }
+        } finally {
+            // multipart загрузка возвращается только после завершения всех отправок
+            parts.forEach(PartBuffers::release);
+        }
+    }
+
+    private static void checkNotExpired(S3ShardResolver.S3Route route, FileMetadata fileMetadata) {
+        var expirationTime = fileMetadata.getExpirationTime();
+        if (expirationTime != null && Instant.parse(expirationTime).isBefore(Instant.now())) {
+            throw new UploadExpiredException(String.format(
+                    "Upload time has expired, fileId=%s, bucketName=%s, expirationTime=%s",
+                    route.fileId(), route.bucketName(), expirationTime));
+        }
+    }
+
+    private static void checkNotUploaded(S3ShardResolver.S3Route route) {
+        // пока читалось тело, файл мог быть загружен по ссылке или через другой инстанс
+        route.fileMetadataResolver().resolveNotUploadedFileMetadata(route.key());
+    }
+
+    private int buffersPerPart(String fileId, long contentLength) {
+        var bufferSize = bufferPool.getBufferSize();
+        if (contentLength <= (long) bufferSize * MAX_PARTS) {
+            return 1;
+        }
+        var partSize = (contentLength + MAX_PARTS - 1) / MAX_PARTS;
+        var buffersPerPart = (partSize + bufferSize - 1) / bufferSize;
+        if (buffersPerPart > bufferPool.getMaxBuffers()) {
+            throw new IllegalArgumentException(String.format(
+                    "File is too large for upload through proxy, fileId=%s, contentLength=%d", fileId, contentLength));
+        }
+        return (int) buffersPerPart;
+    }
+
+    private PartBuffers acquirePart(String fileId, int bufferCount) throws InterruptedException {
+        var buffers = bufferPool.acquire(bufferCount, proxyProperties.getUpload().getBufferAcquireTimeout());
+        if (buffers == null) {
+            throw new ServiceOverloadedException(String.format(
+                    "Failed to acquire upload buffer, fileId=%s, maxBuffers=%d",
+                    fileId, bufferPool.getMaxBuffers()));
+        }
+        return new PartBuffers(bufferPool, buffers);
+    }
+
+    private int remainingParts(long contentLength, PartBuffers firstPart) {
+        var concurrency = proxyProperties.getUpload().getPartConcurrency();
+        if (contentLength < 0) {
+            return concurrency;
+        }
+        var partSize = (long) firstPart.bufferCount() * bufferPool.getBufferSize();
+        var remainingParts = (contentLength - firstPart.length() + partSize - 1) / partSize;
+        return (int) Math.min(concurrency, remainingParts);
+    }
+
+    /**
+     * Забирает без ожидания столько частей из свободных буферов, сколько есть, но не больше {@code maxParts}.
+     */
+    private List<PartBuffers> acquireAvailableParts(int buffersPerPart, int maxParts) throws InterruptedException {
+        for (int partCount = maxParts; partCount > 0; partCount--) {
+            var buffers = bufferPool.acquire(partCount * buffersPerPart, Duration.ZERO);
+            if (buffers != null) {
+                List<PartBuffers> parts = new ArrayList<>(partCount);
+                for (int i = 0; i < partCount; i++) {
+                    parts.add(new PartBuffers(
+                            bufferPool,
+                            Arrays.copyOfRange(buffers, i * buffersPerPart, (i + 1) * buffersPerPart)));
+                }
+                return parts;
+            }
+        }
+        return List.of();
+    }
+
+    private void putObject(S3ShardResolver.S3Route route,
+                           String contentType,
+                           String contentDisposition,
+                           PartBuffers part) {
+        try {
+            var request = PutObjectRequest.builder()
+                    .bucket(route.bucketName())
+                    .key(route.key())
+                    .contentType(contentType)
+                    .contentDisposition(contentDisposition)
+                    .contentLength((long) part.length())
+                    .build();
+            var putObjectResponse = route.s3Client().putObject(request, part.requestBody());
+            log.info("Object version with file was uploaded through proxy, fileId={}, bucketName={}, versionId={}, " +
+                            "size={}",
+                    route.fileId(), route.bucketName(), putObjectResponse.versionId(), part.length());
+        } catch (SdkException ex) {
+            throw new StorageException(
+                    String.format("Failed to upload object version with file, fileId=%s, bucketName=%s",
+                            route.fileId(), route.bucketName()),
+                    ex);
+        }
+    }
+
+    private void multipartUpload(S3ShardResolver.S3Route route,
+                                 String contentType,
+                                 String contentDisposition,
+                                 InputStream inputStream,
+                                 List<PartBuffers> parts) throws IOException, InterruptedException {
+        var fileId = route.fileId();
+        var uploadId = createMultipartUpload(route, contentType, contentDisposition);
+        var partPermits = new Semaphore(proxyProperties.getUpload().getPartConcurrency());
+        // буферы отправленных частей, которые можно читать заново
+        BlockingQueue<PartBuffers> freeParts = new ArrayBlockingQueue<>(parts.size());
+        freeParts.addAll(parts.subList(1, parts.size()));
+        var failure = new AtomicReference<Throwable>();
+        List<CompletableFuture<CompletedPart>> partUploads = new ArrayList<>();
+        var part = parts.get(0);
+        try {
+            while (part != null) {
+                if (partUploads.size() == MAX_PARTS) {
+                    throw new IllegalArgumentException(String.format(
+                            "File is too large for part size %d, fileId=%s",
+                            part.bufferCount() * bufferPool.getBufferSize(), fileId));
+                }
+                partPermits.acquire();
+                partUploads.add(uploadPartAsync(
+                        route, uploadId, partUploads.size() + 1, part, partPermits, freeParts, failure));
+                part = null;
+                if (failure.get() != null) {
+                    // остальное тело не читается, ошибка части выбрасывается при ожидании отправок
+                    break;
+                }
+                // буферы зарезервированы за загрузкой, поэтому ожидание ограничено отправкой одной из частей
+                part = freeParts.take();
+                if (part.read(inputStream) == 0) {
+                    part = null;
+                }
+            }
+            List<CompletedPart> completedParts = new ArrayList<>(partUploads.size());
+            for (var partUpload : partUploads) {
+                completedParts.add(FutureUtil.join(partUpload));
+            }
+            checkNotUploaded(route);
+            completeMultipartUpload(route, uploadId, completedParts);
+        } catch (IOException | InterruptedException | RuntimeException ex) {
+            // abort не должен обгонять отправляемые части, иначе они останутся в s3 после отмены загрузки
+            awaitQuietly(partUploads);
+            abortMultipartUpload(route, uploadId);
+            throw ex;
+        }
+    }
+
+    private String createMultipartUpload(S3ShardResolver.S3Route route, String contentType, String contentDisposition) {
+        try {
+            var createResponse = route.s3Client().createMultipartUpload(CreateMultipartUploadRequest.builder()
+                    .bucket(route.bucketName())
+                    .key(route.key())
+                    .contentType(contentType)
+                    .contentDisposition(contentDisposition)
+                    .build());
+            log.info("Multipart upload was created through proxy, fileId={}, bucketName={}, uploadId={}",
+                    route.fileId(), route.bucketName(), createResponse.uploadId());
+            return createResponse.uploadId();
+        } catch (SdkException ex) {
+            throw new StorageException(
+                    String.format("Failed to create multipart upload, fileId=%s, bucketName=%s",
+                            route.fileId(), route.bucketName()),
+                    ex);
+        }
+    }
+
+    private CompletableFuture<CompletedPart> uploadPartAsync(S3ShardResolver.S3Route route,
+                                                            String uploadId,
+                                                            int partNumber,
+                                                            PartBuffers part,
+                                                            Semaphore partPermits,
+                                                            BlockingQueue<PartBuffers> freeParts,
+                                                            AtomicReference<Throwable> failure) {
+        return CompletableFuture
+                .supplyAsync(() -> uploadPart(route, uploadId, partNumber, part), s3PartUploadExecutor)
+                .whenComplete((completedPart, ex) -> {
+                    freeParts.offer(part);
+                    partPermits.release();
+                    if (ex != null) {
+                        failure.compareAndSet(null, ex);
+                    }
+                });
+    }
+
+    private CompletedPart uploadPart(S3ShardResolver.S3Route route, String uploadId, int partNumber, PartBuffers part) {
+        var properties = proxyProperties.getUpload();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                var uploadPartResponse = route.s3Client().uploadPart(
+                        UploadPartRequest.builder()
+                                .bucket(route.bucketName())
+                                .key(route.key())
+                                .uploadId(uploadId)
+                                .partNumber(partNumber)
+                                .contentLength((long) part.length())
+                                .build(),
+                        part.requestBody());
+                log.debug("File part was uploaded through proxy, fileId={}, uploadId={}, partNumber={}, size={}",
+                        route.fileId(), uploadId, partNumber, part.length());
+                return CompletedPart.builder()
+                        .partNumber(partNumber)
+                        .eTag(uploadPartResponse.eTag())
+                        .build();
+            } catch (SdkException ex) {
+                if (attempt > properties.getPartRetries() || !isRetryable(ex)) {
+                    throw new StorageException(
+                            String.format("Failed to upload file part, fileId=%s, bucketName=%s, uploadId=%s, " +
+                                            "partNumber=%d, attempts=%d",
+                                    route.fileId(), route.bucketName(), uploadId, partNumber, attempt),
+                            ex);
+                }
+                log.warn("Failed to upload file part, retrying, fileId={}, uploadId={}, partNumber={}, attempt={}",
+                        route.fileId(), uploadId, partNumber, attempt, ex);
+                partRetries.increment();
+                pause(properties.getPartRetryBackoff().multipliedBy(attempt).toMillis());
+            }
+        }
+    }
+
+    private static boolean isRetryable(SdkException ex) {
+        if (ex instanceof SdkServiceException serviceException) {
+            return serviceException.isThrottlingException()
+                    || serviceException.statusCode() >= HttpStatusCode.INTERNAL_SERVER_ERROR;
+        }
+        // обрыв соединения или таймаут, которые SDK уже не стал повторять
+        return ex instanceof SdkClientException;
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("Interrupted while waiting to retry file part upload", ex);
+        }
+    }
+
+    private static void awaitQuietly(List<CompletableFuture<CompletedPart>> partUploads) {
+        for (var partUpload : partUploads) {
+            try {
+                partUpload.join();
+            } catch (RuntimeException ignored) {
+                // ошибка части уже учтена
+            }
+        }
+    }
+
+    private void completeMultipartUpload(S3ShardResolver.S3Route route,
+                                         String uploadId,
+                                         List<CompletedPart> completedParts) {
+        try {
+            var completeResponse = route.s3Client().completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(route.bucketName())
+                    .key(route.key())
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder()
+                            .parts(completedParts)
+                            .build())
+                    .build());
+            log.info("Multipart upload was completed through proxy, fileId={}, bucketName={}, uploadId={}, " +
+                            "versionId={}, parts={}",
+                    route.fileId(), route.bucketName(), uploadId, completeResponse.versionId(),
+                    completedParts.size());
+        } catch (SdkException ex) {
+            throw new StorageException(
+                    String.format("Failed to complete multipart upload, fileId=%s, bucketName=%s, uploadId=%s",
+                            route.fileId(), route.bucketName(), uploadId),
+                    ex);
+        }
+    }
+
+    private void abortMultipartUpload(S3ShardResolver.S3Route route, String uploadId) {
+        try {
+            route.s3Client().abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(route.bucketName())
+                    .key(route.key())
+                    .uploadId(uploadId)
+                    .build());
+            log.info("Multipart upload was aborted, fileId={}, bucketName={}, uploadId={}",
+                    route.fileId(), route.bucketName(), uploadId);
+        } catch (SdkException ex) {
+            log.warn("Failed to abort multipart upload, fileId={}, bucketName={}, uploadId={}",
+                    route.fileId(), route.bucketName(), uploadId, ex);
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+package dev.vality.file.storage.service.proxy;
+
+import software.amazon.awssdk.core.sync.RequestBody;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Часть загрузки, прочитанная в один или несколько буферов {@link BufferPool}. Размер части подбирается
+ * под размер файла, а буферы пула остаются одного размера, поэтому большая часть просто занимает больше буферов.
+ * Буферы возвращаются в пул один раз, даже если {@link #release()} вызван и после отправки части,
+ * и при обработке ошибки.
+ */
+class PartBuffers {
+
+    private static final String CONTENT_TYPE = "application/octet-stream";
+
+    private final BufferPool bufferPool;
+    private final byte[][] buffers;
+    private final AtomicBoolean released = new AtomicBoolean();
+    private int length;
+
+    PartBuffers(BufferPool bufferPool, byte[][] buffers) {
+        this.bufferPool = bufferPool;
+        this.buffers = buffers;
+    }
+
+    /**
+     * Читает из потока, пока часть не заполнится или поток не закончится.
+     *
+     * @return количество прочитанных байт
+     */
+    int read(InputStream inputStream) throws IOException {
+        length = 0;
+        for (byte[] buffer : buffers) {
+            var read = inputStream.readNBytes(buffer, 0, buffer.length);
+            length += read;
+            if (read < buffer.length) {
+                break;
+            }
+        }
+        return length;
+    }
+
+    int length() {
+        return length;
+    }
+
+    int bufferCount() {
+        return buffers.length;
+    }
+
+    boolean isFull() {
+        return length == buffers.length * bufferPool.getBufferSize();
+    }
+
+    /**
+     * Тело запроса без копии буферов. Поток создается на каждую попытку, поэтому SDK может повторить запрос.
+     */
+    RequestBody requestBody() {
+        return RequestBody.fromContentProvider(this::newInputStream, length, CONTENT_TYPE);
+    }
+
+    void release() {
+        if (released.compareAndSet(false, true)) {
+            bufferPool.release(buffers);
+        }
+    }
+
+    private InputStream newInputStream() {
+        var streams = new ArrayList<InputStream>(buffers.length);
+        var remaining = length;
+        for (int i = 0; i < buffers.length && remaining > 0; i++) {
+            var bufferLength = Math.min(remaining, buffers[i].length);
+            streams.add(new ByteArrayInputStream(buffers[i], 0, bufferLength));
+            remaining -= bufferLength;
+        }
+        return streams.size() == 1 ? streams.get(0) : new SequenceInputStream(Collections.enumeration(streams));
+    }
+}
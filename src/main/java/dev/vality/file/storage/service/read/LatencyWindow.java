@@ -0,0 +1,41 @@
+package dev.vality.file.storage.service.read;
+
+import java.util.Arrays;
+
+/**
+ * Последние {@code capacity} задержек операции для расчета перцентиля. Перцентиль считается сортировкой копии
+ * окна, поэтому вызывается не на каждый запрос, а при обновлении задержки повторного запроса.
+ */
+class LatencyWindow {
+
+    private final long[] samples;
+    private int next;
+    private int size;
+
+    LatencyWindow(int capacity) {
+        this.samples = new long[Math.max(1, capacity)];
+    }
+
+    synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        size = Math.min(size + 1, samples.length);
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    long percentile(double percentile) {
+        long[] sorted;
+        synchronized (this) {
+            if (size == 0) {
+                return 0;
+            }
+            sorted = Arrays.copyOf(samples, size);
+        }
+        Arrays.sort(sorted);
+        var index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.min(Math.max(index, 0), sorted.length - 1)];
+    }
+}
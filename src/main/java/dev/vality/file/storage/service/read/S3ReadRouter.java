@@ -0,0 +1,349 @@
+package dev.vality.file.storage.service.read;
+
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import dev.vality.file.storage.util.FutureUtil;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import software.amazon.awssdk.core.exception.SdkServiceException;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Выполняет читающие запросы в s3 на одном из равноправных endpoint кластера ({@code s3-sdk-v2.endpoint} и
+ * {@code reads.endpoints}). Endpoint выбирается из двух случайных по меньшей стоимости — EWMA задержки
+ * с затуханием во времени, умноженной на количество выполняющихся запросов, поэтому медленный узел быстро
+ * теряет трафик, а простаивающий снова получает пробные запросы. Если ответ не пришел за перцентиль
+ * {@code hedging.percentile} последних задержек операции, тот же запрос отправляется на другой endpoint.
+ * Основной запрос занимает поток вызова до ответа s3 и не прерывается, поэтому ответ повторного запроса
+ * используется, только если основной завершился ошибкой соединения или {@code 5xx}.
+ * Повторные запросы ограничены долей {@code hedging.budget} от всех запросов, чтобы при деградации всего
+ * кластера не удваивать нагрузку.
+ */
+public class S3ReadRouter implements AutoCloseable {
+
+    public static final String LIST_OBJECT_VERSIONS = "listObjectVersions";
+    public static final String HEAD_OBJECT = "headObject";
+    public static final String GET_OBJECT = "getObject";
+
+    private static final long DELAY_REFRESH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final double MAX_HEDGE_TOKENS = 100;
+    private static final int HEDGE_PENDING = 0;
+    private static final int HEDGE_SENT = 1;
+    private static final int PRIMARY_DONE = 2;
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final S3SdkV2Properties.Reads properties;
+    private final String shardId;
+    private final List<Endpoint> endpoints;
+    private final ExecutorService s3ReadExecutor;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+    private final HedgeBudget hedgeBudget;
+
+    /**
+     * @param clients первый клиент — {@code s3-sdk-v2.endpoint}, его жизненным циклом управляет контекст,
+     *                остальные закрываются вместе с роутером
+     */
+    public S3ReadRouter(S3SdkV2Properties s3SdkV2Properties,
+                        List<ReadClient> clients,
+                        ExecutorService s3ReadExecutor,
+                        MeterRegistry meterRegistry) {
+        this.properties = s3SdkV2Properties.getReads();
+        this.shardId = s3SdkV2Properties.getSharding().getShardId();
+        this.endpoints = clients.stream()
+                .map(client -> new Endpoint(client, properties.getEwmaDecay().toNanos()))
+                .toList();
+        this.s3ReadExecutor = s3ReadExecutor;
+        this.meterRegistry = meterRegistry;
+        this.hedgeBudget = new HedgeBudget(properties.getHedging().getBudget());
+        for (Endpoint endpoint : endpoints) {
+            Gauge.builder("file.storage.s3.read.endpoint.latency", endpoint,
+                            value -> value.cost(System.nanoTime()) / NANOS_PER_SECOND)
+                    .description("Decaying EWMA latency of read requests to the S3 endpoint")
+                    .baseUnit("seconds")
+                    .tag("endpoint", endpoint.client.endpoint())
+                    .tag("shard", shardId)
+                    .register(meterRegistry);
+            Gauge.builder("file.storage.s3.read.endpoint.in.flight", endpoint.inFlight, AtomicInteger::get)
+                    .tag("endpoint", endpoint.client.endpoint())
+                    .tag("shard", shardId)
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Запрос через {@link S3Client} с повторным запросом на другой endpoint. Основной запрос выполняется
+     * в потоке вызова, как в {@link #route}, и не может быть прерван, поэтому в {@code s3ReadExecutor} уходит
+     * только повторный запрос, а его ответ используется, если основной завершился ошибкой соединения или
+     * {@code 5xx}. Исключение запроса пробрасывается как есть.
+     */
+    public <T> T read(String operation, Function<S3Client, T> call) {
+        if (!isHedging()) {
+            return route(operation, call);
+        }
+        var op = operation(operation);
+        var primary = select(null);
+        hedgeBudget.deposit();
+        var state = new AtomicInteger(HEDGE_PENDING);
+        var hedge = new CompletableFuture<T>();
+        CompletableFuture.delayedExecutor(op.hedgeDelay(), TimeUnit.NANOSECONDS, s3ReadExecutor).execute(() -> {
+            if (!state.compareAndSet(HEDGE_PENDING, HEDGE_SENT)) {
+                return;
+            }
+            if (!hedgeBudget.withdraw()) {
+                op.hedgesRejected.increment();
+                hedge.cancel(false);
+                return;
+            }
+            op.hedgesSent.increment();
+            try {
+                hedge.complete(attempt(op, select(primary), call));
+            } catch (RuntimeException ex) {
+                hedge.completeExceptionally(ex);
+            }
+        });
+        try {
+            var result = attempt(op, primary, call);
+            state.set(PRIMARY_DONE);
+            return result;
+        } catch (RuntimeException ex) {
+            // ответ s3 с ошибкой (например 404) окончательный, как и ошибка до отправки повторного запроса
+            if (isResponse(ex) || state.compareAndSet(HEDGE_PENDING, PRIMARY_DONE)) {
+                throw ex;
+            }
+            return awaitHedge(op, hedge, ex);
+        }
+    }
+
+    /**
+     * Запрос через {@link S3Client} на выбранный endpoint без повторного запроса, например для
+     * {@code GetObject}, ответ которого читается потоком.
+     */
+    public <T> T route(String operation, Function<S3Client, T> call) {
+        return attempt(operation(operation), select(null), call);
+    }
+
+    @Override
+    public void close() {
+        for (Endpoint endpoint : endpoints.subList(1, endpoints.size())) {
+            endpoint.client.client().close();
+        }
+    }
+
+    private boolean isHedging() {
+        return properties.getHedging().isEnabled() && endpoints.size() > 1;
+    }
+
+    private static <T> T awaitHedge(Operation op, CompletableFuture<T> hedge, RuntimeException primaryException) {
+        try {
+            var result = FutureUtil.join(hedge);
+            op.hedgesWon.increment();
+            return result;
+        } catch (CancellationException ex) {
+            // повторный запрос не отправлен из-за бюджета
+            throw primaryException;
+        } catch (RuntimeException ex) {
+            ex.addSuppressed(primaryException);
+            throw ex;
+        }
+    }
+
+    private <T> T attempt(Operation op, Endpoint endpoint, Function<S3Client, T> call) {
+        var startedAt = endpoint.start();
+        try {
+            var result = call.apply(endpoint.client.client());
+            complete(op, endpoint, startedAt, null);
+            return result;
+        } catch (RuntimeException ex) {
+            complete(op, endpoint, startedAt, ex);
+            throw ex;
+        }
+    }
+
+    private void complete(Operation op, Endpoint endpoint, long startedAt, RuntimeException ex) {
+        var finishedAt = System.nanoTime();
+        var latency = finishedAt - startedAt;
+        if (ex == null || isResponse(ex)) {
+            // 404 и другие ответы 4xx — нормальная работа узла
+            op.latencies.record(latency);
+            endpoint.finish(finishedAt, latency);
+        } else {
+            endpoint.finish(finishedAt, Math.max(latency, properties.getErrorPenalty().toNanos()));
+        }
+    }
+
+    private static boolean isResponse(Throwable ex) {
+        var cause = ex;
+        while (cause != null && !(cause instanceof SdkServiceException)) {
+            cause = cause.getCause();
+        }
+        return cause instanceof SdkServiceException serviceException && serviceException.statusCode() < 500;
+    }
+
+    private Endpoint select(Endpoint excluded) {
+        if (endpoints.size() == 1) {
+            return endpoints.get(0);
+        }
+        var random = ThreadLocalRandom.current();
+        var now = System.nanoTime();
+        var penalty = properties.getErrorPenalty().toNanos();
+        if (excluded == null) {
+            // два разных случайных кандидата
+            var first = random.nextInt(endpoints.size());
+            var second = (first + 1 + random.nextInt(endpoints.size() - 1)) % endpoints.size();
+            var firstEndpoint = endpoints.get(first);
+            var secondEndpoint = endpoints.get(second);
+            return secondEndpoint.score(now, penalty) < firstEndpoint.score(now, penalty)
+                    ? secondEndpoint
+                    : firstEndpoint;
+        }
+        // при исключенном endpoint — лучший из остальных
+        Endpoint best = null;
+        for (Endpoint endpoint : endpoints) {
+            if (endpoint == excluded) {
+                continue;
+            }
+            if (best == null || endpoint.score(now, penalty) < best.score(now, penalty)) {
+                best = endpoint;
+            }
+        }
+        return best;
+    }
+
+    private Operation operation(String name) {
+        return operations.computeIfAbsent(name, Operation::new);
+    }
+
+    public record ReadClient(String endpoint, S3Client client) {
+    }
+
+    private static class Endpoint {
+
+        private final ReadClient client;
+        private final double decayNanos;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private long stamp = System.nanoTime();
+        private double ewma;
+
+        Endpoint(ReadClient client, long decayNanos) {
+            this.client = client;
+            this.decayNanos = decayNanos;
+        }
+
+        long start() {
+            inFlight.incrementAndGet();
+            return System.nanoTime();
+        }
+
+        synchronized void finish(long now, long latency) {
+            inFlight.decrementAndGet();
+            var decayed = cost(now);
+            // рост задержки учитывается сразу, снижение — постепенно
+            ewma = latency > decayed ? latency : decayed + (latency - decayed) * (1 - weight(now));
+            stamp = now;
+        }
+
+        synchronized double cost(long now) {
+            // без новых замеров стоимость затухает, и endpoint снова получает запросы
+            return ewma * weight(now);
+        }
+
+        double score(long now, long penalty) {
+            var cost = cost(now);
+            var pending = inFlight.get();
+            if (cost == 0 && pending > 0) {
+                // первый запрос к endpoint еще выполняется, его задержка неизвестна
+                return (double) penalty * pending;
+            }
+            return cost * (pending + 1);
+        }
+
+        private double weight(long now) {
+            return Math.exp(-Math.max(0, now - stamp) / decayNanos);
+        }
+    }
+
+    private class Operation {
+
+        private final LatencyWindow latencies;
+        private final Counter hedgesSent;
+        private final Counter hedgesWon;
+        private final Counter hedgesRejected;
+        private final AtomicLong refreshAt = new AtomicLong(System.nanoTime());
+        private volatile long hedgeDelayNanos;
+
+        Operation(String name) {
+            var hedging = properties.getHedging();
+            this.latencies = new LatencyWindow(hedging.getWindow());
+            this.hedgeDelayNanos = hedging.getMaxDelay().toNanos();
+            this.hedgesSent = hedgeCounter(name, "sent");
+            this.hedgesWon = hedgeCounter(name, "won");
+            this.hedgesRejected = hedgeCounter(name, "rejected");
+            Gauge.builder("file.storage.s3.read.hedge.delay", this, value -> value.hedgeDelayNanos / NANOS_PER_SECOND)
+                    .baseUnit("seconds")
+                    .tag("operation", name)
+                    .tag("shard", shardId)
+                    .register(meterRegistry);
+        }
+
+        long hedgeDelay() {
+            var now = System.nanoTime();
+            var refresh = refreshAt.get();
+            if (now - refresh >= 0 && refreshAt.compareAndSet(refresh, now + DELAY_REFRESH_INTERVAL_NANOS)) {
+                var hedging = properties.getHedging();
+                var delay = latencies.size() < hedging.getWindow() / 10
+                        ? hedging.getMaxDelay().toNanos()
+                        : latencies.percentile(hedging.getPercentile());
+                hedgeDelayNanos = Math.min(
+                        Math.max(delay, hedging.getMinDelay().toNanos()),
+                        hedging.getMaxDelay().toNanos());
+            }
+            return hedgeDelayNanos;
+        }
+
+        private Counter hedgeCounter(String name, String result) {
+            return Counter.builder("file.storage.s3.read.hedges")
+                    .tag("operation", name)
+                    .tag("result", result)
+                    .tag("shard", shardId)
+                    .register(meterRegistry);
+        }
+    }
+
+    /**
+     * Каждый запрос добавляет {@code budget} разрешений, повторный запрос тратит одно.
+     */
+    private static class HedgeBudget {
+
+        private final double budget;
+        private double tokens;
+
+        HedgeBudget(double budget) {
+            this.budget = budget;
+        }
+
+        synchronized void deposit() {
+            tokens = Math.min(MAX_HEDGE_TOKENS, tokens + budget);
+        }
+
+        synchronized boolean withdraw() {
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+    }
+}
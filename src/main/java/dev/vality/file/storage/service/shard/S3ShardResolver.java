@@ -0,0 +1,79 @@
+package dev.vality.file.storage.service.shard;
+
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import dev.vality.file.storage.service.FileMetadataResolver;
+import dev.vality.file.storage.service.exception.FileNotFoundException;
+import dev.vality.file.storage.service.read.S3ReadRouter;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import java.util.Map;
+
+/**
+ * Клиенты s3 шарда файла для запросов в обход {@link dev.vality.file.storage.service.StorageService}, например
+ * из прокси загрузки и скачивания. fileId разбирается так же, как в {@link ShardedStorageService}: запрос
+ * выполняется ключом без префикса в бакете шарда, а fileId неизвестного шарда не найден. Без шардирования
+ * fileId используется как ключ в {@code s3-sdk-v2.bucket-name}.
+ */
+public class S3ShardResolver {
+
+    private final String defaultShardId;
+    private final Map<String, S3Shard> shards;
+    private final boolean sharded;
+
+    public S3ShardResolver(String defaultShardId, Map<String, S3Shard> shards) {
+        this(defaultShardId, shards, true);
+    }
+
+    private S3ShardResolver(String defaultShardId, Map<String, S3Shard> shards, boolean sharded) {
+        this.defaultShardId = defaultShardId;
+        this.shards = Map.copyOf(shards);
+        this.sharded = sharded;
+    }
+
+    public static S3ShardResolver single(S3Shard shard) {
+        return new S3ShardResolver(shard.shardId(), Map.of(shard.shardId(), shard), false);
+    }
+
+    public S3Route resolve(String fileId) {
+        if (!sharded) {
+            return new S3Route(fileId, shards.get(defaultShardId), fileId);
+        }
+        var shardKey = ShardKey.parse(fileId, defaultShardId);
+        var shard = shards.get(shardKey.shardId());
+        if (shard == null) {
+            throw new FileNotFoundException(String.format(
+                    "Shard not found, fileId=%s, shardId=%s", fileId, shardKey.shardId()));
+        }
+        return new S3Route(fileId, shard, shardKey.key());
+    }
+
+    public record S3Shard(String shardId,
+                          S3SdkV2Properties properties,
+                          S3Client s3Client,
+                          S3ReadRouter s3ReadRouter,
+                          FileMetadataResolver fileMetadataResolver) {
+    }
+
+    /**
+     * @param fileId fileId из запроса, для логов и ошибок
+     * @param key    ключ файла в бакете шарда
+     */
+    public record S3Route(String fileId, S3Shard shard, String key) {
+
+        public String bucketName() {
+            return shard.properties().getBucketName();
+        }
+
+        public S3Client s3Client() {
+            return shard.s3Client();
+        }
+
+        public S3ReadRouter s3ReadRouter() {
+            return shard.s3ReadRouter();
+        }
+
+        public FileMetadataResolver fileMetadataResolver() {
+            return shard.fileMetadataResolver();
+        }
+    }
+}
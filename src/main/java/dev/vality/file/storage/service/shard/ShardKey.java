@@ -0,0 +1,17 @@
+package dev.vality.file.storage.service.shard;
+
+/**
+ * fileId, разобранный на шард и ключ файла в s3. fileId без префикса относится к шарду по умолчанию.
+ *
+ * @param prefixed в fileId был префикс шарда
+ */
+record ShardKey(String shardId, boolean prefixed, String key) {
+
+    static ShardKey parse(String fileId, String defaultShardId) {
+        var separator = fileId != null ? fileId.indexOf(ShardedStorageService.SEPARATOR) : -1;
+        if (separator < 0) {
+            return new ShardKey(defaultShardId, false, fileId);
+        }
+        return new ShardKey(fileId.substring(0, separator), true, fileId.substring(separator + 1));
+    }
+}
@@ -0,0 +1,46 @@
+package dev.vality.file.storage.service.shard;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Кольцо консистентного хеширования шардов: каждый шард занимает {@code weight * virtualNodes} точек, ключ
+ * относится к ближайшей по часовой стрелке точке. Новый шард забирает у остальных примерно свою долю ключей,
+ * а соотношение между остальными не меняется. Шарды с весом 0 на кольцо не попадают.
+ */
+public class ShardRing {
+
+    private static final String MD5 = "MD5";
+
+    private final NavigableMap<Long, String> ring = new TreeMap<>();
+
+    public ShardRing(Map<String, Integer> weights, int virtualNodes) {
+        weights.forEach((shardId, weight) -> {
+            for (int i = 0; i < weight * virtualNodes; i++) {
+                ring.putIfAbsent(hash(shardId + "#" + i), shardId);
+            }
+        });
+        if (ring.isEmpty()) {
+            throw new IllegalArgumentException("Bad sharding configuration, no shard accepts new files");
+        }
+    }
+
+    public String locate(String key) {
+        var entry = ring.ceilingEntry(hash(key));
+        return entry != null ? entry.getValue() : ring.firstEntry().getValue();
+    }
+
+    static long hash(String value) {
+        try {
+            var digest = MessageDigest.getInstance(MD5).digest(value.getBytes(StandardCharsets.UTF_8));
+            return ByteBuffer.wrap(digest).getLong();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package dev.vality.file.storage.service.shard;
+
+import dev.vality.file.storage.*;
+import dev.vality.file.storage.CompleteMultipartUploadRequest;
+import dev.vality.file.storage.service.StorageService;
+import dev.vality.file.storage.service.exception.FileNotFoundException;
+import dev.vality.msgpack.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URL;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Распределяет файлы по нескольким бакетам (шардам). Шард нового файла выбирается по {@link ShardRing} от ключа,
+ * под которым файл создается в шарде, и записывается в fileId префиксом {@code <shardId>_}, поэтому чтение
+ * направляется в нужный шард без обращений к s3 и без отдельного хранилища соответствий, а добавление шарда
+ * или изменение весов влияет только на новые файлы. В s3 ключ файла остается прежним, без префикса. fileId
+ * без префикса созданы до включения шардирования и относятся к шарду {@code s3-sdk-v2.sharding.shard-id}.
+ */
+@Slf4j
+public class ShardedStorageService implements StorageService, AutoCloseable {
+
+    // квалификатор реализации для s3-sdk-v2.endpoint и bucket-name
+    public static final String DEFAULT_SHARD = "defaultShard";
+    public static final char SEPARATOR = '_';
+
+    private final String defaultShardId;
+    private final Map<String, StorageService> shards;
+    private final ShardRing shardRing;
+    private final List<AutoCloseable> resources;
+
+    public ShardedStorageService(String defaultShardId,
+                                 Map<String, StorageService> shards,
+                                 ShardRing shardRing,
+                                 List<AutoCloseable> resources) {
+        this.defaultShardId = defaultShardId;
+        this.shards = Map.copyOf(shards);
+        this.shardRing = shardRing;
+        this.resources = List.copyOf(resources);
+    }
+
+    @Override
+    public NewFileResult createNewFile(String key, Map<String, Value> metadata, Instant expirationTime) {
+        var shardId = shardRing.locate(key);
+        var result = shards.get(shardId).createNewFile(key, metadata, expirationTime);
+        return result.setFileDataId(toFileId(shardId, result.getFileDataId()));
+    }
+
+    @Override
+    public URL generateDownloadUrl(String fileDataId, Instant expirationTime) {
+        var route = route(fileDataId);
+        return route.storageService().generateDownloadUrl(route.key(), expirationTime);
+    }
+
+    @Override
+    public FileData getFileData(String fileDataId) {
+        var route = route(fileDataId);
+        return withFileId(route.storageService().getFileData(route.key()), fileDataId);
+    }
+
+    @Override
+    public FileData getMultipartFileData(String fileId) {
+        var route = route(fileId);
+        return withFileId(route.storageService().getMultipartFileData(route.key()), fileId);
+    }
+
+    @Override
+    public CreateMultipartUploadResult createMultipartUpload(String key, Map<String, Value> metadata) {
+        var shardId = shardRing.locate(key);
+        var result = shards.get(shardId).createMultipartUpload(key, metadata);
+        return result.setFileDataId(toFileId(shardId, result.getFileDataId()));
+    }
+
+    @Override
+    public UploadMultipartResult uploadMultipart(UploadMultipartRequestData requestData) {
+        var fileId = requestData.getFileDataId();
+        var route = route(fileId);
+        // запрос не копируется, чтобы не держать вторую ссылку на буфер части
+        requestData.setFileDataId(route.key());
+        try {
+            return route.storageService().uploadMultipart(requestData);
+        } finally {
+            requestData.setFileDataId(fileId);
+        }
+    }
+
+    @Override
+    public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+        var route = route(request.getFileDataId());
+        return route.storageService().completeMultipartUpload(request.deepCopy().setFileDataId(route.key()));
+    }
+
+    @Override
+    public URL generateMultipartDownloadUrl(String fileDataId, Instant expirationTime) {
+        var route = route(fileDataId);
+        return route.storageService().generateMultipartDownloadUrl(route.key(), expirationTime);
+    }
+
+    @Override
+    public void close() {
+        for (AutoCloseable resource : resources) {
+            try {
+                resource.close();
+            } catch (Exception ex) {
+                log.warn("Failed to close shard resource {}", resource, ex);
+            }
+        }
+    }
+
+    private static String toFileId(String shardId, String key) {
+        return shardId + SEPARATOR + key;
+    }
+
+    private Route route(String fileId) {
+        var shardKey = ShardKey.parse(fileId, defaultShardId);
+        var storageService = shards.get(shardKey.shardId());
+        if (storageService == null) {
+            throw new FileNotFoundException(String.format(
+                    "Shard not found, fileId=%s, shardId=%s", fileId, shardKey.shardId()));
+        }
+        return new Route(storageService, shardKey.key());
+    }
+
+    private FileData withFileId(FileData fileData, String fileId) {
+        return fileData.deepCopy().setFileDataId(fileId);
+    }
+
+    private record Route(StorageService storageService, String key) {
+    }
+}
@@ -0,0 +1,87 @@
+package dev.vality.file.storage.servlet;
+
+import dev.vality.file.storage.configuration.properties.ProxyProperties;
+import dev.vality.file.storage.service.exception.FileNotFoundException;
+import dev.vality.file.storage.service.exception.ServiceOverloadedException;
+import dev.vality.file.storage.service.proxy.FileDownloadProxy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Instant;
+
+/**
+ * Скачивание файла через сервис: {@code GET /file_storage/v2/download/{fileDataId}}. Поддерживает
+ * {@code Range}, {@code If-None-Match} и {@code If-Modified-Since}.
+ */
+@Slf4j
+@WebServlet("/file_storage/v2/download/*")
+@RequiredArgsConstructor
+public class FileDownloadServlet extends HttpServlet {
+
+    private final ProxyProperties proxyProperties;
+    private final FileDownloadProxy fileDownloadProxy;
+
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (!proxyProperties.getDownload().isEnabled()) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        var fileId = ProxyPaths.extractFileId(req);
+        var ifModifiedSince = req.getDateHeader("If-Modified-Since");
+        try {
+            fileDownloadProxy.download(
+                    fileId,
+                    req.getHeader("Range"),
+                    req.getHeader("If-None-Match"),
+                    ifModifiedSince != -1 ? Instant.ofEpochMilli(ifModifiedSince) : null,
+                    (status, response) -> {
+                        resp.setStatus(status);
+                        resp.setHeader("Accept-Ranges", "bytes");
+                        if (response != null) {
+                            writeHeaders(resp, response);
+                        }
+                        return resp.getOutputStream();
+                    });
+        } catch (IllegalArgumentException ex) {
+            log.warn("Bad download request, fileId={}", fileId, ex);
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, ex.getMessage());
+        } catch (FileNotFoundException ex) {
+            log.warn("File for download not found, fileId={}", fileId, ex);
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+        } catch (ServiceOverloadedException ex) {
+            log.warn("Download was rejected, fileId={}", fileId, ex);
+            resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        }
+    }
+
+    private static void writeHeaders(HttpServletResponse resp, GetObjectResponse response) {
+        if (response.contentLength() != null) {
+            resp.setContentLengthLong(response.contentLength());
+        }
+        if (response.contentType() != null) {
+            resp.setContentType(response.contentType());
+        }
+        if (response.contentRange() != null) {
+            resp.setHeader("Content-Range", response.contentRange());
+        }
+        if (response.contentDisposition() != null) {
+            resp.setHeader("Content-Disposition", response.contentDisposition());
+        }
+        if (response.eTag() != null) {
+            resp.setHeader("ETag", response.eTag());
+        }
+        if (response.lastModified() != null) {
+            resp.setDateHeader("Last-Modified", response.lastModified().toEpochMilli());
+        }
+    }
+}
@@ -3,16 +3,21 @@ package dev.vality.file.storage.servlet;
 import dev.vality.file.storage.FileStorageSrv;
 import dev.vality.woody.thrift.impl.http.THServiceBuilder;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
 import jakarta.servlet.*;
 import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServletResponse;
 import java.io.IOException;
 
+@Slf4j
 @WebServlet("/file_storage/v2")
 @RequiredArgsConstructor
 public class FileStorageServlet extends GenericServlet {
 
     private final FileStorageSrv.Iface fileStorageHandler;
+    private final RequestConcurrencyLimiter requestConcurrencyLimiter;
+    private final RequestBytesBudget requestBytesBudget;
 
     private Servlet thriftServlet;
 
@@ -25,6 +30,45 @@ public class FileStorageServlet extends GenericServlet {
 
     @Override
     public void service(ServletRequest req, ServletResponse res) throws ServletException, IOException {
-        thriftServlet.service(req, res);
+        try {
+            if (!requestConcurrencyLimiter.tryAcquire()) {
+                log.warn("Request was rejected, concurrency limit is exceeded");
+                ((HttpServletResponse) res).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ((HttpServletResponse) res).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        try {
+            serviceWithinBytesBudget(req, res);
+        } finally {
+            requestConcurrencyLimiter.release();
+        }
+    }
+
+    private void serviceWithinBytesBudget(ServletRequest req, ServletResponse res)
+            throws ServletException, IOException {
+        int reservedUnits;
+        try {
+            // объем резервируется до того, как thrift прочитает тело запроса в память
+            reservedUnits = requestBytesBudget.tryAcquire(req.getContentLengthLong());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ((HttpServletResponse) res).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        if (reservedUnits < 0) {
+            log.warn("Request was rejected, in-flight bytes budget is exhausted, contentLength={}",
+                    req.getContentLengthLong());
+            ((HttpServletResponse) res).sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        try {
+            thriftServlet.service(req, res);
+        } finally {
+            requestBytesBudget.release(reservedUnits);
+        }
     }
 }
@@ -0,0 +1,61 @@
+package dev.vality.file.storage.servlet;
+
+import dev.vality.file.storage.configuration.properties.ProxyProperties;
+import dev.vality.file.storage.service.exception.FileAlreadyUploadedException;
+import dev.vality.file.storage.service.exception.FileNotFoundException;
+import dev.vality.file.storage.service.exception.ServiceOverloadedException;
+import dev.vality.file.storage.service.exception.UploadExpiredException;
+import dev.vality.file.storage.service.proxy.FileUploadProxy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Загрузка файла через сервис для клиентов, которым недоступен s3 по подписанной ссылке из
+ * {@code createNewFile}: {@code PUT /file_storage/v2/upload/{fileDataId}} с телом файла.
+ */
+@Slf4j
+@WebServlet("/file_storage/v2/upload/*")
+@RequiredArgsConstructor
+public class FileUploadServlet extends HttpServlet {
+
+    private final ProxyProperties proxyProperties;
+    private final FileUploadProxy fileUploadProxy;
+
+    @Override
+    protected void doPut(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        if (!proxyProperties.getUpload().isEnabled()) {
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        var fileId = ProxyPaths.extractFileId(req);
+        try {
+            fileUploadProxy.upload(fileId, req.getContentType(), req.getHeader("Content-Disposition"),
+                    req.getContentLengthLong(), req.getInputStream());
+            resp.setStatus(HttpServletResponse.SC_OK);
+        } catch (IllegalArgumentException ex) {
+            log.warn("Bad upload request, fileId={}", fileId, ex);
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST, ex.getMessage());
+        } catch (FileNotFoundException ex) {
+            log.warn("File for upload not found, fileId={}", fileId, ex);
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+        } catch (FileAlreadyUploadedException ex) {
+            log.warn("File already uploaded, fileId={}", fileId, ex);
+            resp.sendError(HttpServletResponse.SC_CONFLICT);
+        } catch (UploadExpiredException ex) {
+            log.warn("Upload time has expired, fileId={}", fileId, ex);
+            resp.sendError(HttpServletResponse.SC_FORBIDDEN);
+        } catch (ServiceOverloadedException ex) {
+            log.warn("Upload was rejected, fileId={}", fileId, ex);
+            resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        }
+    }
+}
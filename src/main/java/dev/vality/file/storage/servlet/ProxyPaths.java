@@ -0,0 +1,11 @@
+package dev.vality.file.storage.servlet;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+class ProxyPaths {
+
+    static String extractFileId(HttpServletRequest req) {
+        var pathInfo = req.getPathInfo();
+        return pathInfo == null || pathInfo.length() <= 1 ? null : pathInfo.substring(1);
+    }
+}
@@ -0,0 +1,94 @@
+package dev.vality.file.storage.servlet;
+
+import dev.vality.file.storage.configuration.properties.ExecutionProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ограничивает суммарный размер тел одновременно обрабатываемых запросов. Часть multipart загрузки thrift
+ * целиком десериализует в heap до вызова обработчика и держит ее до ответа s3, поэтому объем резервируется
+ * по {@code Content-Length} до чтения тела: сколько бы клиентов ни загружали части одновременно, в памяти
+ * не больше {@code max-in-flight-bytes}. Объем учитывается в килобайтах, чтобы поместиться в {@link Semaphore}.
+ */
+@Slf4j
+@Component
+public class RequestBytesBudget {
+
+    private static final int UNIT = 1024;
+
+    private final boolean enabled;
+    private final int maxUnits;
+    private final long thresholdBytes;
+    private final long unknownContentLength;
+    private final long acquireTimeoutMillis;
+    private final Semaphore semaphore;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final Counter rejected;
+
+    public RequestBytesBudget(ExecutionProperties executionProperties, MeterRegistry meterRegistry) {
+        var maxInFlightBytes = executionProperties.getMaxInFlightBytes();
+        this.enabled = maxInFlightBytes > 0;
+        this.maxUnits = (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxInFlightBytes / UNIT));
+        this.thresholdBytes = executionProperties.getInFlightBytesThreshold();
+        this.unknownContentLength = executionProperties.getUnknownContentLength();
+        this.acquireTimeoutMillis = executionProperties.getInFlightBytesAcquireTimeout().toMillis();
+        // честная очередь, чтобы большие части не ждали бесконечно за потоком маленьких
+        this.semaphore = new Semaphore(enabled ? maxUnits : 0, true);
+        this.rejected = Counter.builder("file.storage.requests.bytes.rejected")
+                .description("Requests rejected because the in-flight bytes budget is exhausted")
+                .register(meterRegistry);
+        Gauge.builder("file.storage.requests.bytes.in.flight",
+                        semaphore, s -> enabled ? (double) (maxUnits - s.availablePermits()) * UNIT : 0)
+                .description("Bytes of request bodies currently admitted by the in-flight bytes budget")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("file.storage.requests.bytes.max", () -> enabled ? (double) maxUnits * UNIT : 0)
+                .description("In-flight bytes budget")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("file.storage.requests.bytes.waiting", waiting, AtomicInteger::get)
+                .description("Requests waiting for the in-flight bytes budget")
+                .register(meterRegistry);
+        log.info("Request bytes budget initialized, enabled={}, maxInFlightBytes={}", enabled, maxInFlightBytes);
+    }
+
+    /**
+     * @return сколько единиц зарезервировано и должно быть возвращено через {@link #release(int)},
+     *         или {@code -1}, если объем не освободился за {@code in-flight-bytes-acquire-timeout}
+     */
+    public int tryAcquire(long contentLength) throws InterruptedException {
+        var bytes = contentLength < 0 ? unknownContentLength : contentLength;
+        if (!enabled || bytes < thresholdBytes) {
+            return 0;
+        }
+        // запрос больше всего бюджета ждет, пока бюджет не освободится целиком
+        var units = (int) Math.min(maxUnits, (bytes + UNIT - 1) / UNIT);
+        // tryAcquire без таймаута обходит очередь честного семафора
+        if (semaphore.tryAcquire(units, 0, TimeUnit.MILLISECONDS)) {
+            return units;
+        }
+        waiting.incrementAndGet();
+        try {
+            if (acquireTimeoutMillis > 0 && semaphore.tryAcquire(units, acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                return units;
+            }
+            rejected.increment();
+            return -1;
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    public void release(int units) {
+        if (units > 0) {
+            semaphore.release(units);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package dev.vality.file.storage.servlet;
+
+import dev.vality.file.storage.configuration.properties.ExecutionProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ограничивает количество одновременно обрабатываемых запросов. В режиме виртуальных потоков пул tomcat
+ * больше не ограничивает параллелизм, поэтому без лимита все запросы сразу уходят в s3.
+ */
+@Slf4j
+@Component
+public class RequestConcurrencyLimiter {
+
+    private final boolean enabled;
+    private final long acquireTimeoutMillis;
+    private final Semaphore semaphore;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final Counter rejected;
+
+    public RequestConcurrencyLimiter(ExecutionProperties executionProperties, MeterRegistry meterRegistry) {
+        var maxConcurrentRequests = executionProperties.getMaxConcurrentRequests();
+        this.enabled = maxConcurrentRequests > 0;
+        this.acquireTimeoutMillis = executionProperties.getAcquireTimeout().toMillis();
+        this.semaphore = new Semaphore(enabled ? maxConcurrentRequests : 0);
+        this.rejected = Counter.builder("file.storage.requests.rejected")
+                .description("Requests rejected by the concurrency limiter")
+                .register(meterRegistry);
+        Gauge.builder("file.storage.requests.in.flight",
+                        semaphore, s -> enabled ? maxConcurrentRequests - s.availablePermits() : 0)
+                .description("Requests currently being processed under the concurrency limiter")
+                .register(meterRegistry);
+        Gauge.builder("file.storage.requests.waiting", waiting, AtomicInteger::get)
+                .description("Requests waiting for a concurrency limiter permit")
+                .register(meterRegistry);
+        log.info("Request concurrency limiter initialized, enabled={}, maxConcurrentRequests={}",
+                enabled, maxConcurrentRequests);
+    }
+
+    public boolean tryAcquire() throws InterruptedException {
+        if (!enabled) {
+            return true;
+        }
+        waiting.incrementAndGet();
+        try {
+            if (semaphore.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+            rejected.increment();
+            return false;
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    public void release() {
+        if (enabled) {
+            semaphore.release();
+        }
+    }
+}
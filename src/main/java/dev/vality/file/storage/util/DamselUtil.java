@@ -12,6 +12,9 @@ import java.io.IOException;
 
 public class DamselUtil {
 
+    // ObjectMapper потокобезопасен после настройки, создавать его на каждое значение дорого
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
     public static String toJsonString(TBase value) {
         return toJson(value).toString();
     }
@@ -26,7 +29,7 @@ public class DamselUtil {
 
     public static <T extends TBase> T fromJson(String jsonString, Class<T> type) {
         try {
-            return new JsonProcessor().process(new ObjectMapper().readTree(jsonString), new TBaseHandler<>(type));
+            return new JsonProcessor().process(OBJECT_MAPPER.readTree(jsonString), new TBaseHandler<>(type));
         } catch (IOException ex) {
             throw new IllegalArgumentException(ex);
         }
@@ -0,0 +1,25 @@
+package dev.vality.file.storage.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+public class FutureUtil {
+
+    public static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            throw unwrap(ex);
+        }
+    }
+
+    public static RuntimeException unwrap(Throwable ex) {
+        var cause = ex;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof RuntimeException runtimeException
+                ? runtimeException
+                : new CompletionException(cause);
+    }
+}
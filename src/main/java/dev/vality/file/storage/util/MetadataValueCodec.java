@@ -0,0 +1,74 @@
+package dev.vality.file.storage.util;
+
+import dev.vality.msgpack.Value;
+import org.apache.thrift.TDeserializer;
+import org.apache.thrift.TException;
+import org.apache.thrift.TSerializer;
+import org.apache.thrift.protocol.TCompactProtocol;
+
+import java.util.Base64;
+
+/**
+ * Кодирует значения метаданных для заголовков s3. Формат {@code COMPACT} — thrift compact protocol
+ * в base64url с префиксом {@link #COMPACT_PREFIX}, формат {@code JSON} — прежнее представление через
+ * {@link DamselUtil}. Декодирование определяет формат по префиксу, поэтому заголовки, записанные
+ * до перехода на {@code COMPACT}, читаются как раньше. Сериализаторы переиспользуются через {@link ObjectPool}.
+ */
+public class MetadataValueCodec {
+
+    // json может содержать ':', но не может начинаться с "tc1:", поэтому префикс однозначно отделяет форматы
+    public static final String COMPACT_PREFIX = "tc1:";
+
+    private static final int POOL_SIZE = 256;
+    private static final ObjectPool<TSerializer> SERIALIZERS =
+            new ObjectPool<>(POOL_SIZE, () -> new TSerializer(new TCompactProtocol.Factory()));
+    private static final ObjectPool<TDeserializer> DESERIALIZERS =
+            new ObjectPool<>(POOL_SIZE, () -> new TDeserializer(new TCompactProtocol.Factory()));
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    public static String encode(Value value, Encoding encoding) {
+        return encoding == Encoding.COMPACT ? encodeCompact(value) : DamselUtil.toJsonString(value);
+    }
+
+    public static Value decode(String encodedValue) {
+        if (encodedValue.startsWith(COMPACT_PREFIX)) {
+            return decodeCompact(encodedValue);
+        }
+        return DamselUtil.fromJson(encodedValue, Value.class);
+    }
+
+    private static String encodeCompact(Value value) {
+        var serializer = SERIALIZERS.borrow();
+        try {
+            return COMPACT_PREFIX + ENCODER.encodeToString(serializer.serialize(value));
+        } catch (TException ex) {
+            throw new IllegalArgumentException(ex);
+        } finally {
+            SERIALIZERS.release(serializer);
+        }
+    }
+
+    private static Value decodeCompact(String encodedValue) {
+        var bytes = DECODER.decode(encodedValue.substring(COMPACT_PREFIX.length()));
+        var deserializer = DESERIALIZERS.borrow();
+        try {
+            var value = new Value();
+            deserializer.deserialize(value, bytes);
+            return value;
+        } catch (TException ex) {
+            throw new IllegalArgumentException(ex);
+        } finally {
+            DESERIALIZERS.release(deserializer);
+        }
+    }
+
+    public enum Encoding {
+
+        // прежний формат, читается всеми версиями сервиса
+        JSON,
+        // thrift compact protocol в base64url, в разы короче json и без промежуточного дерева jackson
+        COMPACT
+
+    }
+}
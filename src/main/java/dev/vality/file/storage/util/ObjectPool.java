@@ -0,0 +1,44 @@
+package dev.vality.file.storage.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Ограниченный пул объектов с состоянием, которые дорого создавать и нельзя использовать из нескольких
+ * потоков одновременно. Используется вместо ThreadLocal, потому что в режиме виртуальных потоков каждый
+ * запрос выполняется в новом потоке. Если пул пуст, создается новый объект, а лишние при возврате
+ * отбрасываются.
+ */
+public class ObjectPool<T> {
+
+    private final BlockingQueue<T> objects;
+    private final Factory<T> factory;
+
+    public ObjectPool(int size, Factory<T> factory) {
+        this.objects = new ArrayBlockingQueue<>(size);
+        this.factory = factory;
+    }
+
+    public T borrow() {
+        var object = objects.poll();
+        if (object != null) {
+            return object;
+        }
+        try {
+            return factory.create();
+        } catch (Exception ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    public void release(T object) {
+        objects.offer(object);
+    }
+
+    @FunctionalInterface
+    public interface Factory<T> {
+
+        T create() throws Exception;
+
+    }
+}
@@ -0,0 +1,27 @@
+package dev.vality.file.storage.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Виртуальные потоки доступны только с Java 21, а сервис собирается и на Java 17, поэтому фабрика
+ * потоков загружается через reflection. На Java 17 ошибка возникает только в режиме {@code VIRTUAL}.
+ */
+public class VirtualThreadUtil {
+
+    public static ExecutorService newThreadPerTaskExecutor(String namePrefix) {
+        try {
+            var builderClass = Class.forName("java.lang.Thread$Builder");
+            var builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            var threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, threadFactory);
+        } catch (ReflectiveOperationException ex) {
+            throw new IllegalStateException(String.format(
+                    "Virtual threads require Java 21, execution.mode=VIRTUAL is not supported, javaVersion=%s",
+                    Runtime.version()), ex);
+        }
+    }
+}
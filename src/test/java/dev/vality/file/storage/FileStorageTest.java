@@ -1,5 +1,7 @@
 package dev.vality.file.storage;
 
+import dev.vality.file.storage.service.StorageService;
+import dev.vality.file.storage.service.exception.FileNotFoundException;
 import dev.vality.woody.api.flow.error.WRuntimeException;
 import dev.vality.woody.thrift.impl.http.THSpawnClientBuilder;
 import org.apache.http.HttpEntity;
@@ -8,6 +10,7 @@ import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.FileEntity;
+import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.impl.client.AbstractResponseHandler;
 import org.apache.http.impl.client.BasicResponseHandler;
 import org.apache.http.impl.client.HttpClients;
@@ -15,6 +18,7 @@ import org.apache.http.util.EntityUtils;
 import org.apache.thrift.TException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.http.HttpStatus;
@@ -22,6 +26,7 @@ import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.TestPropertySource;
 import org.testcontainers.shaded.org.apache.commons.io.FileUtils;
 
+import java.io.ByteArrayInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
@@ -37,6 +42,7 @@ import java.time.Instant;
 import java.util.*;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import static dev.vality.msgpack.Value.*;
 import static dev.vality.testcontainers.annotations.util.ValuesGenerator.*;
@@ -45,7 +51,13 @@ import static org.hamcrest.Matchers.containsString;
 import static org.junit.jupiter.api.Assertions.*;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
-@TestPropertySource("classpath:application.yml")
+@TestPropertySource(
+        locations = "classpath:application.yml",
+        properties = {
+                "proxy.upload.enabled=true",
+                "proxy.upload.part-size=5242880",
+                "proxy.upload.part-concurrency=2",
+                "proxy.download.enabled=true"})
 @DirtiesContext
 public abstract class FileStorageTest {
 
@@ -58,6 +70,10 @@ public abstract class FileStorageTest {
     @Value("${local.server.port}")
     private int port;
 
+    // методов нет в thrift протоколе, поэтому они проверяются на уровне StorageService
+    @Autowired
+    private StorageService storageService;
+
     @BeforeEach
     public void setUp() throws Exception {
         fileStorageClient = new THSpawnClientBuilder()
@@ -130,6 +146,124 @@ public abstract class FileStorageTest {
         assertThrows(FileNotFound.class, () -> fileStorageClient.getFileData(fileDataId));
     }
 
+    @Test
+    public void uploadThroughProxyTest() throws IOException, TException {
+        String expirationTime = generateCurrentTimePlusDay().toString();
+        var smallFileData = FILE_DATA.getBytes(StandardCharsets.UTF_8);
+        // больше двух частей по 5 МБ, загружается через multipart
+        var largeFileData = new byte[12 * 1024 * 1024 + 7];
+        new Random().nextBytes(largeFileData);
+        for (byte[] content : List.of(smallFileData, largeFileData)) {
+            NewFileResult fileResult = fileStorageClient.createNewFile(Collections.emptyMap(), expirationTime);
+            var proxyUrl = "http://localhost:" + port + "/file_storage/v2/upload/" + fileResult.getFileDataId();
+            try (var client = HttpClients.createDefault()) {
+                var requestPut = new HttpPut(proxyUrl);
+                requestPut.setHeader("Content-Disposition", "attachment;filename=" + FILE_NAME);
+                requestPut.setEntity(new ByteArrayEntity(content));
+                client.execute(requestPut, new BasicResponseHandler());
+
+                // повторная загрузка в тот же файл запрещена
+                var exception = assertThrows(
+                        HttpResponseException.class,
+                        () -> client.execute(requestPut, new BasicResponseHandler()));
+                assertEquals(HttpStatus.CONFLICT.value(), exception.getStatusCode());
+            }
+            var fileData = fileStorageClient.getFileData(fileResult.getFileDataId());
+            assertEquals(FILE_NAME, fileData.getFileName());
+            var downloadUrl = new URL(
+                    fileStorageClient.generateDownloadUrl(fileResult.getFileDataId(), expirationTime));
+            try (InputStream inputStream = getHttpURLConnection(downloadUrl, "GET", false).getInputStream()) {
+                assertArrayEquals(content, inputStream.readAllBytes());
+            }
+        }
+    }
+
+    @Test
+    public void concurrentUploadThroughProxyTest() throws Exception {
+        String expirationTime = generateCurrentTimePlusDay().toString();
+        NewFileResult fileResult = fileStorageClient.createNewFile(Collections.emptyMap(), expirationTime);
+        var proxyUrl = "http://localhost:" + port + "/file_storage/v2/upload/" + fileResult.getFileDataId();
+        var content = FILE_DATA.getBytes(StandardCharsets.UTF_8);
+        var bodyStarted = new CountDownLatch(1);
+        var bodyReleased = new CountDownLatch(1);
+        // тело первой загрузки не отправляется, пока не проверена вторая
+        var slowBody = new ByteArrayInputStream(content) {
+            @Override
+            public synchronized int read(byte[] bytes, int offset, int length) {
+                bodyStarted.countDown();
+                try {
+                    bodyReleased.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.read(bytes, offset, length);
+            }
+        };
+        var executor = Executors.newSingleThreadExecutor();
+        try (var client = HttpClients.createDefault()) {
+            var firstUpload = executor.submit(() -> {
+                var requestPut = new HttpPut(proxyUrl);
+                requestPut.setHeader("Content-Disposition", "attachment;filename=" + FILE_NAME);
+                requestPut.setEntity(new InputStreamEntity(slowBody, content.length));
+                return client.execute(requestPut, new BasicResponseHandler());
+            });
+            assertTrue(bodyStarted.await(10, TimeUnit.SECONDS));
+            // первая загрузка уже ждет тело в прокси
+            Thread.sleep(500);
+
+            // вторая загрузка в тот же файл отклоняется, пока выполняется первая
+            var requestPut = new HttpPut(proxyUrl);
+            requestPut.setHeader("Content-Disposition", "attachment;filename=" + FILE_NAME);
+            requestPut.setEntity(new ByteArrayEntity(content));
+            var exception = assertThrows(
+                    HttpResponseException.class,
+                    () -> client.execute(requestPut, new BasicResponseHandler()));
+            assertEquals(HttpStatus.CONFLICT.value(), exception.getStatusCode());
+
+            bodyReleased.countDown();
+            firstUpload.get(10, TimeUnit.SECONDS);
+        } finally {
+            bodyReleased.countDown();
+            executor.shutdownNow();
+        }
+        assertEquals(FILE_NAME, fileStorageClient.getFileData(fileResult.getFileDataId()).getFileName());
+    }
+
+    @Test
+    public void downloadThroughProxyTest() throws IOException, TException {
+        String expirationTime = generateCurrentTimePlusDay().toString();
+        NewFileResult fileResult = fileStorageClient.createNewFile(Collections.emptyMap(), expirationTime);
+        uploadTestData(fileResult, FILE_NAME);
+        var proxyUrl = new URL("http://localhost:" + port + "/file_storage/v2/download/" + fileResult.getFileDataId());
+
+        var connection = getHttpURLConnection(proxyUrl, "GET", false);
+        assertEquals(HttpStatus.OK.value(), connection.getResponseCode());
+        assertThat(connection.getHeaderField("Content-Disposition"), containsString(FILE_NAME));
+        var eTag = connection.getHeaderField("ETag");
+        try (InputStream inputStream = connection.getInputStream()) {
+            assertEquals(FILE_DATA, new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        var rangeConnection = getHttpURLConnection(proxyUrl, "GET", false);
+        rangeConnection.setRequestProperty("Range", "bytes=1-2");
+        assertEquals(HttpStatus.PARTIAL_CONTENT.value(), rangeConnection.getResponseCode());
+        assertEquals("bytes 1-2/" + FILE_DATA.length(), rangeConnection.getHeaderField("Content-Range"));
+        try (InputStream inputStream = rangeConnection.getInputStream()) {
+            assertEquals(FILE_DATA.substring(1, 3), new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+        }
+
+        var conditionalConnection = getHttpURLConnection(proxyUrl, "GET", false);
+        conditionalConnection.setRequestProperty("If-None-Match", eTag);
+        assertEquals(HttpStatus.NOT_MODIFIED.value(), conditionalConnection.getResponseCode());
+
+        var notUploadedFile = fileStorageClient.createNewFile(Collections.emptyMap(), expirationTime);
+        var notFoundConnection = getHttpURLConnection(
+                new URL("http://localhost:" + port + "/file_storage/v2/download/" + notUploadedFile.getFileDataId()),
+                "GET",
+                false);
+        assertEquals(HttpStatus.NOT_FOUND.value(), notFoundConnection.getResponseCode());
+    }
+
     @Test
     public void uploadUrlConnectionAccessTest() throws IOException, TException {
         // создание файла с доступом к файлу на день
@@ -205,6 +339,18 @@ public abstract class FileStorageTest {
         // сохранение тестовых данных в хранилище вызывает ошибку доступа
         assertThrows(HttpResponseException.class, () -> uploadTestData(throwingFileResult, FILE_NAME));
 
+        // через прокси после срока ссылки загрузить тоже нельзя
+        try (var client = HttpClients.createDefault()) {
+            var requestPut = new HttpPut(
+                    "http://localhost:" + port + "/file_storage/v2/upload/" + throwingFileDataId);
+            requestPut.setHeader("Content-Disposition", "attachment;filename=" + FILE_NAME);
+            requestPut.setEntity(new ByteArrayEntity(FILE_DATA.getBytes(StandardCharsets.UTF_8)));
+            var exception = assertThrows(
+                    HttpResponseException.class,
+                    () -> client.execute(requestPut, new BasicResponseHandler()));
+            assertEquals(HttpStatus.FORBIDDEN.value(), exception.getStatusCode());
+        }
+
         // ошибка доступа
         assertThrows(FileNotFound.class, () -> fileStorageClient.getFileData(throwingFileDataId));
         assertThrows(
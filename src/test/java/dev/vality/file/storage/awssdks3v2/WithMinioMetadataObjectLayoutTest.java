@@ -0,0 +1,10 @@
+package dev.vality.file.storage.awssdks3v2;
+
+import dev.vality.file.storage.FileStorageTest;
+import dev.vality.testcontainers.annotations.minio.MinioTestcontainerSingleton;
+import org.springframework.test.context.TestPropertySource;
+
+@MinioTestcontainerSingleton(bucketName = "awssdks3v2")
+@TestPropertySource(properties = "s3-sdk-v2.layout.write=METADATA_OBJECT")
+public class WithMinioMetadataObjectLayoutTest extends FileStorageTest {
+}
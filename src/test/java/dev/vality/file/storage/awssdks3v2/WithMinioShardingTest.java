@@ -0,0 +1,16 @@
+package dev.vality.file.storage.awssdks3v2;
+
+import dev.vality.file.storage.FileStorageTest;
+import dev.vality.testcontainers.annotations.minio.MinioTestcontainerSingleton;
+import org.springframework.test.context.TestPropertySource;
+
+// шард по умолчанию только читается, поэтому все новые файлы получают префикс s1_
+@MinioTestcontainerSingleton(bucketName = "awssdks3v2")
+@TestPropertySource(properties = {
+        "s3-sdk-v2.sharding.enabled=true",
+        "s3-sdk-v2.sharding.weight=0",
+        "s3-sdk-v2.sharding.shards[0].id=s1",
+        "s3-sdk-v2.sharding.shards[0].endpoint=${s3-sdk-v2.endpoint}",
+        "s3-sdk-v2.sharding.shards[0].bucket-name=awssdks3v2-shard"})
+public class WithMinioShardingTest extends FileStorageTest {
+}
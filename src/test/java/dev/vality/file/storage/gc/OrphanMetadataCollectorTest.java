@@ -0,0 +1,108 @@
+package dev.vality.file.storage.gc;
+
+import dev.vality.file.storage.configuration.properties.GcProperties;
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import dev.vality.testcontainers.annotations.minio.MinioTestcontainerSingleton;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.ListObjectVersionsResponse;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+import static dev.vality.file.storage.service.FileMetadataResolver.metadataObjectKey;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application.yml")
+@MinioTestcontainerSingleton(bucketName = "gc")
+@DirtiesContext
+public class OrphanMetadataCollectorTest {
+
+    private static final byte[] FILE_CONTENT = "file".getBytes(StandardCharsets.UTF_8);
+
+    @Autowired
+    private S3SdkV2Properties s3SdkV2Properties;
+
+    @Autowired
+    private S3Client s3SdkV2Client;
+
+    @Test
+    public void sweepTest() {
+        // свой префикс как единственная часть, чтобы обход не видел чужих ключей
+        var partition = UUID.randomUUID().toString();
+        // TWO_VERSIONS: только пустая ревизия с метаданными
+        var twoVersionsOrphan = putObject(partition + UUID.randomUUID(), new byte[0]);
+        // METADATA_OBJECT: объект метаданных без файла
+        var metadataObjectOrphan = putObject(metadataObjectKey(partition + UUID.randomUUID()), new byte[0]);
+        var twoVersionsUploaded = putObject(partition + UUID.randomUUID(), new byte[0]);
+        putObject(twoVersionsUploaded, FILE_CONTENT);
+        var metadataObjectUploaded = putObject(partition + UUID.randomUUID(), FILE_CONTENT);
+        putObject(metadataObjectKey(metadataObjectUploaded), new byte[0]);
+        var activeUpload = putObject(partition + UUID.randomUUID(), new byte[0]);
+        var uploadId = s3SdkV2Client.createMultipartUpload(request -> request
+                        .bucket(s3SdkV2Properties.getBucketName())
+                        .key(activeUpload))
+                .uploadId();
+        var deleted = putObject(partition + UUID.randomUUID(), new byte[0]);
+        s3SdkV2Client.deleteObject(request -> request.bucket(s3SdkV2Properties.getBucketName()).key(deleted));
+
+        var gcProperties = new GcProperties();
+        gcProperties.setPartitions(List.of(partition));
+        gcProperties.setMinAge(Duration.ZERO);
+        // ревизии одного ключа приходят на разных страницах
+        gcProperties.setPageSize(1);
+        gcProperties.setObjectsPerSecond(0);
+        var meterRegistry = new SimpleMeterRegistry();
+        var collector = new OrphanMetadataCollector(gcProperties, s3SdkV2Properties, s3SdkV2Client, meterRegistry);
+        try {
+            collector.sweep();
+        } finally {
+            collector.stop();
+            s3SdkV2Client.abortMultipartUpload(request -> request
+                    .bucket(s3SdkV2Properties.getBucketName())
+                    .key(activeUpload)
+                    .uploadId(uploadId));
+        }
+
+        assertEquals(2, meterRegistry.get("file.storage.gc.keys").tag("result", "orphaned").counter().count());
+        assertEquals(2, meterRegistry.get("file.storage.gc.objects").tag("result", "deleted").counter().count());
+        assertEquals(0, listVersions(twoVersionsOrphan).versions().size());
+        assertEquals(0, listVersions(metadataObjectOrphan).versions().size());
+        assertEquals(2, listVersions(twoVersionsUploaded).versions().size());
+        assertEquals(1, listVersions(metadataObjectUploaded).versions().size());
+        assertEquals(1, listVersions(metadataObjectKey(metadataObjectUploaded)).versions().size());
+        assertEquals(1, listVersions(activeUpload).versions().size());
+        var deletedVersions = listVersions(deleted);
+        assertEquals(1, deletedVersions.versions().size());
+        assertEquals(1, deletedVersions.deleteMarkers().size());
+    }
+
+    private String putObject(String key, byte[] content) {
+        s3SdkV2Client.putObject(
+                request -> request.bucket(s3SdkV2Properties.getBucketName()).key(key),
+                RequestBody.fromBytes(content));
+        return key;
+    }
+
+    private ListObjectVersionsResponse listVersions(String key) {
+        var response = s3SdkV2Client.listObjectVersions(request -> request
+                .bucket(s3SdkV2Properties.getBucketName())
+                .prefix(key));
+        // префикс fileId совпадает и с ключом fileId.metadata
+        return response.toBuilder()
+                .versions(response.versions().stream().filter(version -> key.equals(version.key())).toList())
+                .deleteMarkers(response.deleteMarkers().stream()
+                        .filter(deleteMarker -> key.equals(deleteMarker.key()))
+                        .toList())
+                .build();
+    }
+}
@@ -0,0 +1,230 @@
+package dev.vality.file.storage.migration;
+
+import dev.vality.file.storage.configuration.properties.MigrationProperties;
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import dev.vality.file.storage.service.StorageService;
+import dev.vality.file.storage.service.exception.FileNotFoundException;
+import dev.vality.file.storage.service.exception.StorageException;
+import dev.vality.file.storage.service.model.FileLayout;
+import dev.vality.file.storage.util.DamselUtil;
+import dev.vality.file.storage.util.FutureUtil;
+import dev.vality.testcontainers.annotations.minio.MinioTestcontainerSingleton;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static dev.vality.file.storage.service.FileMetadataResolver.metadataObjectKey;
+import static dev.vality.msgpack.Value.str;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
+
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application.yml")
+@MinioTestcontainerSingleton(bucketName = "migration")
+@DirtiesContext
+public class LegacyMigrationRunnerTest {
+
+    private static final String PARTITION = "a";
+    private static final String FILE_NAME = "legacy.txt";
+    private static final byte[] FILE_CONTENT = "legacy file".getBytes(StandardCharsets.UTF_8);
+
+    @Autowired
+    private S3SdkV2Properties s3SdkV2Properties;
+
+    @Autowired
+    private S3Client s3SdkV2Client;
+
+    @Autowired
+    private StorageService storageService;
+
+    private MigrationProperties migrationProperties;
+    private FileLayout writeLayout;
+
+    @BeforeEach
+    public void setUp() {
+        // у каждого теста свой исходный бакет, поэтому и свои чекпоинты
+        migrationProperties = new MigrationProperties();
+        migrationProperties.setEnabled(true);
+        migrationProperties.setSourceBucketName("legacy-" + UUID.randomUUID());
+        migrationProperties.setPartitions(List.of(PARTITION));
+        migrationProperties.setPageSize(1);
+        migrationProperties.setObjectsPerSecond(0);
+        s3SdkV2Client.createBucket(request -> request.bucket(migrationProperties.getSourceBucketName()));
+        writeLayout = s3SdkV2Properties.getLayout().getWrite();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        s3SdkV2Properties.getLayout().setWrite(writeLayout);
+    }
+
+    @ParameterizedTest
+    @EnumSource(FileLayout.class)
+    public void migrateTest(FileLayout layout) {
+        s3SdkV2Properties.getLayout().setWrite(layout);
+        var firstFileDataId = putLegacyFile(PARTITION + UUID.randomUUID(), true);
+        var secondFileDataId = putLegacyFile(PARTITION + UUID.randomUUID(), true);
+        var notUploadedFileDataId = putLegacyFile(PARTITION + UUID.randomUUID(), false);
+
+        var meterRegistry = migrate(legacyObjectMigrator());
+        assertEquals(2, objects(meterRegistry, "migrated"));
+        assertEquals(1, objects(meterRegistry, "not_uploaded"));
+        assertEquals(0, objects(meterRegistry, "failed"));
+        assertMigrated(firstFileDataId);
+        assertMigrated(secondFileDataId);
+        assertThrows(FileNotFoundException.class, () -> storageService.getFileData(notUploadedFileDataId));
+
+        // повторный проход с начала не создает новых ревизий
+        migrationProperties.setCheckpointPrefix(".migration/rerun/");
+        meterRegistry = migrate(legacyObjectMigrator());
+        assertEquals(0, objects(meterRegistry, "migrated"));
+        assertEquals(2, objects(meterRegistry, "already_migrated"));
+        assertEquals(1, objects(meterRegistry, "not_uploaded"));
+        for (String fileDataId : List.of(firstFileDataId, secondFileDataId)) {
+            if (layout == FileLayout.TWO_VERSIONS) {
+                assertEquals(2, versions(fileDataId));
+            } else {
+                assertEquals(1, versions(fileDataId));
+                assertEquals(1, versions(metadataObjectKey(fileDataId)));
+            }
+            assertMigrated(fileDataId);
+        }
+    }
+
+    @Test
+    public void resumeFromCheckpointTest() {
+        var migratedBeforeRestart = putLegacyFile(PARTITION + "0" + UUID.randomUUID(), true);
+        var notMigrated = putLegacyFile(PARTITION + "1" + UUID.randomUUID(), true);
+        // первый ключ обработан до перезапуска
+        var checkpointStore = checkpointStore();
+        checkpointStore.save(PARTITION, new MigrationCheckpointStore.Checkpoint(migratedBeforeRestart, false));
+
+        var meterRegistry = migrate(legacyObjectMigrator());
+        assertEquals(1, objects(meterRegistry, "migrated"));
+        assertMigrated(notMigrated);
+        assertEquals(0, versions(migratedBeforeRestart));
+        var checkpoint = checkpointStore.load(PARTITION).orElseThrow();
+        assertTrue(checkpoint.completed());
+        assertEquals(notMigrated, checkpoint.lastKey());
+    }
+
+    @Test
+    public void failedKeyRetryTest() throws Exception {
+        var failing = putLegacyFile(PARTITION + UUID.randomUUID(), true);
+        var migrated = putLegacyFile(PARTITION + UUID.randomUUID(), true);
+        var legacyObjectMigrator = spy(legacyObjectMigrator());
+        doThrow(new StorageException("Copy has failed")).when(legacyObjectMigrator).migrate(eq(failing), any());
+
+        // ошибка одного файла не останавливает часть
+        var meterRegistry = migrate(legacyObjectMigrator);
+        assertEquals(1, objects(meterRegistry, "failed"));
+        assertEquals(1, objects(meterRegistry, "migrated"));
+        assertMigrated(migrated);
+        var checkpointStore = checkpointStore();
+        assertTrue(checkpointStore.load(PARTITION).orElseThrow().completed());
+        assertEquals(List.of(failing), checkpointStore.loadFailed(PARTITION));
+
+        // часть завершена, но ключ с ошибкой переносится повторно при следующем запуске
+        meterRegistry = migrate(legacyObjectMigrator());
+        assertEquals(1, objects(meterRegistry, "migrated"));
+        assertEquals(0, objects(meterRegistry, "failed"));
+        assertMigrated(failing);
+        assertTrue(checkpointStore.loadFailed(PARTITION).isEmpty());
+    }
+
+    private String putLegacyFile(String fileDataId, boolean uploaded) {
+        var sourceBucketName = migrationProperties.getSourceBucketName();
+        // объекты с файлами вне обходимой части, как и в S3Service у них отдельные ключи
+        var fileId = "f" + UUID.randomUUID();
+        if (uploaded) {
+            s3SdkV2Client.putObject(PutObjectRequest.builder()
+                            .bucket(sourceBucketName)
+                            .key(fileId)
+                            .contentDisposition("attachment;filename=" + FILE_NAME)
+                            .build(),
+                    RequestBody.fromBytes(FILE_CONTENT));
+        }
+        s3SdkV2Client.putObject(PutObjectRequest.builder()
+                        .bucket(sourceBucketName)
+                        .key(fileDataId)
+                        .metadata(Map.of(
+                                LegacyObjectMigrator.LEGACY_FILE_DATA_ID, fileDataId,
+                                LegacyObjectMigrator.LEGACY_FILE_ID, fileId,
+                                LegacyObjectMigrator.LEGACY_CREATED_AT, Instant.now().toString(),
+                                LegacyObjectMigrator.LEGACY_METADATA + "author",
+                                DamselUtil.toJsonString(str("Mary Doe"))))
+                        .build(),
+                RequestBody.empty());
+        return fileDataId;
+    }
+
+    private void assertMigrated(String fileDataId) {
+        var fileData = storageService.getFileData(fileDataId);
+        assertEquals(fileDataId, fileData.getFileDataId());
+        assertEquals(FILE_NAME, fileData.getFileName());
+        assertEquals(str("Mary Doe"), fileData.getMetadata().get("author"));
+        var content = s3SdkV2Client.getObjectAsBytes(request -> request
+                .bucket(s3SdkV2Properties.getBucketName())
+                .key(fileDataId));
+        assertArrayEquals(FILE_CONTENT, content.asByteArray());
+    }
+
+    private long versions(String key) {
+        return s3SdkV2Client.listObjectVersions(request -> request
+                        .bucket(s3SdkV2Properties.getBucketName())
+                        .prefix(key))
+                .versions().stream()
+                .filter(version -> key.equals(version.key()))
+                .count();
+    }
+
+    private SimpleMeterRegistry migrate(LegacyObjectMigrator legacyObjectMigrator) {
+        var meterRegistry = new SimpleMeterRegistry();
+        var runner = new LegacyMigrationRunner(
+                migrationProperties,
+                s3SdkV2Client,
+                legacyObjectMigrator,
+                checkpointStore(),
+                meterRegistry);
+        try {
+            FutureUtil.join(runner.migrate());
+        } finally {
+            runner.stop();
+        }
+        return meterRegistry;
+    }
+
+    private LegacyObjectMigrator legacyObjectMigrator() {
+        return new LegacyObjectMigrator(migrationProperties, s3SdkV2Properties, s3SdkV2Client);
+    }
+
+    private MigrationCheckpointStore checkpointStore() {
+        return new MigrationCheckpointStore(migrationProperties, s3SdkV2Properties, s3SdkV2Client);
+    }
+
+    private static double objects(SimpleMeterRegistry meterRegistry, String result) {
+        return meterRegistry.get("file.storage.migration.objects")
+                .tag("result", result)
+                .counter()
+                .count();
+    }
+}
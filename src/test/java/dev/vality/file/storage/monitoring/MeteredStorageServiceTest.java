@@ -0,0 +1,70 @@
+package dev.vality.file.storage.monitoring;
+
+import dev.vality.file.storage.FileData;
+import dev.vality.file.storage.UploadMultipartRequestData;
+import dev.vality.file.storage.UploadMultipartResult;
+import dev.vality.file.storage.service.StorageService;
+import dev.vality.file.storage.service.exception.FileNotFoundException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static dev.vality.file.storage.monitoring.MeteredStorageService.METHOD_METRIC;
+import static dev.vality.file.storage.monitoring.MeteredStorageService.PAYLOAD_METRIC;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.*;
+
+public class MeteredStorageServiceTest {
+
+    private static final String SHARD_ID = "s1";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final StorageService storageService = mock(StorageService.class);
+    private final MeteredStorageService meteredStorageService =
+            new MeteredStorageService(storageService, SHARD_ID, meterRegistry);
+
+    @Test
+    public void methodOutcomeTest() {
+        when(storageService.getFileData("file")).thenReturn(new FileData());
+        when(storageService.getFileData("missing")).thenThrow(new FileNotFoundException("missing"));
+
+        meteredStorageService.getFileData("file");
+        meteredStorageService.getFileData("file");
+        assertThrows(FileNotFoundException.class, () -> meteredStorageService.getFileData("missing"));
+
+        assertEquals(2, meterRegistry.get(METHOD_METRIC)
+                .tag("method", "getFileData")
+                .tag("outcome", "success")
+                .tag("exception", "none")
+                .tag("shard", SHARD_ID)
+                .timer()
+                .count());
+        assertEquals(1, meterRegistry.get(METHOD_METRIC)
+                .tag("method", "getFileData")
+                .tag("outcome", "error")
+                .tag("exception", "FileNotFoundException")
+                .tag("shard", SHARD_ID)
+                .timer()
+                .count());
+    }
+
+    @Test
+    public void uploadMultipartPayloadTest() {
+        var requestData = new UploadMultipartRequestData()
+                .setContent(ByteBuffer.wrap(new byte[16]))
+                .setContentLength(16);
+        when(storageService.uploadMultipart(requestData)).thenReturn(new UploadMultipartResult());
+
+        meteredStorageService.uploadMultipart(requestData);
+        meteredStorageService.uploadMultipart(requestData);
+
+        var payload = meterRegistry.get(PAYLOAD_METRIC)
+                .tag("method", "uploadMultipart")
+                .tag("shard", SHARD_ID)
+                .summary();
+        assertEquals(2, payload.count());
+        assertEquals(32, payload.totalAmount());
+    }
+}
@@ -0,0 +1,56 @@
+package dev.vality.file.storage.monitoring;
+
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import dev.vality.testcontainers.annotations.minio.MinioTestcontainerSingleton;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import software.amazon.awssdk.services.s3.S3Client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+@TestPropertySource(locations = "classpath:application.yml")
+@MinioTestcontainerSingleton(bucketName = "pool-metrics")
+@DirtiesContext
+public class S3HttpPoolMetricPublisherTest {
+
+    @Autowired
+    private S3SdkV2Properties s3SdkV2Properties;
+
+    @Autowired
+    private S3Client s3SdkV2Client;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    public void poolGaugesTest() {
+        var shardId = s3SdkV2Properties.getSharding().getShardId();
+
+        s3SdkV2Client.headBucket(request -> request.bucket(s3SdkV2Properties.getBucketName()));
+
+        for (var name : new String[]{
+                "file.storage.s3.pool.leased",
+                "file.storage.s3.pool.pending",
+                "file.storage.s3.pool.available"}) {
+            meterRegistry.get(name).tag("shard", shardId).tag("client", "sync").gauge();
+        }
+        assertEquals(
+                s3SdkV2Properties.getTransport().getMaxConnections(),
+                meterRegistry.get("file.storage.s3.pool.max")
+                        .tag("shard", shardId)
+                        .tag("client", "sync")
+                        .gauge()
+                        .value());
+        assertTrue(meterRegistry.get("file.storage.s3.pool.acquire")
+                .tag("shard", shardId)
+                .tag("client", "sync")
+                .timer()
+                .count() > 0);
+    }
+}
@@ -0,0 +1,91 @@
+package dev.vality.file.storage.monitoring;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+import software.amazon.awssdk.http.SdkHttpRequest;
+import software.amazon.awssdk.http.SdkHttpResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.util.Optional;
+
+import static dev.vality.file.storage.monitoring.S3MetricsInterceptor.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.*;
+
+public class S3MetricsInterceptorTest {
+
+    private static final String SHARD_ID = "s1";
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final S3MetricsInterceptor interceptor = new S3MetricsInterceptor(meterRegistry, SHARD_ID);
+
+    @Test
+    public void successfulCallTest() {
+        for (int i = 0; i < 2; i++) {
+            var executionAttributes = executionAttributes("PutObject");
+            interceptor.beforeExecution(mock(Context.BeforeExecution.class), executionAttributes);
+            var beforeTransmission = mock(Context.BeforeTransmission.class);
+            var httpRequest = mock(SdkHttpRequest.class);
+            when(httpRequest.firstMatchingHeader("Content-Length")).thenReturn(Optional.of("4"));
+            when(beforeTransmission.httpRequest()).thenReturn(httpRequest);
+            interceptor.beforeTransmission(beforeTransmission, executionAttributes);
+            var httpResponse = SdkHttpResponse.builder().statusCode(200).build();
+            var afterTransmission = mock(Context.AfterTransmission.class);
+            when(afterTransmission.httpResponse()).thenReturn(httpResponse);
+            interceptor.afterTransmission(afterTransmission, executionAttributes);
+            var afterExecution = mock(Context.AfterExecution.class);
+            when(afterExecution.httpResponse()).thenReturn(httpResponse);
+            interceptor.afterExecution(afterExecution, executionAttributes);
+        }
+
+        for (var metric : new String[]{CALL_METRIC, ATTEMPT_METRIC}) {
+            assertEquals(2, meterRegistry.get(metric)
+                    .tag("operation", "PutObject")
+                    .tag("status", "200")
+                    .tag("shard", SHARD_ID)
+                    .timer()
+                    .count());
+        }
+        var requestPayload = meterRegistry.get(PAYLOAD_METRIC)
+                .tag("operation", "PutObject")
+                .tag("direction", "request")
+                .tag("shard", SHARD_ID)
+                .summary();
+        assertEquals(2, requestPayload.count());
+        assertEquals(8, requestPayload.totalAmount());
+    }
+
+    @Test
+    public void failedCallTest() {
+        var executionAttributes = executionAttributes("HeadObject");
+        interceptor.beforeExecution(mock(Context.BeforeExecution.class), executionAttributes);
+        var failedExecution = mock(Context.FailedExecution.class);
+        when(failedExecution.exception()).thenReturn(S3Exception.builder()
+                .statusCode(404)
+                .awsErrorDetails(AwsErrorDetails.builder().errorCode("NoSuchKey").build())
+                .build());
+
+        interceptor.onExecutionFailure(failedExecution, executionAttributes);
+
+        assertEquals(1, meterRegistry.get(CALL_METRIC)
+                .tag("operation", "HeadObject")
+                .tag("status", "404")
+                .tag("shard", SHARD_ID)
+                .timer()
+                .count());
+        assertEquals(1, meterRegistry.get(ERRORS_METRIC)
+                .tag("operation", "HeadObject")
+                .tag("code", "NoSuchKey")
+                .tag("shard", SHARD_ID)
+                .counter()
+                .count());
+    }
+
+    private static ExecutionAttributes executionAttributes(String operation) {
+        return new ExecutionAttributes().putAttribute(SdkExecutionAttribute.OPERATION_NAME, operation);
+    }
+}
@@ -0,0 +1,111 @@
+package dev.vality.file.storage.service;
+
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import dev.vality.file.storage.service.cache.FileLayoutCache;
+import dev.vality.file.storage.service.cache.FileMetadataCache;
+import dev.vality.file.storage.service.cache.FileVersionsCache;
+import dev.vality.file.storage.service.model.FileLayout;
+import dev.vality.file.storage.service.read.S3ReadRouter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.http.SdkHttpResponse;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static dev.vality.file.storage.service.FileMetadataResolver.CREATED_AT;
+import static dev.vality.file.storage.service.FileMetadataResolver.LAYOUT_VERSION;
+import static dev.vality.file.storage.service.FileMetadataResolver.metadataObjectKey;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+public class FileMetadataResolverTest {
+
+    private static final String FILE_ID = "file";
+    private static final String CREATED = "2026-01-01T00:00:00Z";
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final S3Client s3Client = mock(S3Client.class);
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void twoVersionsWriteLayoutSkipsMetadataObjectTest() {
+        when(s3Client.listObjectVersions(any(ListObjectVersionsRequest.class))).thenReturn(
+                (ListObjectVersionsResponse) ListObjectVersionsResponse.builder()
+                        .versions(
+                                ObjectVersion.builder().key(FILE_ID).versionId("v2").isLatest(true).size(4L).build(),
+                                ObjectVersion.builder().key(FILE_ID).versionId("v1").isLatest(false).size(0L).build())
+                        .sdkHttpResponse(ok())
+                        .build());
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenReturn(
+                (HeadObjectResponse) HeadObjectResponse.builder()
+                        .metadata(Map.of(CREATED_AT, CREATED))
+                        .contentDisposition("attachment;filename=test.txt")
+                        .sdkHttpResponse(ok())
+                        .build());
+        var fileMetadataResolver = fileMetadataResolver(FileLayout.TWO_VERSIONS);
+
+        var fileData = fileMetadataResolver.resolveFileData(FILE_ID);
+
+        assertEquals("test.txt", fileData.getFileName());
+        assertEquals(CREATED, fileData.getCreatedAt());
+        assertEquals("v2", fileMetadataResolver.resolveFileVersionId(FILE_ID));
+        // загруженный файл TWO_VERSIONS читается без HeadObject объекта с метаданными
+        verify(s3Client, never()).headObject(
+                argThat((HeadObjectRequest request) -> metadataObjectKey(FILE_ID).equals(request.key())));
+        verify(s3Client).listObjectVersions(any(ListObjectVersionsRequest.class));
+    }
+
+    @Test
+    public void metadataObjectWriteLayoutProbesMetadataObjectTest() {
+        when(s3Client.headObject(any(HeadObjectRequest.class))).thenReturn(
+                (HeadObjectResponse) HeadObjectResponse.builder()
+                        .versionId("v1")
+                        .metadata(Map.of(CREATED_AT, CREATED, LAYOUT_VERSION, FileLayout.METADATA_OBJECT.getVersion()))
+                        .contentDisposition("attachment;filename=test.txt")
+                        .sdkHttpResponse(ok())
+                        .build());
+        var fileMetadataResolver = fileMetadataResolver(FileLayout.METADATA_OBJECT);
+
+        var fileData = fileMetadataResolver.resolveFileData(FILE_ID);
+
+        assertEquals("test.txt", fileData.getFileName());
+        verify(s3Client).headObject(
+                argThat((HeadObjectRequest request) -> metadataObjectKey(FILE_ID).equals(request.key())));
+        verify(s3Client, never()).listObjectVersions(any(ListObjectVersionsRequest.class));
+    }
+
+    private FileMetadataResolver fileMetadataResolver(FileLayout writeLayout) {
+        var properties = new S3SdkV2Properties();
+        properties.setBucketName("files");
+        properties.getLayout().setWrite(writeLayout);
+        var s3ReadRouter = new S3ReadRouter(
+                properties,
+                List.of(new S3ReadRouter.ReadClient("http://first:9000", s3Client)),
+                executor,
+                meterRegistry);
+        return new FileMetadataResolver(
+                properties,
+                s3ReadRouter,
+                executor,
+                new FileMetadataCache(properties, meterRegistry),
+                new FileVersionsCache(properties, meterRegistry),
+                new FileLayoutCache(properties, meterRegistry));
+    }
+
+    private static SdkHttpResponse ok() {
+        return SdkHttpResponse.builder().statusCode(200).build();
+    }
+}
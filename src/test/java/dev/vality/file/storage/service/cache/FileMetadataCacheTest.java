@@ -0,0 +1,73 @@
+package dev.vality.file.storage.service.cache;
+
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import dev.vality.file.storage.service.model.FileMetadata;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static dev.vality.file.storage.service.FileMetadataResolver.CREATED_AT;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FileMetadataCacheTest {
+
+    private static final String FILE_NAME = "test.txt";
+
+    @Test
+    public void fileMetadataAndFileNameOfSameVersionTest() {
+        var fileMetadataCache = new FileMetadataCache(new S3SdkV2Properties(), new SimpleMeterRegistry());
+        var fileId = UUID.randomUUID().toString();
+        var loads = new AtomicInteger();
+        var fileMetadata = fileMetadataCache.getFileMetadata(fileId, "v1", () -> {
+            loads.incrementAndGet();
+            return cachedVersion(fileId);
+        });
+        // имя файла той же ревизии не перезаписывает закешированные метаданные
+        assertEquals(FILE_NAME, fileMetadataCache.getFileName(fileId, "v1", () -> {
+            loads.incrementAndGet();
+            return FILE_NAME;
+        }));
+        assertSame(fileMetadata, fileMetadataCache.getFileMetadataIfPresent(fileId, "v1"));
+        assertSame(fileMetadata, fileMetadataCache.getFileMetadata(fileId, "v1", () -> fail("Cached")));
+        assertEquals(FILE_NAME, fileMetadataCache.getFileName(fileId, "v1", () -> fail("Cached")));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void metadataObjectTest() {
+        var fileMetadataCache = new FileMetadataCache(new S3SdkV2Properties(), new SimpleMeterRegistry());
+        var fileId = UUID.randomUUID().toString();
+        assertNull(fileMetadataCache.getMetadataObjectIfPresent(fileId));
+        var cachedVersion = cachedVersion(fileId);
+        fileMetadataCache.putMetadataObject(fileId, cachedVersion);
+        assertSame(cachedVersion.getFileMetadata(), fileMetadataCache.getMetadataObjectIfPresent(fileId));
+        // объект метаданных хранится под своим ключом и не виден как ревизия файла
+        assertNull(fileMetadataCache.getFileMetadataIfPresent(fileId, ""));
+    }
+
+    @Test
+    public void disabledTest() {
+        var properties = new S3SdkV2Properties();
+        properties.getMetadataCache().setEnabled(false);
+        var fileMetadataCache = new FileMetadataCache(properties, new SimpleMeterRegistry());
+        var fileId = UUID.randomUUID().toString();
+        var loads = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            fileMetadataCache.getFileMetadata(fileId, "v1", () -> {
+                loads.incrementAndGet();
+                return cachedVersion(fileId);
+            });
+        }
+        fileMetadataCache.putWrittenFileMetadata(fileId, "v1", Map.of(), Map.of());
+        assertEquals(2, loads.get());
+        assertNull(fileMetadataCache.getFileMetadataIfPresent(fileId, "v1"));
+    }
+
+    private static CachedVersion cachedVersion(String fileId) {
+        var fileMetadata = new FileMetadata(fileId, "2026-01-01T00:00:00Z", Map.of(), null);
+        return CachedVersion.ofFileMetadata(fileMetadata, Map.of(CREATED_AT, "2026-01-01T00:00:00Z"));
+    }
+}
@@ -0,0 +1,88 @@
+package dev.vality.file.storage.service.cache;
+
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.s3.model.ObjectVersion;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class FileVersionsCacheTest {
+
+    private static final List<ObjectVersion> UPLOADED_FILE_VERSIONS = List.of(
+            ObjectVersion.builder().versionId("v2").build(),
+            ObjectVersion.builder().versionId("v1").build());
+    private static final List<ObjectVersion> NOT_UPLOADED_FILE_VERSIONS = List.of(
+            ObjectVersion.builder().versionId("v1").build());
+
+    @Test
+    public void uploadedFileTest() {
+        var fileVersionsCache = new FileVersionsCache(properties(), new SimpleMeterRegistry());
+        var fileId = UUID.randomUUID().toString();
+        var loads = new AtomicInteger();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(UPLOADED_FILE_VERSIONS, fileVersionsCache.get(fileId, key -> {
+                loads.incrementAndGet();
+                return UPLOADED_FILE_VERSIONS;
+            }));
+        }
+        assertEquals(1, loads.get());
+        fileVersionsCache.invalidate(fileId);
+        fileVersionsCache.get(fileId, key -> {
+            loads.incrementAndGet();
+            return UPLOADED_FILE_VERSIONS;
+        });
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void notUploadedFileExpiresAfterNegativeTtlTest() throws InterruptedException {
+        var fileVersionsCache = new FileVersionsCache(properties(), new SimpleMeterRegistry());
+        var fileId = UUID.randomUUID().toString();
+        var loads = new AtomicInteger();
+        fileVersionsCache.get(fileId, key -> {
+            loads.incrementAndGet();
+            return NOT_UPLOADED_FILE_VERSIONS;
+        });
+        fileVersionsCache.get(fileId, key -> {
+            loads.incrementAndGet();
+            return NOT_UPLOADED_FILE_VERSIONS;
+        });
+        assertEquals(1, loads.get());
+        // отрицательный результат живет negative-ttl, а не ttl
+        Thread.sleep(200);
+        assertEquals(UPLOADED_FILE_VERSIONS, fileVersionsCache.get(fileId, key -> {
+            loads.incrementAndGet();
+            return UPLOADED_FILE_VERSIONS;
+        }));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    public void disabledTest() {
+        var properties = properties();
+        properties.getVersionsCache().setEnabled(false);
+        var fileVersionsCache = new FileVersionsCache(properties, new SimpleMeterRegistry());
+        var fileId = UUID.randomUUID().toString();
+        var loads = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            fileVersionsCache.get(fileId, key -> {
+                loads.incrementAndGet();
+                return UPLOADED_FILE_VERSIONS;
+            });
+        }
+        assertEquals(2, loads.get());
+    }
+
+    private static S3SdkV2Properties properties() {
+        var properties = new S3SdkV2Properties();
+        properties.getVersionsCache().setTtl(Duration.ofMinutes(1));
+        properties.getVersionsCache().setNegativeTtl(Duration.ofMillis(50));
+        return properties;
+    }
+}
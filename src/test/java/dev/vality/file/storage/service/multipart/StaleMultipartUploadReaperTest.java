@@ -0,0 +1,98 @@
+package dev.vality.file.storage.service.multipart;
+
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import dev.vality.testcontainers.annotations.minio.MinioTestcontainerSingleton;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.MultipartUpload;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+@SpringBootTest
+@TestPropertySource(
+        locations = "classpath:application.yml",
+        properties = {
+                "s3-sdk-v2.multipart-sessions.idle-timeout=2s",
+                "s3-sdk-v2.multipart-sessions.reaper.enabled=true",
+                "s3-sdk-v2.multipart-sessions.reaper.runner-enabled=true",
+                "s3-sdk-v2.multipart-sessions.reaper.page-size=1",
+                "s3-sdk-v2.multipart-sessions.reaper.page-delay=0s"})
+@MinioTestcontainerSingleton(bucketName = "multipart-reaper")
+@DirtiesContext
+public class StaleMultipartUploadReaperTest {
+
+    @Autowired
+    private S3SdkV2Properties s3SdkV2Properties;
+
+    @Autowired
+    private S3Client s3SdkV2Client;
+
+    @Autowired
+    private MultipartUploadRegistry multipartUploadRegistry;
+
+    @Autowired
+    private StaleMultipartUploadReaper staleMultipartUploadReaper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    public void reapTest() throws Exception {
+        var staleUpload = createMultipartUpload();
+        var uploadedPartUpload = createMultipartUpload();
+        var registeredUpload = createMultipartUpload();
+        // дольше idle-timeout
+        Thread.sleep(3_000);
+        // часть загружена через другой инстанс, реестр этого инстанса о ней не знает
+        s3SdkV2Client.uploadPart(
+                request -> request
+                        .bucket(s3SdkV2Properties.getBucketName())
+                        .key(uploadedPartUpload.key())
+                        .uploadId(uploadedPartUpload.uploadId())
+                        .partNumber(1),
+                RequestBody.fromBytes("part".getBytes(StandardCharsets.UTF_8)));
+        multipartUploadRegistry.recordPart(registeredUpload.uploadId());
+        var freshUpload = createMultipartUpload();
+
+        staleMultipartUploadReaper.reap();
+
+        assertEquals(
+                Set.of(uploadedPartUpload.uploadId(), registeredUpload.uploadId(), freshUpload.uploadId()),
+                listMultipartUploadIds());
+        assertEquals(1, meterRegistry.get("file.storage.multipart.reaper.uploads")
+                .tag("result", "aborted")
+                .counter()
+                .count());
+        // ListParts только читается и не заполняет реестр
+        assertNull(multipartUploadRegistry.getLastActivity(uploadedPartUpload.uploadId()));
+    }
+
+    private MultipartUpload createMultipartUpload() {
+        var key = UUID.randomUUID().toString();
+        var uploadId = s3SdkV2Client.createMultipartUpload(request -> request
+                        .bucket(s3SdkV2Properties.getBucketName())
+                        .key(key))
+                .uploadId();
+        return MultipartUpload.builder().key(key).uploadId(uploadId).build();
+    }
+
+    private Set<String> listMultipartUploadIds() {
+        return s3SdkV2Client.listMultipartUploads(request -> request.bucket(s3SdkV2Properties.getBucketName()))
+                .uploads()
+                .stream()
+                .map(MultipartUpload::uploadId)
+                .collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,82 @@
+package dev.vality.file.storage.service.overload;
+
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OperationLimiterTest {
+
+    private static final long SECOND = Duration.ofSeconds(1).toNanos();
+    private static final long FAST = Duration.ofMillis(10).toNanos();
+
+    @Test
+    public void aimdLimitTest() {
+        var properties = properties();
+        var limiter = new OperationLimiter(properties, false, 0);
+        for (int i = 0; i < 10; i++) {
+            assertNull(limiter.tryAcquire(0));
+        }
+        assertEquals(OperationLimiter.Reason.LIMIT, limiter.tryAcquire(0));
+        // лимит занят полностью — успешный вызов увеличивает его
+        limiter.release(0, FAST, false);
+        assertEquals(11, limiter.getLimit());
+        // медленный вызов уменьшает лимит, как и ошибка
+        limiter.release(0, 3 * SECOND, false);
+        assertEquals(9, limiter.getLimit());
+        limiter.release(0, FAST, true);
+        assertEquals(8, limiter.getLimit());
+        assertEquals(7, limiter.getInFlight());
+    }
+
+    @Test
+    public void sizeDependentOperationTest() {
+        var limiter = new OperationLimiter(properties(), true, 0);
+        assertNull(limiter.tryAcquire(0));
+        // время загрузки зависит от размера части и не считается признаком перегрузки
+        limiter.release(0, 3 * SECOND, false);
+        assertEquals(10, limiter.getLimit());
+    }
+
+    @Test
+    public void circuitBreakerTest() {
+        var properties = properties();
+        properties.setMinLimit(1);
+        var limiter = new OperationLimiter(properties, false, 0);
+        for (int i = 0; i < 4; i++) {
+            assertNull(limiter.tryAcquire(0));
+            limiter.release(0, FAST, i % 2 == 0);
+        }
+        assertEquals(OperationLimiter.State.OPEN, limiter.getState());
+        assertEquals(OperationLimiter.Reason.CIRCUIT, limiter.tryAcquire(SECOND));
+        // после open-duration допускаются только пробные вызовы
+        assertNull(limiter.tryAcquire(11 * SECOND));
+        assertNull(limiter.tryAcquire(11 * SECOND));
+        assertEquals(OperationLimiter.State.HALF_OPEN, limiter.getState());
+        assertEquals(OperationLimiter.Reason.CIRCUIT, limiter.tryAcquire(11 * SECOND));
+        limiter.release(12 * SECOND, FAST, false);
+        limiter.release(12 * SECOND, FAST, false);
+        assertEquals(OperationLimiter.State.CLOSED, limiter.getState());
+        // пробный вызов с ошибкой снова открывает circuit breaker
+        for (int i = 0; i < 4; i++) {
+            assertNull(limiter.tryAcquire(13 * SECOND));
+            limiter.release(13 * SECOND, FAST, true);
+        }
+        assertEquals(OperationLimiter.State.OPEN, limiter.getState());
+        assertNull(limiter.tryAcquire(24 * SECOND));
+        limiter.release(24 * SECOND, FAST, true);
+        assertEquals(OperationLimiter.State.OPEN, limiter.getState());
+    }
+
+    private static S3SdkV2Properties.Overload properties() {
+        var properties = new S3SdkV2Properties.Overload();
+        properties.setEnabled(true);
+        properties.setInitialLimit(10);
+        properties.setMinLimit(5);
+        properties.getCircuitBreaker().setMinimumCalls(4);
+        properties.getCircuitBreaker().setHalfOpenCalls(2);
+        return properties;
+    }
+}
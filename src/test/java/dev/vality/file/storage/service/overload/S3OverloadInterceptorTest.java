@@ -0,0 +1,68 @@
+package dev.vality.file.storage.service.overload;
+
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+
+import java.io.ByteArrayInputStream;
+import java.net.URI;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class S3OverloadInterceptorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void getObjectBodyHoldsPermitTest() throws Exception {
+        var interceptor = interceptor();
+        var executionAttributes = executionAttributes("GetObject");
+        interceptor.beforeExecution(mock(Context.BeforeExecution.class), executionAttributes);
+        var context = mock(Context.ModifyHttpResponse.class);
+        when(context.responseBody()).thenReturn(Optional.of(new ByteArrayInputStream(new byte[]{1, 2, 3})));
+        var body = interceptor.modifyHttpResponseContent(context, executionAttributes).orElseThrow();
+        interceptor.afterExecution(mock(Context.AfterExecution.class), executionAttributes);
+        // вызов SDK завершен, но тело еще не прочитано
+        assertEquals(1, inFlight("GetObject"));
+        body.readAllBytes();
+        body.close();
+        assertEquals(0, inFlight("GetObject"));
+    }
+
+    @Test
+    public void headObjectReleasesPermitAfterExecutionTest() {
+        var interceptor = interceptor();
+        var executionAttributes = executionAttributes("HeadObject");
+        interceptor.beforeExecution(mock(Context.BeforeExecution.class), executionAttributes);
+        var context = mock(Context.ModifyHttpResponse.class);
+        when(context.responseBody()).thenReturn(Optional.empty());
+        assertTrue(interceptor.modifyHttpResponseContent(context, executionAttributes).isEmpty());
+        assertEquals(1, inFlight("HeadObject"));
+        interceptor.afterExecution(mock(Context.AfterExecution.class), executionAttributes);
+        assertEquals(0, inFlight("HeadObject"));
+    }
+
+    private S3OverloadInterceptor interceptor() {
+        var properties = new S3SdkV2Properties();
+        properties.getOverload().setEnabled(true);
+        return new S3OverloadInterceptor(properties, meterRegistry);
+    }
+
+    private static ExecutionAttributes executionAttributes(String operation) {
+        return new ExecutionAttributes()
+                .putAttribute(SdkExecutionAttribute.OPERATION_NAME, operation)
+                .putAttribute(SdkExecutionAttribute.CLIENT_ENDPOINT, URI.create("http://127.0.0.1:9000"));
+    }
+
+    private double inFlight(String operation) {
+        return meterRegistry.get(S3OverloadInterceptor.IN_FLIGHT_METRIC)
+                .tag("operation", operation)
+                .gauge()
+                .value();
+    }
+}
@@ -0,0 +1,50 @@
+package dev.vality.file.storage.service.part;
+
+import dev.vality.file.storage.UploadMultipartRequestData;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.utils.BinaryUtils;
+
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PartContentTest {
+
+    @Test
+    public void requestBodyTest() throws Exception {
+        var content = randomContent();
+        var partContent = PartContent.of(requestData(content));
+        assertEquals(content.length, partContent.length());
+        // MD5 известен до отправки тела, поэтому ETag сверяется всегда
+        assertFalse(partContent.matches("\"" + md5Hex(new byte[]{1}) + "\""));
+        // тело читается дважды, как при подписи и отправке запроса
+        for (int i = 0; i < 2; i++) {
+            try (var inputStream = partContent.requestBody().contentStreamProvider().newStream()) {
+                assertArrayEquals(content, inputStream.readAllBytes());
+            }
+        }
+        assertTrue(partContent.matches("\"" + md5Hex(content) + "\""));
+        assertFalse(partContent.matches("\"" + md5Hex(new byte[]{1}) + "\""));
+        // ETag, который не является MD5, не проверяется
+        assertTrue(partContent.matches("\"" + md5Hex(new byte[]{1}) + "-2\""));
+    }
+
+    private static byte[] randomContent() {
+        var content = new byte[300 * 1024 + 13];
+        new Random().nextBytes(content);
+        return content;
+    }
+
+    private static UploadMultipartRequestData requestData(byte[] content) {
+        return new UploadMultipartRequestData()
+                .setFileDataId("fileId")
+                .setSequencePart(1)
+                .setContentLength(content.length)
+                .setContent(content);
+    }
+
+    private static String md5Hex(byte[] content) throws Exception {
+        return BinaryUtils.toHex(MessageDigest.getInstance("MD5").digest(content));
+    }
+}
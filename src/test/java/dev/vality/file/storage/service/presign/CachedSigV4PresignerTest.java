@@ -0,0 +1,141 @@
+package dev.vality.file.storage.service.presign;
+
+import dev.vality.file.storage.configuration.S3SdkV2ClientConfig;
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.signer.AwsS3V4Signer;
+import software.amazon.awssdk.auth.signer.params.Aws4PresignerParams;
+import software.amazon.awssdk.http.SdkHttpFullRequest;
+import software.amazon.awssdk.http.SdkHttpMethod;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.GetObjectPresignRequest;
+import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
+
+import java.net.URL;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CachedSigV4PresignerTest {
+
+    private static final Instant SIGNING_TIME = Instant.parse("2023-04-20T23:59:41.123Z");
+    private static final Instant EXPIRATION_TIME = SIGNING_TIME.plus(Duration.ofMinutes(10));
+
+    @ParameterizedTest
+    @ValueSource(strings = {"http://127.0.0.1:9000", "https://s3.example.com", "http://s3.example.com:80"})
+    public void presignGetObjectTest(String endpoint) {
+        var properties = properties(endpoint);
+        var cachedSigV4Presigner = new CachedSigV4Presigner(properties);
+        try (var s3Presigner = new S3SdkV2ClientConfig(properties).s3Presigner()) {
+            var fileId = UUID.randomUUID().toString();
+            var versionId = "3/L4kqtJlcpXroDTDmJ+rmSpXd3dIbrHY+MTRCxf3vjVBH40Nr8X8gdRQBpUMLUo";
+            assertEquals(
+                    sdkGetObjectUrl(s3Presigner, properties, fileId, versionId).toString(),
+                    cachedSigV4Presigner.presignGetObject(fileId, versionId, SIGNING_TIME, EXPIRATION_TIME)
+                            .toString());
+            assertEquals(
+                    sdkGetObjectUrl(s3Presigner, properties, fileId, null).toString(),
+                    cachedSigV4Presigner.presignGetObject(fileId, null, SIGNING_TIME, EXPIRATION_TIME).toString());
+        }
+    }
+
+    @Test
+    public void presignGetObjectWithStockSignerTest() {
+        // сверка с AwsS3V4Signer напрямую, без S3Presigner и FixedTimeS3Presigner
+        var properties = properties("http://127.0.0.1:9000");
+        var cachedSigV4Presigner = new CachedSigV4Presigner(properties);
+        var fileId = UUID.randomUUID().toString();
+        var versionId = "3/L4kqtJlcpXroDTDmJ+rmSpXd3dIbrHY+MTRCxf3vjVBH40Nr8X8gdRQBpUMLUo";
+        var request = SdkHttpFullRequest.builder()
+                .method(SdkHttpMethod.GET)
+                .protocol("http")
+                .host("127.0.0.1")
+                .port(9000)
+                .encodedPath("/" + properties.getBucketName() + "/" + fileId)
+                .putRawQueryParameter("versionId", versionId)
+                .build();
+        var presignerParams = Aws4PresignerParams.builder()
+                .awsCredentials(AwsBasicCredentials.create(properties.getAccessKey(), properties.getSecretKey()))
+                .signingName("s3")
+                .signingRegion(Region.of(properties.getRegion()))
+                .doubleUrlEncode(false)
+                .signingClockOverride(Clock.fixed(SIGNING_TIME, ZoneOffset.UTC))
+                .expirationTime(EXPIRATION_TIME)
+                .build();
+        assertEquals(
+                AwsS3V4Signer.create().presign(request, presignerParams).getUri().toString(),
+                cachedSigV4Presigner.presignGetObject(fileId, versionId, SIGNING_TIME, EXPIRATION_TIME).toString());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"http://127.0.0.1:9000", "https://s3.example.com"})
+    public void presignPutObjectTest(String endpoint) {
+        var properties = properties(endpoint);
+        var cachedSigV4Presigner = new CachedSigV4Presigner(properties);
+        try (var s3Presigner = new S3SdkV2ClientConfig(properties).s3Presigner()) {
+            var fileId = UUID.randomUUID().toString();
+            var presignRequest = PutObjectPresignRequest.builder()
+                    .signatureDuration(Duration.between(SIGNING_TIME, EXPIRATION_TIME))
+                    .putObjectRequest(PutObjectRequest.builder()
+                            .bucket(properties.getBucketName())
+                            .key(fileId)
+                            .overrideConfiguration(configuration -> configuration.signer(
+                                    new FixedTimeS3Presigner(SIGNING_TIME, EXPIRATION_TIME)))
+                            .build())
+                    .build();
+            assertEquals(
+                    s3Presigner.presignPutObject(presignRequest).url().toString(),
+                    cachedSigV4Presigner.presignPutObject(fileId, SIGNING_TIME, EXPIRATION_TIME).toString());
+        }
+    }
+
+    @Test
+    public void presignWithPastExpirationTest() {
+        var cachedSigV4Presigner = new CachedSigV4Presigner(properties("http://127.0.0.1:9000"));
+        var fileId = UUID.randomUUID().toString();
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> cachedSigV4Presigner.presignGetObject(fileId, null, SIGNING_TIME, SIGNING_TIME));
+        assertThrows(
+                IllegalArgumentException.class,
+                () -> cachedSigV4Presigner.presignPutObject(fileId, SIGNING_TIME, SIGNING_TIME.minusSeconds(60)));
+    }
+
+    private static URL sdkGetObjectUrl(S3Presigner s3Presigner,
+                                       S3SdkV2Properties properties,
+                                       String fileId,
+                                       String versionId) {
+        var presignRequest = GetObjectPresignRequest.builder()
+                .signatureDuration(Duration.between(SIGNING_TIME, EXPIRATION_TIME))
+                .getObjectRequest(GetObjectRequest.builder()
+                        .bucket(properties.getBucketName())
+                        .key(fileId)
+                        .versionId(versionId)
+                        .overrideConfiguration(configuration -> configuration.signer(
+                                new FixedTimeS3Presigner(SIGNING_TIME, EXPIRATION_TIME)))
+                        .build())
+                .build();
+        return s3Presigner.presignGetObject(presignRequest).url();
+    }
+
+    private static S3SdkV2Properties properties(String endpoint) {
+        var properties = new S3SdkV2Properties();
+        properties.setEndpoint(endpoint);
+        properties.setBucketName("files");
+        properties.setRegion("RU");
+        properties.setAccessKey("minio");
+        properties.setSecretKey("minio123");
+        return properties;
+    }
+}
@@ -0,0 +1,102 @@
+package dev.vality.file.storage.service.presign;
+
+import dev.vality.file.storage.configuration.S3SdkV2ClientConfig;
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.net.URL;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DownloadUrlPresignerTest {
+
+    private static final Duration BUCKET_SIZE = Duration.ofMinutes(5);
+    private static final DateTimeFormatter AMZ_DATE = DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss'Z'")
+            .withZone(ZoneOffset.UTC);
+
+    @ParameterizedTest
+    @EnumSource(S3SdkV2Properties.PresignEngine.class)
+    public void bucketedExpirationTest(S3SdkV2Properties.PresignEngine engine) {
+        var properties = properties(engine);
+        try (var s3Presigner = new S3SdkV2ClientConfig(properties).s3Presigner()) {
+            var downloadUrlPresigner = new DownloadUrlPresigner(
+                    properties, s3Presigner, new CachedSigV4Presigner(properties), new SimpleMeterRegistry());
+            var fileId = UUID.randomUUID().toString();
+            var requestedExpirationTime = Instant.now().plus(Duration.ofMinutes(42));
+            var url = downloadUrlPresigner.presign(fileId, "v1", requestedExpirationTime);
+            // ссылка не живет дольше запрошенного и короче не больше чем на bucket-size
+            var expirationTime = expirationTime(url);
+            assertFalse(expirationTime.isAfter(requestedExpirationTime));
+            assertTrue(expirationTime.isAfter(requestedExpirationTime.minus(BUCKET_SIZE)));
+            // повторный запрос получает ту же ссылку из кеша
+            var cachedUrl = downloadUrlPresigner.presign(fileId, "v1", requestedExpirationTime);
+            assertEquals(url.toString(), cachedUrl.toString());
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(S3SdkV2Properties.PresignEngine.class)
+    public void bucketedMaxExpirationTest(S3SdkV2Properties.PresignEngine engine) {
+        var properties = properties(engine);
+        try (var s3Presigner = new S3SdkV2ClientConfig(properties).s3Presigner()) {
+            var downloadUrlPresigner = new DownloadUrlPresigner(
+                    properties, s3Presigner, new CachedSigV4Presigner(properties), new SimpleMeterRegistry());
+            // работает в EXACT, в BUCKETED время подписи выравнивается вниз и не должно выводить за 7 дней
+            var requestedExpirationTime = Instant.now().plus(Duration.ofDays(7)).minusSeconds(1);
+            var url = downloadUrlPresigner.presign(UUID.randomUUID().toString(), "v1", requestedExpirationTime);
+            assertTrue(Long.parseLong(query(url).get("X-Amz-Expires")) <= Duration.ofDays(7).toSeconds());
+            assertFalse(expirationTime(url).isAfter(requestedExpirationTime));
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(S3SdkV2Properties.PresignEngine.class)
+    public void shortExpirationTest(S3SdkV2Properties.PresignEngine engine) {
+        var properties = properties(engine);
+        try (var s3Presigner = new S3SdkV2ClientConfig(properties).s3Presigner()) {
+            var downloadUrlPresigner = new DownloadUrlPresigner(
+                    properties, s3Presigner, new CachedSigV4Presigner(properties), new SimpleMeterRegistry());
+            // выровненная вниз ссылка уже истекла бы, поэтому подписывается точное время
+            var requestedExpirationTime = Instant.now().plus(Duration.ofMinutes(1));
+            var url = downloadUrlPresigner.presign(UUID.randomUUID().toString(), "v1", requestedExpirationTime);
+            var expirationTime = expirationTime(url);
+            assertFalse(expirationTime.isAfter(requestedExpirationTime.plusSeconds(1)));
+            assertTrue(expirationTime.isAfter(Instant.now().plusSeconds(30)));
+        }
+    }
+
+    private static Instant expirationTime(URL url) {
+        var query = query(url);
+        return AMZ_DATE.parse(query.get("X-Amz-Date"), Instant::from)
+                .plusSeconds(Long.parseLong(query.get("X-Amz-Expires")));
+    }
+
+    private static Map<String, String> query(URL url) {
+        return Arrays.stream(url.getQuery().split("&"))
+                .map(param -> param.split("=", 2))
+                .collect(Collectors.toMap(param -> param[0], param -> param[1]));
+    }
+
+    private static S3SdkV2Properties properties(S3SdkV2Properties.PresignEngine engine) {
+        var properties = new S3SdkV2Properties();
+        properties.setEndpoint("http://127.0.0.1:9000");
+        properties.setBucketName("files");
+        properties.setRegion("RU");
+        properties.setAccessKey("minio");
+        properties.setSecretKey("minio123");
+        properties.getPresign().setMode(S3SdkV2Properties.PresignMode.BUCKETED);
+        properties.getPresign().setEngine(engine);
+        properties.getPresign().setBucketSize(BUCKET_SIZE);
+        return properties;
+    }
+}
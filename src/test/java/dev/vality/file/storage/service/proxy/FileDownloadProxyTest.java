@@ -0,0 +1,80 @@
+package dev.vality.file.storage.service.proxy;
+
+import dev.vality.file.storage.configuration.properties.ProxyProperties;
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import dev.vality.file.storage.service.FileMetadataResolver;
+import dev.vality.file.storage.service.read.S3ReadRouter;
+import dev.vality.file.storage.service.shard.S3ShardResolver;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class FileDownloadProxyTest {
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void clientDisconnectAbortsObjectStreamTest() {
+        var aborts = new AtomicInteger();
+        var s3Client = mock(S3Client.class);
+        when(s3Client.getObject(any(GetObjectRequest.class))).thenReturn(new ResponseInputStream<>(
+                GetObjectResponse.builder().build(),
+                AbortableInputStream.create(new ByteArrayInputStream(new byte[1024]), aborts::incrementAndGet)));
+        var fileDownloadProxy = fileDownloadProxy(s3Client);
+
+        // клиент закрыл соединение, остаток объекта не должен дочитываться из s3
+        assertThrows(IOException.class, () -> fileDownloadProxy.download(
+                "file", null, null, null, (status, response) -> new OutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        throw new IOException("Broken pipe");
+                    }
+                }));
+
+        assertEquals(1, aborts.get());
+        assertEquals(0, meterRegistry.get("file.storage.proxy.buffers.in.use")
+                .tag("pool", FileDownloadProxy.BUFFER_POOL_NAME)
+                .gauge()
+                .value());
+    }
+
+    private FileDownloadProxy fileDownloadProxy(S3Client s3Client) {
+        var s3SdkV2Properties = new S3SdkV2Properties();
+        s3SdkV2Properties.setBucketName("files");
+        var s3ReadRouter = new S3ReadRouter(
+                s3SdkV2Properties,
+                List.of(new S3ReadRouter.ReadClient("http://first:9000", s3Client)),
+                executor,
+                meterRegistry);
+        var fileMetadataResolver = mock(FileMetadataResolver.class);
+        when(fileMetadataResolver.resolveFileVersionId(any())).thenReturn("v1");
+        var s3ShardResolver = S3ShardResolver.single(new S3ShardResolver.S3Shard(
+                "default", s3SdkV2Properties, s3Client, s3ReadRouter, fileMetadataResolver));
+        return new FileDownloadProxy(new ProxyProperties(), s3ShardResolver, meterRegistry);
+    }
+}
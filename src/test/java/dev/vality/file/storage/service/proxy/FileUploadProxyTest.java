@@ -0,0 +1,138 @@
+package dev.vality.file.storage.service.proxy;
+
+import dev.vality.file.storage.configuration.properties.ProxyProperties;
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import dev.vality.file.storage.service.FileMetadataResolver;
+import dev.vality.file.storage.service.exception.StorageException;
+import dev.vality.file.storage.service.model.FileMetadata;
+import dev.vality.file.storage.service.shard.S3ShardResolver;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.*;
+
+import java.io.ByteArrayInputStream;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class FileUploadProxyTest {
+
+    private static final int PART_SIZE = 4;
+    private static final int PARTS = 10;
+    private static final String UPLOAD_ID = "upload";
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final S3Client s3Client = mock(S3Client.class);
+    private final AtomicInteger partsInFlight = new AtomicInteger();
+    private final AtomicInteger maxPartsInFlight = new AtomicInteger();
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void parallelPartsTest() throws Exception {
+        mockMultipartUpload(0);
+        var fileUploadProxy = fileUploadProxy(32);
+
+        fileUploadProxy.upload(UUID.randomUUID().toString(), null, "attachment;filename=test.txt",
+                PART_SIZE * PARTS, new ByteArrayInputStream(new byte[PART_SIZE * PARTS]));
+
+        assertEquals(3, maxPartsInFlight.get());
+        var completeRequest = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3Client).completeMultipartUpload(completeRequest.capture());
+        var completedParts = completeRequest.getValue().multipartUpload().parts();
+        assertEquals(PARTS, completedParts.size());
+        for (int i = 0; i < PARTS; i++) {
+            assertEquals(i + 1, completedParts.get(i).partNumber());
+        }
+        assertEquals(0, buffersInUse());
+    }
+
+    @Test
+    public void sequentialPartsWithoutFreeBuffersTest() throws Exception {
+        mockMultipartUpload(0);
+        // буфер есть только под первую часть, загрузка не отклоняется, а отправляет части по одной
+        var fileUploadProxy = fileUploadProxy(1);
+
+        fileUploadProxy.upload(UUID.randomUUID().toString(), null, "attachment;filename=test.txt",
+                -1, new ByteArrayInputStream(new byte[PART_SIZE * PARTS]));
+
+        assertEquals(1, maxPartsInFlight.get());
+        verify(s3Client, times(PARTS)).uploadPart(any(UploadPartRequest.class), any(RequestBody.class));
+        verify(s3Client).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+        assertEquals(0, buffersInUse());
+    }
+
+    @Test
+    public void partFailureAbortsUploadTest() {
+        mockMultipartUpload(2);
+        var fileUploadProxy = fileUploadProxy(32);
+
+        assertThrows(StorageException.class, () -> fileUploadProxy.upload(
+                UUID.randomUUID().toString(), null, "attachment;filename=test.txt",
+                PART_SIZE * PARTS, new ByteArrayInputStream(new byte[PART_SIZE * PARTS])));
+
+        verify(s3Client).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(s3Client, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+        assertEquals(0, buffersInUse());
+    }
+
+    /**
+     * @param failingPartNumber номер части, отправка которой завершается неповторяемой ошибкой, 0 — без ошибок
+     */
+    private void mockMultipartUpload(int failingPartNumber) {
+        when(s3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId(UPLOAD_ID).build());
+        when(s3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class))).thenAnswer(invocation -> {
+            UploadPartRequest request = invocation.getArgument(0);
+            var inFlight = partsInFlight.incrementAndGet();
+            maxPartsInFlight.accumulateAndGet(inFlight, Math::max);
+            try {
+                Thread.sleep(50);
+                if (request.partNumber() == failingPartNumber) {
+                    throw S3Exception.builder().statusCode(400).message("Bad part").build();
+                }
+                return UploadPartResponse.builder().eTag("etag-" + request.partNumber()).build();
+            } finally {
+                partsInFlight.decrementAndGet();
+            }
+        });
+        when(s3Client.completeMultipartUpload(any(CompleteMultipartUploadRequest.class)))
+                .thenReturn(CompleteMultipartUploadResponse.builder().build());
+    }
+
+    private FileUploadProxy fileUploadProxy(int maxBuffers) {
+        var proxyProperties = new ProxyProperties();
+        proxyProperties.getUpload().setPartSize(PART_SIZE);
+        proxyProperties.getUpload().setMaxBuffers(maxBuffers);
+        proxyProperties.getUpload().setPartConcurrency(3);
+        var s3SdkV2Properties = new S3SdkV2Properties();
+        s3SdkV2Properties.setBucketName("files");
+        var fileMetadataResolver = mock(FileMetadataResolver.class);
+        when(fileMetadataResolver.resolveNotUploadedFileMetadata(any()))
+                .thenAnswer(invocation -> new FileMetadata(invocation.getArgument(0), null, Map.of(), null));
+        var s3ShardResolver = S3ShardResolver.single(new S3ShardResolver.S3Shard(
+                "default", s3SdkV2Properties, s3Client, null, fileMetadataResolver));
+        return new FileUploadProxy(proxyProperties, s3ShardResolver, executor, meterRegistry);
+    }
+
+    private double buffersInUse() {
+        return meterRegistry.get("file.storage.proxy.buffers.in.use")
+                .tag("pool", FileUploadProxy.BUFFER_POOL_NAME)
+                .gauge()
+                .value();
+    }
+}
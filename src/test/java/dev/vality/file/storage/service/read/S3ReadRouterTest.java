@@ -0,0 +1,128 @@
+package dev.vality.file.storage.service.read;
+
+import dev.vality.file.storage.configuration.properties.S3SdkV2Properties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class S3ReadRouterTest {
+
+    private static final HeadObjectRequest REQUEST = HeadObjectRequest.builder().bucket("files").key("key").build();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void hedgeOnPrimaryFailureTest() throws Exception {
+        var fastCalls = new AtomicInteger();
+        var fastResponse = HeadObjectResponse.builder().build();
+        var fastClient = mock(S3Client.class);
+        when(fastClient.headObject(any(HeadObjectRequest.class))).thenAnswer(invocation -> {
+            fastCalls.incrementAndGet();
+            return fastResponse;
+        });
+        // узел отвечает ошибкой соединения только после того, как ушел повторный запрос
+        var failingCalls = new AtomicInteger();
+        var failingClient = mock(S3Client.class);
+        when(failingClient.headObject(any(HeadObjectRequest.class))).thenAnswer(invocation -> {
+            failingCalls.incrementAndGet();
+            var before = fastCalls.get();
+            var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (fastCalls.get() == before && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            throw SdkClientException.create("Connection reset");
+        });
+        var router = router(failingClient, fastClient);
+        // endpoint выбирается случайно, запросы повторяются, пока основным не окажется падающий
+        for (int i = 0; i < 100 && failingCalls.get() == 0; i++) {
+            assertSame(fastResponse, router.read(S3ReadRouter.HEAD_OBJECT, client -> client.headObject(REQUEST)));
+        }
+        assertEquals(1, failingCalls.get());
+        // после ошибки узел получает error-penalty и больше не выбирается основным
+        for (int i = 0; i < 20; i++) {
+            assertSame(fastResponse, router.read(S3ReadRouter.HEAD_OBJECT, client -> client.headObject(REQUEST)));
+        }
+        assertEquals(1, hedges("won"));
+        assertTrue(hedges("sent") >= 1);
+        assertEquals(0, hedges("rejected"));
+    }
+
+    @Test
+    public void primaryOnCallerThreadTest() {
+        var callers = ConcurrentHashMap.<Thread>newKeySet();
+        var client = mock(S3Client.class);
+        when(client.headObject(any(HeadObjectRequest.class))).thenAnswer(invocation -> {
+            callers.add(Thread.currentThread());
+            return HeadObjectResponse.builder().build();
+        });
+        // задержка повторного запроса больше времени теста
+        var router = router(client, client, Duration.ofMinutes(1));
+        for (int i = 0; i < 10; i++) {
+            router.read(S3ReadRouter.HEAD_OBJECT, s3Client -> s3Client.headObject(REQUEST));
+        }
+        // быстрые ответы не ждут пула s3ReadExecutor
+        assertEquals(Set.of(Thread.currentThread()), callers);
+        assertEquals(0, hedges("sent"));
+    }
+
+    @Test
+    public void notFoundTest() {
+        var client = mock(S3Client.class);
+        when(client.headObject(any(HeadObjectRequest.class))).thenThrow(NoSuchKeyException.builder()
+                .statusCode(404)
+                .build());
+        var router = router(client, client);
+        assertThrows(NoSuchKeyException.class,
+                () -> router.read(S3ReadRouter.HEAD_OBJECT, s3Client -> s3Client.headObject(REQUEST)));
+        assertEquals(0, hedges("sent"));
+    }
+
+    private S3ReadRouter router(S3Client first, S3Client second) {
+        return router(first, second, Duration.ofMillis(50));
+    }
+
+    private S3ReadRouter router(S3Client first, S3Client second, Duration hedgeDelay) {
+        var properties = new S3SdkV2Properties();
+        properties.getReads().getHedging().setMaxDelay(hedgeDelay);
+        properties.getReads().getHedging().setBudget(1);
+        properties.getReads().setErrorPenalty(Duration.ofMinutes(1));
+        return new S3ReadRouter(
+                properties,
+                List.of(new S3ReadRouter.ReadClient("http://first:9000", first),
+                        new S3ReadRouter.ReadClient("http://second:9000", second)),
+                executor,
+                meterRegistry);
+    }
+
+    private double hedges(String result) {
+        return meterRegistry.get("file.storage.s3.read.hedges")
+                .tag("operation", S3ReadRouter.HEAD_OBJECT)
+                .tag("result", result)
+                .counter()
+                .count();
+    }
+}
@@ -0,0 +1,36 @@
+package dev.vality.file.storage.service.shard;
+
+import dev.vality.file.storage.service.exception.FileNotFoundException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class S3ShardResolverTest {
+
+    private final S3ShardResolver.S3Shard defaultShard = new S3ShardResolver.S3Shard("s0", null, null, null, null);
+    private final S3ShardResolver.S3Shard shard = new S3ShardResolver.S3Shard("s1", null, null, null, null);
+
+    @Test
+    public void resolveTest() {
+        var s3ShardResolver = new S3ShardResolver("s0", Map.of("s0", defaultShard, "s1", shard));
+        assertRoute(defaultShard, "key", s3ShardResolver.resolve("key"));
+        assertRoute(defaultShard, "key", s3ShardResolver.resolve("s0_key"));
+        assertRoute(shard, "key", s3ShardResolver.resolve("s1_key"));
+        assertThrows(FileNotFoundException.class, () -> s3ShardResolver.resolve("s2_key"));
+    }
+
+    @Test
+    public void singleTest() {
+        // без шардирования fileId не разбирается
+        var route = S3ShardResolver.single(defaultShard).resolve("s1_key");
+        assertRoute(defaultShard, "s1_key", route);
+        assertEquals("s1_key", route.fileId());
+    }
+
+    private static void assertRoute(S3ShardResolver.S3Shard shard, String key, S3ShardResolver.S3Route route) {
+        assertSame(shard, route.shard());
+        assertEquals(key, route.key());
+    }
+}
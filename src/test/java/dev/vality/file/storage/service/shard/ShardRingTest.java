@@ -0,0 +1,58 @@
+package dev.vality.file.storage.service.shard;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardRingTest {
+
+    private static final int KEYS = 100_000;
+
+    @Test
+    public void weightedDistributionTest() {
+        var counts = distribute(new ShardRing(Map.of("s0", 1, "s1", 3), 128));
+        var share = counts.get("s1") / (double) KEYS;
+        assertEquals(0.75, share, 0.05);
+    }
+
+    @Test
+    public void addShardTest() {
+        var weights = new LinkedHashMap<String, Integer>();
+        weights.put("s0", 1);
+        weights.put("s1", 1);
+        var before = new ShardRing(weights, 128);
+        weights.put("s2", 1);
+        var after = new ShardRing(weights, 128);
+        var moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            var key = UUID.randomUUID().toString();
+            var shardId = after.locate(key);
+            if (!shardId.equals(before.locate(key))) {
+                // ключ может перейти только в новый шард
+                assertEquals("s2", shardId);
+                moved++;
+            }
+        }
+        assertEquals(1.0 / 3, moved / (double) KEYS, 0.05);
+    }
+
+    @Test
+    public void zeroWeightTest() {
+        var counts = distribute(new ShardRing(Map.of("s0", 0, "s1", 1), 128));
+        assertNull(counts.get("s0"));
+        assertThrows(IllegalArgumentException.class, () -> new ShardRing(Map.of("s0", 0), 128));
+    }
+
+    private static Map<String, Integer> distribute(ShardRing shardRing) {
+        var counts = new HashMap<String, Integer>();
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(shardRing.locate(UUID.randomUUID().toString()), 1, Integer::sum);
+        }
+        return counts;
+    }
+}
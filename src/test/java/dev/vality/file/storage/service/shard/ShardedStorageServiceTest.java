@@ -0,0 +1,73 @@
+package dev.vality.file.storage.service.shard;
+
+import dev.vality.file.storage.FileData;
+import dev.vality.file.storage.NewFileResult;
+import dev.vality.file.storage.service.StorageService;
+import dev.vality.file.storage.service.exception.FileNotFoundException;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class ShardedStorageServiceTest {
+
+    private final StorageService defaultShard = mock(StorageService.class);
+    private final StorageService shard = mock(StorageService.class);
+
+    @Test
+    public void createNewFileTest() {
+        when(shard.createNewFile(anyString(), any(), any()))
+                .thenAnswer(invocation -> new NewFileResult().setFileDataId(invocation.getArgument(0)));
+        var result = shardedStorageService().createNewFile(Map.of(), null);
+        // шард по умолчанию только читается, поэтому файл создается в s1
+        assertTrue(result.getFileDataId().startsWith("s1_"));
+        verifyNoInteractions(defaultShard);
+    }
+
+    @Test
+    public void createNewFileLocatesKeyTest() {
+        when(defaultShard.createNewFile(anyString(), any(), any()))
+                .thenAnswer(invocation -> new NewFileResult().setFileDataId(invocation.getArgument(0)));
+        when(shard.createNewFile(anyString(), any(), any()))
+                .thenAnswer(invocation -> new NewFileResult().setFileDataId(invocation.getArgument(0)));
+        var shardRing = new ShardRing(Map.of("s0", 1, "s1", 1), 128);
+        var shardedStorageService = new ShardedStorageService(
+                "s0", Map.of("s0", defaultShard, "s1", shard), shardRing, List.of());
+        for (int i = 0; i < 100; i++) {
+            var shardKey = ShardKey.parse(shardedStorageService.createNewFile(Map.of(), null).getFileDataId(), "s0");
+            // шард выбирается по тому же ключу, под которым файл создан в шарде
+            assertEquals(shardRing.locate(shardKey.key()), shardKey.shardId());
+        }
+    }
+
+    @Test
+    public void routeTest() {
+        when(defaultShard.getFileData("key")).thenReturn(new FileData().setFileDataId("key"));
+        when(shard.getFileData("key")).thenReturn(new FileData().setFileDataId("key"));
+        var shardedStorageService = shardedStorageService();
+        // fileId без префикса и с префиксом шарда по умолчанию указывают на один ключ
+        assertEquals("key", shardedStorageService.getFileData("key").getFileDataId());
+        assertEquals("s0_key", shardedStorageService.getFileData("s0_key").getFileDataId());
+        assertEquals("s1_key", shardedStorageService.getFileData("s1_key").getFileDataId());
+        verify(defaultShard, times(2)).getFileData("key");
+        verify(shard).getFileData("key");
+    }
+
+    @Test
+    public void unknownShardTest() {
+        var shardedStorageService = shardedStorageService();
+        assertThrows(FileNotFoundException.class, () -> shardedStorageService.getFileData("s2_key"));
+        verifyNoInteractions(defaultShard, shard);
+    }
+
+    private ShardedStorageService shardedStorageService() {
+        return new ShardedStorageService(
+                "s0",
+                Map.of("s0", defaultShard, "s1", shard),
+                new ShardRing(Map.of("s0", 0, "s1", 1), 128),
+                List.of());
+    }
+}
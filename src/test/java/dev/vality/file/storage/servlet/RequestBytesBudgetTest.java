@@ -0,0 +1,89 @@
+package dev.vality.file.storage.servlet;
+
+import dev.vality.file.storage.CreateMultipartUploadResult;
+import dev.vality.file.storage.FileStorageSrv;
+import dev.vality.file.storage.UploadMultipartRequestData;
+import dev.vality.testcontainers.annotations.minio.MinioTestcontainerSingleton;
+import dev.vality.woody.api.flow.error.WRuntimeException;
+import dev.vality.woody.thrift.impl.http.THSpawnClientBuilder;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+import static dev.vality.msgpack.Value.str;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@TestPropertySource(
+        locations = "classpath:application.yml",
+        properties = {
+                "execution.max-in-flight-bytes=65536",
+                "execution.in-flight-bytes-threshold=1024",
+                "execution.in-flight-bytes-acquire-timeout=100ms"})
+@MinioTestcontainerSingleton(bucketName = "bytes-budget")
+@DirtiesContext
+public class RequestBytesBudgetTest {
+
+    private static final int BUDGET = 65536;
+    private static final int PART_SIZE = 4096;
+
+    @Value("${local.server.port}")
+    private int port;
+
+    @Autowired
+    private RequestBytesBudget requestBytesBudget;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private FileStorageSrv.Iface fileStorageClient;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        fileStorageClient = new THSpawnClientBuilder()
+                .withAddress(new URI("http://localhost:" + port + "/file_storage/v2"))
+                .withNetworkTimeout(10_000)
+                .build(FileStorageSrv.Iface.class);
+    }
+
+    @Test
+    public void exhaustedBudgetRejectsPartTest() throws Exception {
+        var createResult = fileStorageClient.createMultipartUpload(Map.of("filename", str("fileName")));
+        // весь бюджет занят, например частями других клиентов
+        var heldUnits = requestBytesBudget.tryAcquire(BUDGET);
+        assertTrue(heldUnits > 0);
+        try {
+            assertThrows(WRuntimeException.class, () -> fileStorageClient.uploadMultipart(partRequest(createResult)));
+            assertEquals(1, meterRegistry.get("file.storage.requests.bytes.rejected").counter().count());
+        } finally {
+            requestBytesBudget.release(heldUnits);
+        }
+
+        var result = fileStorageClient.uploadMultipart(partRequest(createResult));
+
+        assertNotNull(result.getPartId());
+        // объем запроса возвращен после ответа
+        assertEquals(0, meterRegistry.get("file.storage.requests.bytes.in.flight").gauge().value());
+        var units = requestBytesBudget.tryAcquire(BUDGET);
+        assertEquals(heldUnits, units);
+        requestBytesBudget.release(units);
+    }
+
+    private static UploadMultipartRequestData partRequest(CreateMultipartUploadResult createResult) {
+        return new UploadMultipartRequestData()
+                .setFileDataId(createResult.getFileDataId())
+                .setMultipartUploadId(createResult.getMultipartUploadId())
+                .setContent(ByteBuffer.wrap(new byte[PART_SIZE]))
+                .setContentLength(PART_SIZE)
+                .setSequencePart(1);
+    }
+}
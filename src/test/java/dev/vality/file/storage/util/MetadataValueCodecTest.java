@@ -0,0 +1,47 @@
+package dev.vality.file.storage.util;
+
+import dev.vality.msgpack.Value;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetadataValueCodecTest {
+
+    private static final List<Value> VALUES = List.of(
+            Value.str("Mary Doe"),
+            Value.str("имя файла.pdf"),
+            Value.i(42L),
+            Value.flt(1.5),
+            Value.b(true),
+            Value.bin("test".getBytes(StandardCharsets.UTF_8)),
+            Value.arr(List.of(Value.str("a"), Value.i(1L))));
+
+    @Test
+    public void compactRoundTripTest() {
+        for (Value value : VALUES) {
+            var encoded = MetadataValueCodec.encode(value, MetadataValueCodec.Encoding.COMPACT);
+            assertTrue(encoded.startsWith(MetadataValueCodec.COMPACT_PREFIX));
+            assertEquals(value, MetadataValueCodec.decode(encoded));
+        }
+    }
+
+    @Test
+    public void jsonBackwardCompatibilityTest() {
+        for (Value value : VALUES) {
+            var encoded = DamselUtil.toJsonString(value);
+            assertEquals(encoded, MetadataValueCodec.encode(value, MetadataValueCodec.Encoding.JSON));
+            assertEquals(value, MetadataValueCodec.decode(encoded));
+        }
+    }
+
+    @Test
+    public void compactIsShorterThanJsonTest() {
+        var value = Value.arr(List.of(
+                Value.i(1L), Value.i(2L), Value.i(3L), Value.b(false), Value.str("version"), Value.str("1.0.0.0")));
+        assertTrue(MetadataValueCodec.encode(value, MetadataValueCodec.Encoding.COMPACT).length()
+                < MetadataValueCodec.encode(value, MetadataValueCodec.Encoding.JSON).length());
+    }
+}